@@ -0,0 +1,396 @@
+import benchmarks.Workload;
+import benchmarks.WorkloadFactory;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * EngineBenchmarks builds the operations measured by the JMH benchmarks of the benchmarks package
+ * (see WorkloadFactory for why they are built here): each method sets up the engines on a generated level,
+ * then returns the operation to measure. The JMH classes give the parameters (map size, sprite count...).
+ * <p>
+ * The levels are generated with a fixed seed, so that two runs always measure the same work; their files
+ * are deleted when the benchmark JVM exits.
+ */
+public class EngineBenchmarks implements WorkloadFactory {
+    // Size (in tiles per side) of the biggest generated level, used by the benchmarks with no map size.
+    private static final int LARGEST_MAP_SIZE = 512;
+
+    // Number of moving sprites of the scaling benchmark of the parallel physics.
+    private static final int PARALLEL_SPRITE_COUNT = 100_000;
+
+    // Size of the offscreen image used for the paint benchmarks (a usual window size).
+    private static final int VIEW_WIDTH = 800;
+    private static final int VIEW_HEIGHT = 600;
+
+    // Size of the view of the static layer benchmarks (a big or zoomed-out view).
+    private static final int LARGE_VIEW_WIDTH = 2048;
+    private static final int LARGE_VIEW_HEIGHT = 1536;
+
+    // Distance moved by the camera at each paint of the panning benchmark, in pixels.
+    private static final int PAN_STEP = 48;
+
+    // Number of live particles of the particle benchmarks.
+    private static final int PARTICLE_COUNT = 50_000;
+
+    // Size of a tile of the generated levels, as in the real levels.
+    private static final int TILE_SIZE = 64;
+
+    // Seed of the generated levels.
+    private static final long SEED = 42;
+
+    /**
+     * Creates the factory; called by WorkloadFactory.get().
+     */
+    public EngineBenchmarks() {
+    }
+
+    /**
+     * Generates a square level: trees all around, and grass with scattered trees and rocks inside.
+     * There are no traps, so that the sprites never print "1 LIFE LOST" during a measure.
+     *
+     * @param size the number of tiles per side
+     * @return the path to the level file, deleted when the JVM exits
+     * @throws IOException if the file cannot be written
+     */
+    static Path generateLevel(int size) throws IOException {
+        Path directory = Files.createTempDirectory("dungeon-bench");
+        directory.toFile().deleteOnExit(); // Registered first, so deleted after the files
+        Path level = directory.resolve("level" + size + ".txt");
+        Random random = new Random(SEED);
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(level, StandardCharsets.UTF_8))) {
+            StringBuilder line = new StringBuilder(size);
+            for (int row = 0; row < size; row++) {
+                line.setLength(0);
+                for (int column = 0; column < size; column++) {
+                    boolean border = row == 0 || column == 0 || row == size - 1 || column == size - 1;
+                    double draw = random.nextDouble();
+                    line.append(border || draw < 0.05 ? 'T' : draw < 0.10 ? 'R' : ' ');
+                }
+                out.println(line);
+            }
+        }
+        level.toFile().deleteOnExit();
+        return level;
+    }
+
+    /**
+     * Creates moving sprites on random empty tiles of a level, each going in a random direction.
+     */
+    private static ArrayList<DynamicSprite> createSprites(TileGrid map, int count, Random random) {
+        ArrayList<DynamicSprite> sprites = new ArrayList<>(count);
+        Direction[] directions = Direction.values();
+        while (sprites.size() < count) {
+            int column = 1 + random.nextInt(map.getColumns() - 2);
+            int row = 1 + random.nextInt(map.getRows() - 2);
+            if (map.getTile(column, row) != CollisionMap.EMPTY) {
+                continue;
+            }
+            DynamicSprite sprite = new DynamicSprite(column * TILE_SIZE, row * TILE_SIZE, (Animation) null,
+                    Playground.HERO_WIDTH, Playground.HERO_HEIGHT);
+            sprite.setDirection(directions[random.nextInt(directions.length)]);
+            sprites.add(sprite);
+        }
+        return sprites;
+    }
+
+    @Override
+    public Workload intersect(String variant) {
+        SolidSprite a = new SolidSprite(100, 100, null, 64, 64);
+        SolidSprite[] others = {
+                new SolidSprite(130, 130, null, 64, 64), // Overlapping
+                new SolidSprite(500, 100, null, 64, 64), // Apart
+                new SolidSprite(164, 100, null, 64, 64), // Touching edges
+                new SolidSprite(90, 90, null, 10, 200)   // Crossing
+        };
+        int[] next = {0};
+        if (variant.equals("rectangle")) {
+            return () -> a.intersect(others[next[0]++ & 3].getHitBox()) ? 1 : 0;
+        }
+        return () -> a.intersect(others[next[0]++ & 3]) ? 1 : 0;
+    }
+
+    @Override
+    public Workload playgroundLoad(int mapSize, String format) throws IOException {
+        String textPath = generateLevel(mapSize).toString();
+        if (format.equals("binary")) {
+            String binaryPath = textPath.replace(".txt", ".lvl");
+            LevelConverter.convert(textPath, binaryPath);
+            new File(binaryPath).deleteOnExit();
+            return () -> new Playground(binaryPath).getWidth();
+        }
+        return () -> new Playground(textPath).getWidth();
+    }
+
+    @Override
+    public Workload physicsUpdate(int mapSize, int spriteCount) throws IOException {
+        TileGrid map = new Playground(generateLevel(mapSize).toString()).getCollisionMap();
+        ArrayList<DynamicSprite> sprites = createSprites(map, spriteCount, new Random(SEED));
+        PhysicEngine physicEngine = new PhysicEngine();
+        physicEngine.setEnvironment(map);
+        for (DynamicSprite sprite : sprites) {
+            physicEngine.addToMovingSpriteList(sprite);
+        }
+        Direction[] directions = Direction.values();
+        int[] tick = {0};
+        return () -> {
+            // Turn one sprite every 8 ticks, so that sprites stuck against a wall keep moving
+            if (++tick[0] % 8 == 0) {
+                sprites.get(tick[0] / 8 % spriteCount).setDirection(directions[tick[0] / 8 & 3]);
+            }
+            physicEngine.update();
+            return tick[0];
+        };
+    }
+
+    @Override
+    public Workload physicsParallel(int threads) throws IOException {
+        TileGrid map = new Playground(generateLevel(LARGEST_MAP_SIZE).toString()).getCollisionMap();
+        ArrayList<DynamicSprite> sprites = createSprites(map, PARALLEL_SPRITE_COUNT, new Random(SEED));
+        PhysicEngine physicEngine = new PhysicEngine();
+        physicEngine.setEnvironment(map);
+        for (DynamicSprite sprite : sprites) {
+            physicEngine.addToMovingSpriteList(sprite);
+        }
+        physicEngine.setParallelism(threads);
+        Direction[] directions = Direction.values();
+        int[] tick = {0};
+        return () -> {
+            // Turn a few sprites each tick, so that sprites stuck against a wall keep moving
+            for (int i = 0; i < 16; i++) {
+                tick[0]++;
+                sprites.get(tick[0] % PARALLEL_SPRITE_COUNT).setDirection(directions[tick[0] / 7 & 3]);
+            }
+            physicEngine.update();
+            return tick[0];
+        };
+    }
+
+    @Override
+    public Workload pathfindingSearch(int mapSize) throws IOException {
+        TileGrid map = new Playground(generateLevel(mapSize).toString()).getCollisionMap();
+        FlowFieldService flowField = new FlowFieldService(map, false); // Searches on the measured thread
+        ArrayList<DynamicSprite> targets = createSprites(map, 16, new Random(SEED));
+
+        // The target walks from cell to cell: one full search each time
+        int[] step = {0};
+        return () -> {
+            DynamicSprite target = targets.get(step[0]++ % targets.size());
+            flowField.requestTarget((int) (target.getX() / TILE_SIZE), (int) (target.getY() / TILE_SIZE));
+            return flowField.getSearchCount();
+        };
+    }
+
+    @Override
+    public Workload pathfindingLookup(int mapSize, int enemyCount) throws IOException {
+        TileGrid map = new Playground(generateLevel(mapSize).toString()).getCollisionMap();
+        FlowFieldService flowField = new FlowFieldService(map, false);
+        Random random = new Random(SEED);
+        DynamicSprite target = createSprites(map, 1, random).get(0);
+        flowField.requestTarget((int) (target.getX() / TILE_SIZE), (int) (target.getY() / TILE_SIZE));
+        ArrayList<DynamicSprite> enemies = createSprites(map, enemyCount, random);
+        return () -> {
+            int steering = 0;
+            for (DynamicSprite enemy : enemies) {
+                Direction direction = flowField.getDirection(enemy);
+                if (direction != null) {
+                    enemy.setDirection(direction);
+                    steering++;
+                }
+            }
+            return steering;
+        };
+    }
+
+    @Override
+    public Workload aiScheduler(int agentCount) throws IOException {
+        TileGrid map = new Playground(generateLevel(LARGEST_MAP_SIZE).toString()).getCollisionMap();
+        Random random = new Random(SEED);
+        DynamicSprite hero = createSprites(map, 1, random).get(0);
+        FlowFieldService flowField = new FlowFieldService(map, false);
+        flowField.requestTarget((int) (hero.getX() / TILE_SIZE), (int) (hero.getY() / TILE_SIZE));
+        AIScheduler scheduler = new AIScheduler(0);
+        scheduler.setHero(hero);
+        for (DynamicSprite sprite : createSprites(map, agentCount, random)) {
+            scheduler.addAgent(new AIAgent() {
+                @Override
+                public DynamicSprite getSprite() {
+                    return sprite;
+                }
+
+                @Override
+                public AITask think(int ticksSinceLastThought) {
+                    // A few microseconds of work: look around in the flow field
+                    int reachable = 0;
+                    for (int dy = -3; dy <= 3; dy++) {
+                        for (int dx = -3; dx <= 3; dx++) {
+                            if (flowField.getDistance(sprite.getX() + dx * TILE_SIZE,
+                                    sprite.getY() + dy * TILE_SIZE) >= 0) {
+                                reachable++;
+                            }
+                        }
+                    }
+                    Direction direction = flowField.getDirection(sprite);
+                    if (reachable > 0 && direction != null) {
+                        sprite.setDirection(direction);
+                    }
+                    return null;
+                }
+            });
+        }
+        long[] deferred = {0};
+        return () -> {
+            scheduler.update();
+            deferred[0] += scheduler.getLastDeferredCount();
+            return deferred[0];
+        };
+    }
+
+    @Override
+    public Workload renderPaint(int mapSize, String cameraMode) throws IOException {
+        Playground playground = new Playground(generateLevel(mapSize).toString());
+        Animation animation = AssetManager.getInstance().getAnimation("./img/heroTileSheetLowRes.png",
+                48, 50, 250);
+        RenderEngine renderEngine = new RenderEngine(null);
+        renderEngine.setSize(VIEW_WIDTH, VIEW_HEIGHT);
+        renderEngine.setStaticLayer(playground.getSpriteSource(), playground.getWidth(), playground.getHeight());
+        Random random = new Random(SEED);
+        for (DynamicSprite sprite : createSprites(playground.getCollisionMap(), 50, random)) {
+            sprite.setDirection(Direction.EAST);
+            renderEngine.addToRenderList(new DynamicSprite(sprite.getX(), sprite.getY(), animation,
+                    sprite.getWidth(), sprite.getHeight()));
+        }
+        DynamicSprite target = new DynamicSprite(playground.getWidth() / 4.0, playground.getHeight() / 4.0,
+                animation, Playground.HERO_WIDTH, Playground.HERO_HEIGHT);
+        renderEngine.addToRenderList(target);
+        renderEngine.setCameraTarget(target);
+
+        BufferedImage frame = new BufferedImage(VIEW_WIDTH, VIEW_HEIGHT, BufferedImage.TYPE_INT_ARGB_PRE);
+        Workload paint = () -> {
+            Graphics2D g = frame.createGraphics();
+            try {
+                renderEngine.paint(g);
+            } finally {
+                g.dispose();
+            }
+            return frame.getRGB(VIEW_WIDTH / 2, VIEW_HEIGHT / 2);
+        };
+        if (!cameraMode.equals("moving")) {
+            return paint;
+        }
+
+        // Move the target along a square loop, so that the cached static layer is redrawn from time to time
+        TileGrid noObstacle = new CollisionMap(0, 0, TILE_SIZE, TILE_SIZE);
+        Direction[] loop = {Direction.EAST, Direction.SOUTH, Direction.WEST, Direction.NORTH};
+        int stepsPerSide = Math.min(playground.getWidth(), playground.getHeight()) / 4 / 5; // Speed is 5 px
+        int[] step = {0};
+        return () -> {
+            target.setDirection(loop[step[0]++ / stepsPerSide % 4]);
+            target.moveIfPossible(noObstacle);
+            return paint.run();
+        };
+    }
+
+    @Override
+    public Workload staticLayer(int threads, String cameraMode) throws IOException {
+        Playground playground = new Playground(generateLevel(LARGEST_MAP_SIZE).toString());
+        StaticLayer staticLayer = new StaticLayer();
+        staticLayer.setContent(playground.getSpriteSource(), playground.getWidth(), playground.getHeight());
+        staticLayer.setRasterThreads(threads);
+        Camera camera = new Camera();
+        camera.setViewport(LARGE_VIEW_WIDTH, LARGE_VIEW_HEIGHT);
+        camera.setWorldSize(playground.getWidth(), playground.getHeight());
+        BufferedImage frame = new BufferedImage(LARGE_VIEW_WIDTH, LARGE_VIEW_HEIGHT, BufferedImage.TYPE_INT_ARGB_PRE);
+
+        if (!cameraMode.equals("panning")) {
+            camera.centerOn(playground.getWidth() / 2.0, playground.getHeight() / 2.0);
+            return () -> {
+                staticLayer.invalidate(); // Everything must be drawn again, as after loading a level
+                return paintStaticLayer(staticLayer, camera, frame);
+            };
+        }
+
+        // Pan along a diagonal of the level, coming back to the start at the end
+        double[] center = {LARGE_VIEW_WIDTH / 2.0, LARGE_VIEW_HEIGHT / 2.0};
+        return () -> {
+            center[0] += PAN_STEP;
+            center[1] += PAN_STEP;
+            if (center[0] > playground.getWidth() || center[1] > playground.getHeight()) {
+                center[0] = LARGE_VIEW_WIDTH / 2.0;
+                center[1] = LARGE_VIEW_HEIGHT / 2.0;
+            }
+            camera.centerOn(center[0], center[1]);
+            return paintStaticLayer(staticLayer, camera, frame);
+        };
+    }
+
+    @Override
+    public Workload particlesUpdate() throws IOException {
+        TileGrid map = new Playground(generateLevel(LARGEST_MAP_SIZE).toString()).getCollisionMap();
+        ParticleSystem particles = new ParticleSystem(PARTICLE_COUNT);
+        Random random = new Random(SEED);
+        int[] tick = {0};
+        fillParticles(particles, random, tick[0]);
+        return () -> {
+            tick[0]++;
+            particles.update(map);
+            fillParticles(particles, random, tick[0]);
+            return particles.getLiveCount();
+        };
+    }
+
+    @Override
+    public Workload particlesDraw() {
+        ParticleSystem particles = new ParticleSystem(PARTICLE_COUNT);
+        fillParticles(particles, new Random(SEED), 0);
+        Camera camera = new Camera();
+        camera.setViewport(VIEW_WIDTH, VIEW_HEIGHT);
+        camera.setWorldSize(LARGEST_MAP_SIZE * TILE_SIZE, LARGEST_MAP_SIZE * TILE_SIZE);
+        camera.centerOn(VIEW_WIDTH / 2.0, VIEW_HEIGHT / 2.0);
+        BufferedImage frame = new BufferedImage(VIEW_WIDTH, VIEW_HEIGHT, BufferedImage.TYPE_INT_ARGB_PRE);
+        return () -> {
+            Graphics2D g = frame.createGraphics();
+            try {
+                g.translate(-camera.getX(), -camera.getY());
+                particles.draw(g, 0.5, camera);
+            } finally {
+                g.dispose();
+            }
+            return frame.getRGB(VIEW_WIDTH / 2, VIEW_HEIGHT / 2);
+        };
+    }
+
+    /**
+     * Fills a particle system with bursts over the view, with lives of 10 to 60 ticks so that some die on
+     * every tick.
+     */
+    private static void fillParticles(ParticleSystem particles, Random random, int tick) {
+        while (particles.getLiveCount() < PARTICLE_COUNT) {
+            byte kind = (byte) (tick % 3);
+            particles.burst(kind, random.nextInt(VIEW_WIDTH), random.nextInt(VIEW_HEIGHT),
+                    Math.min(64, PARTICLE_COUNT - particles.getLiveCount()), 4, 10 + random.nextInt(50));
+        }
+    }
+
+    /**
+     * Paints the static layer seen by a camera into an offscreen image, as the RenderEngine does.
+     */
+    private static long paintStaticLayer(StaticLayer staticLayer, Camera camera, BufferedImage frame) {
+        Graphics2D g = frame.createGraphics();
+        try {
+            g.translate(-camera.getX(), -camera.getY());
+            staticLayer.paint(g, null, camera);
+        } finally {
+            g.dispose();
+        }
+        return frame.getRGB(LARGE_VIEW_WIDTH / 2, LARGE_VIEW_HEIGHT / 2);
+    }
+}
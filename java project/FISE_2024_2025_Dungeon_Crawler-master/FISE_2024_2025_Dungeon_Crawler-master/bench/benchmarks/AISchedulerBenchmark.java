@@ -0,0 +1,32 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One tick of the AIScheduler for growing agent counts, each agent doing a few microseconds of work, with
+ * the default time budget (the time per tick should stay near the budget).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class AISchedulerBenchmark {
+    @Param({"1", "100", "1000", "10000"})
+    public int agents;
+
+    private Workload update;
+
+    @Setup
+    public void setUp() throws Exception {
+        update = WorkloadFactory.get().aiScheduler(agents);
+    }
+
+    @Benchmark
+    public long update() throws Exception {
+        return update.run();
+    }
+}
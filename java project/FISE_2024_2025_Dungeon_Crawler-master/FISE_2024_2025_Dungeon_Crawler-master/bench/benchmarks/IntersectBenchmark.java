@@ -0,0 +1,31 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The hitbox test of SolidSprite, with primitives and with the Rectangle2D adapter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class IntersectBenchmark {
+    @Param({"primitive", "rectangle"})
+    public String variant;
+
+    private Workload intersect;
+
+    @Setup
+    public void setUp() throws Exception {
+        intersect = WorkloadFactory.get().intersect(variant);
+    }
+
+    @Benchmark
+    public long intersect() throws Exception {
+        return intersect.run();
+    }
+}
@@ -0,0 +1,46 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One PhysicEngine update of 100 000 sprites on the biggest level, from 1 thread up to every core of the
+ * machine (scaling of the parallel physics). The thread counts are given as shares of the cores, so that the
+ * same run measures the whole curve on any machine: "cores/4" is a quarter of them (at least one), "cores" all
+ * of them. A plain number is used as is, e.g. -p threads=1,3,6.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class ParallelPhysicsBenchmark {
+    @Param({"1", "cores/4", "cores/2", "cores"})
+    public String threads;
+
+    private Workload update;
+
+    @Setup
+    public void setUp() throws Exception {
+        update = WorkloadFactory.get().physicsParallel(threadCount(threads));
+    }
+
+    @Benchmark
+    public long update() throws Exception {
+        return update.run();
+    }
+
+    /**
+     * Gets the number of threads of a parameter: a number, "cores", or "cores/N" for a share of the cores.
+     */
+    static int threadCount(String threads) {
+        if (!threads.startsWith("cores")) {
+            return Integer.parseInt(threads);
+        }
+        int cores = Runtime.getRuntime().availableProcessors();
+        int share = threads.equals("cores") ? 1 : Integer.parseInt(threads.substring("cores/".length()));
+        return Math.max(1, cores / share);
+    }
+}
@@ -0,0 +1,37 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One tick and one batched draw of 50 000 particles, dying and spawned again all the time
+ * (with -prof gc, the allocation per operation should stay 0).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class ParticleBenchmark {
+    private Workload update;
+    private Workload draw;
+
+    @Setup
+    public void setUp() throws Exception {
+        WorkloadFactory factory = WorkloadFactory.get();
+        update = factory.particlesUpdate();
+        draw = factory.particlesDraw();
+    }
+
+    @Benchmark
+    public long update() throws Exception {
+        return update.run();
+    }
+
+    @Benchmark
+    public long draw() throws Exception {
+        return draw.run();
+    }
+}
@@ -0,0 +1,34 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finding the next direction of every enemy in a flow field, for growing map sizes and enemy counts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class PathfindingLookupBenchmark {
+    @Param({"32", "128", "512"})
+    public int mapSize;
+
+    @Param({"1", "100", "1000", "10000"})
+    public int enemies;
+
+    private Workload lookup;
+
+    @Setup
+    public void setUp() throws Exception {
+        lookup = WorkloadFactory.get().pathfindingLookup(mapSize, enemies);
+    }
+
+    @Benchmark
+    public long lookup() throws Exception {
+        return lookup.run();
+    }
+}
@@ -0,0 +1,32 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the flow field toward a target, for growing map sizes: the target walks from cell to cell,
+ * so each operation is a full search.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class PathfindingSearchBenchmark {
+    @Param({"32", "128", "512"})
+    public int mapSize;
+
+    private Workload search;
+
+    @Setup
+    public void setUp() throws Exception {
+        search = WorkloadFactory.get().pathfindingSearch(mapSize);
+    }
+
+    @Benchmark
+    public long search() throws Exception {
+        return search.run();
+    }
+}
@@ -0,0 +1,35 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One PhysicEngine update, for growing map sizes and sprite counts.
+ * A sprite is turned every 8 ticks, so that the sprites stuck against a wall keep moving.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class PhysicsBenchmark {
+    @Param({"32", "128", "512"})
+    public int mapSize;
+
+    @Param({"1", "100", "1000", "10000"})
+    public int sprites;
+
+    private Workload update;
+
+    @Setup
+    public void setUp() throws Exception {
+        update = WorkloadFactory.get().physicsUpdate(mapSize, sprites);
+    }
+
+    @Benchmark
+    public long update() throws Exception {
+        return update.run();
+    }
+}
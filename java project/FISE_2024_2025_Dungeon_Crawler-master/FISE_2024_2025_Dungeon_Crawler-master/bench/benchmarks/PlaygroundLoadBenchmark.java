@@ -0,0 +1,34 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading a text level, and opening the same level in the binary format.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class PlaygroundLoadBenchmark {
+    @Param({"32", "128", "512"})
+    public int mapSize;
+
+    @Param({"text", "binary"})
+    public String format;
+
+    private Workload load;
+
+    @Setup
+    public void setUp() throws Exception {
+        load = WorkloadFactory.get().playgroundLoad(mapSize, format);
+    }
+
+    @Benchmark
+    public long load() throws Exception {
+        return load.run();
+    }
+}
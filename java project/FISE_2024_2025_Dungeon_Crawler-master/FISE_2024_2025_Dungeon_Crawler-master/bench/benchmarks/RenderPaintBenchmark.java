@@ -0,0 +1,35 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One RenderEngine paint into an offscreen BufferedImage, with a fixed camera or a camera following a
+ * sprite along a square loop (so that the cached static layer is drawn again from time to time).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class RenderPaintBenchmark {
+    @Param({"32", "128", "512"})
+    public int mapSize;
+
+    @Param({"fixed", "moving"})
+    public String camera;
+
+    private Workload paint;
+
+    @Setup
+    public void setUp() throws Exception {
+        paint = WorkloadFactory.get().renderPaint(mapSize, camera);
+    }
+
+    @Benchmark
+    public long paint() throws Exception {
+        return paint.run();
+    }
+}
@@ -0,0 +1,35 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drawing the static layer of a 2048x1536 view, in one cached image (0 threads) or in chunks on 1 to 4
+ * threads, when everything must be drawn again (cold) or when the camera pans.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class StaticLayerBenchmark {
+    @Param({"0", "1", "2", "4"})
+    public int threads;
+
+    @Param({"cold", "panning"})
+    public String camera;
+
+    private Workload paint;
+
+    @Setup
+    public void setUp() throws Exception {
+        paint = WorkloadFactory.get().staticLayer(threads, camera);
+    }
+
+    @Benchmark
+    public long paint() throws Exception {
+        return paint.run();
+    }
+}
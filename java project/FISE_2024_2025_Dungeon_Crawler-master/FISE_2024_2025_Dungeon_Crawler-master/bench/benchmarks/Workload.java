@@ -0,0 +1,15 @@
+package benchmarks;
+
+/**
+ * A measured operation of the game, run once by each call of a JMH benchmark method.
+ */
+@FunctionalInterface
+public interface Workload {
+    /**
+     * Runs the operation once.
+     *
+     * @return a value depending on the work done, returned to JMH so that the JIT cannot remove it
+     * @throws Exception if the operation fails
+     */
+    long run() throws Exception;
+}
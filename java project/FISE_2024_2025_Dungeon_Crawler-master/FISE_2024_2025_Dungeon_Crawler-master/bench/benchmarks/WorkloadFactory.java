@@ -0,0 +1,77 @@
+package benchmarks;
+
+/**
+ * WorkloadFactory builds the operations measured by the JMH benchmarks of this package.
+ * JMH does not accept benchmark classes in the default package, and a class in a package cannot use the
+ * classes of the default package, where the game is. So the game side (EngineBenchmarks, in the default
+ * package) implements this interface, and the benchmarks find it by its name once, in their setup: the
+ * measured calls go through a plain interface call, with no reflection.
+ * Every level is generated with a fixed seed, so that two runs always measure the same work.
+ */
+public interface WorkloadFactory {
+    /**
+     * Gets the factory of the game side.
+     *
+     * @return a new EngineBenchmarks
+     * @throws ReflectiveOperationException if EngineBenchmarks is not on the class path
+     */
+    static WorkloadFactory get() throws ReflectiveOperationException {
+        return (WorkloadFactory) Class.forName("EngineBenchmarks").getDeclaredConstructor().newInstance();
+    }
+
+    /**
+     * One PhysicEngine update of moving sprites on a generated level.
+     */
+    Workload physicsUpdate(int mapSize, int sprites) throws Exception;
+
+    /**
+     * One PhysicEngine update of 100 000 moving sprites on the biggest level, on a number of threads.
+     */
+    Workload physicsParallel(int threads) throws Exception;
+
+    /**
+     * The hitbox test of two sprites: "primitive" (coordinates) or "rectangle" (Rectangle2D adapter).
+     */
+    Workload intersect(String variant) throws Exception;
+
+    /**
+     * Loading a generated level, in the "text" or "binary" format.
+     */
+    Workload playgroundLoad(int mapSize, String format) throws Exception;
+
+    /**
+     * One RenderEngine paint into an offscreen image, with a "fixed" or "moving" camera.
+     */
+    Workload renderPaint(int mapSize, String camera) throws Exception;
+
+    /**
+     * Drawing the static layer of a big view on a number of raster threads (0: one cached image), when
+     * everything must be drawn again ("cold") or when the camera pans ("panning").
+     */
+    Workload staticLayer(int threads, String camera) throws Exception;
+
+    /**
+     * One tick of tens of thousands of particles, dying and spawned again all the time.
+     */
+    Workload particlesUpdate() throws Exception;
+
+    /**
+     * One batched draw of tens of thousands of particles.
+     */
+    Workload particlesDraw() throws Exception;
+
+    /**
+     * Building the flow field toward a target that walks from cell to cell.
+     */
+    Workload pathfindingSearch(int mapSize) throws Exception;
+
+    /**
+     * Finding the next direction of every enemy in a flow field.
+     */
+    Workload pathfindingLookup(int mapSize, int enemies) throws Exception;
+
+    /**
+     * One tick of the AIScheduler, each agent doing a few microseconds of work, with the default time budget.
+     */
+    Workload aiScheduler(int agents) throws Exception;
+}
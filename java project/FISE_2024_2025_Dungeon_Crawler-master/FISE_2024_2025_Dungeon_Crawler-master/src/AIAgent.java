@@ -0,0 +1,22 @@
+/**
+ * Interface for the non-player characters controlled by the AIScheduler of the GameEngine.
+ * An agent is given a turn to think when the scheduler has time for it, not necessarily on every tick.
+ */
+public interface AIAgent {
+
+    /**
+     * Gets the sprite of the agent, used to find how important it is (on screen, close to the hero).
+     *
+     * @return the sprite of the agent
+     */
+    DynamicSprite getSprite();
+
+    /**
+     * Makes a quick decision, e.g. following a FlowFieldService, on the thread running the simulation.
+     * For longer reasoning, the agent copies what it needs and returns a task computed on another thread.
+     *
+     * @param ticksSinceLastThought the number of ticks since the previous turn of the agent
+     * @return a task to compute off the simulation thread, or null
+     */
+    AITask think(int ticksSinceLastThought);
+}
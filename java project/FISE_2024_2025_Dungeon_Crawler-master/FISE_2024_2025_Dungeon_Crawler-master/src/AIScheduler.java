@@ -0,0 +1,374 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AIScheduler shares a time budget per tick between the AIAgents, so that many non-player characters never
+ * make a tick too long. On each tick:
+ * <ol>
+ *     <li>the results of the tasks finished by the planner threads are applied (AITask.apply);</li>
+ *     <li>the agents are sorted by priority: on screen first, then closest to the hero, and the longer an
+ *     agent has waited the higher it goes, so that far agents still get their turn;</li>
+ *     <li>agents think in that order until the budget is spent; the others are deferred to the next ticks.</li>
+ * </ol>
+ * The long reasoning returned by an agent runs on a small pool of planner threads, and its result comes back
+ * into a later tick. With 0 planner threads and a budget counted in agents instead of time, the scheduling
+ * is the same on every run (for headless runs and replays).
+ * Everything except the tasks' compute() runs on the simulation thread.
+ */
+public class AIScheduler {
+    // Priority of an agent on screen, worth more than any distance (in pixels).
+    private static final int ON_SCREEN_PRIORITY = 1 << 24;
+
+    // Priority won for each tick waited (a tile of distance), and the most ticks counted.
+    private static final int WAIT_PRIORITY = 64;
+    private static final int MAX_COUNTED_WAIT = 1 << 16;
+
+    // Highest possible priority, so that (MAX_PRIORITY - priority) is never negative.
+    private static final int MAX_PRIORITY = ON_SCREEN_PRIORITY + MAX_COUNTED_WAIT * WAIT_PRIORITY;
+
+    // Tasks waiting for a planner thread; more are skipped.
+    private static final int MAX_QUEUED_TASKS = 256;
+
+    // Seconds after which an idle planner thread stops.
+    private static final int PLANNER_KEEP_ALIVE_SECONDS = 30;
+
+    // Agents, and the tick of their last turn, by index.
+    private final ArrayList<AIAgent> agents = new ArrayList<>();
+    private long[] lastThoughtTicks = new long[16];
+
+    // Order of the agents for the current tick: priority in the high bits, index in the low bits.
+    private long[] order = new long[16];
+
+    // Sprite whose distance gives the priority (null: no distance), and camera giving the screen (may be null).
+    private DynamicSprite hero;
+    private Camera camera;
+
+    // Time each tick may spend in the agents, in nanoseconds (0: no limit), and most agents per tick (0: no limit).
+    private long budgetNanos = 2_000_000;
+    private int maxAgentsPerTick = 0;
+
+    // Threads computing the tasks (null: computed at once, in the tick).
+    private final ThreadPoolExecutor planners;
+
+    // Tasks computed and waiting to be applied, with the game they belong to.
+    private final ConcurrentLinkedQueue<PlannedTask> finishedTasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger runningTaskCount = new AtomicInteger();
+
+    // Number of the current game: tasks of a previous game (before reset) are dropped.
+    private volatile int game = 0;
+
+    // Number of ticks run.
+    private long tick = 0;
+
+    // What the last tick did, and totals since the start.
+    private int lastThoughtCount = 0;
+    private int lastDeferredCount = 0;
+    private int lastSkippedCount = 0;
+    private int lastAppliedCount = 0;
+    private long lastTickNanos = 0;
+    private long totalDeferredCount = 0;
+    private long totalSkippedCount = 0;
+
+    // Durations of the ticks of the scheduler, in nanoseconds.
+    private final LatencyHistogram tickHistogram = new LatencyHistogram();
+
+    /**
+     * A task with the game it was created in.
+     */
+    private static final class PlannedTask {
+        final AITask task;
+        final int game;
+
+        PlannedTask(AITask task, int game) {
+            this.task = task;
+            this.game = game;
+        }
+    }
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param plannerThreads the number of threads computing the long tasks (0 to compute them in the tick)
+     */
+    public AIScheduler(int plannerThreads) {
+        if (plannerThreads > 0) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            planners = new ThreadPoolExecutor(plannerThreads, plannerThreads, PLANNER_KEEP_ALIVE_SECONDS,
+                    TimeUnit.SECONDS, new ArrayBlockingQueue<>(MAX_QUEUED_TASKS), runnable -> {
+                Thread thread = new Thread(runnable, "ai-planner-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true); // The window closing must be enough to exit the game
+                return thread;
+            });
+            planners.allowCoreThreadTimeOut(true);
+        } else {
+            planners = null;
+        }
+    }
+
+    /**
+     * Adds an agent. It waits for its first turn like the others.
+     *
+     * @param agent the agent to add
+     */
+    public void addAgent(AIAgent agent) {
+        int index = agents.size();
+        agents.add(agent);
+        if (index == lastThoughtTicks.length) {
+            lastThoughtTicks = Arrays.copyOf(lastThoughtTicks, index * 2);
+            order = new long[index * 2];
+        }
+        lastThoughtTicks[index] = tick;
+    }
+
+    /**
+     * Removes an agent. A task of this agent still running is applied anyway.
+     *
+     * @param agent the agent to remove
+     */
+    public void removeAgent(AIAgent agent) {
+        int index = agents.indexOf(agent);
+        if (index < 0) {
+            return;
+        }
+        int last = agents.size() - 1;
+        agents.set(index, agents.get(last));
+        lastThoughtTicks[index] = lastThoughtTicks[last];
+        agents.remove(last);
+    }
+
+    /**
+     * Sets the sprite whose distance gives the priority of the agents, usually the hero.
+     *
+     * @param hero the sprite, or null to ignore the distance
+     */
+    public void setHero(DynamicSprite hero) {
+        this.hero = hero;
+    }
+
+    /**
+     * Sets the camera telling which agents are on screen. It must only change while the simulation is not
+     * updated (the RenderEngine moves it under the lock of the game loop).
+     *
+     * @param camera the camera, or null to ignore the screen
+     */
+    public void setCamera(Camera camera) {
+        this.camera = camera;
+    }
+
+    /**
+     * Sets the time the agents may take on each tick. The first agent always gets its turn.
+     *
+     * @param budgetNanos the budget in nanoseconds, or 0 for no time limit
+     */
+    public void setBudgetNanos(long budgetNanos) {
+        this.budgetNanos = Math.max(0, budgetNanos);
+    }
+
+    public long getBudgetNanos() {
+        return budgetNanos;
+    }
+
+    /**
+     * Sets the most agents thinking on each tick, a budget that does not depend on the speed of the machine.
+     *
+     * @param maxAgentsPerTick the number of agents, or 0 for no limit
+     */
+    public void setMaxAgentsPerTick(int maxAgentsPerTick) {
+        this.maxAgentsPerTick = Math.max(0, maxAgentsPerTick);
+    }
+
+    /**
+     * Runs one tick: applies the finished tasks, then gives turns to the agents in order of priority
+     * until the budget is spent.
+     */
+    public void update() {
+        long start = System.nanoTime();
+        tick++;
+
+        // Results of the long tasks, computed since the last tick
+        int applied = 0;
+        PlannedTask finished;
+        while ((finished = finishedTasks.poll()) != null) {
+            if (finished.game == game) {
+                finished.task.apply();
+                applied++;
+            }
+        }
+
+        // Sort the agents by priority, highest first
+        int count = agents.size();
+        for (int i = 0; i < count; i++) {
+            long key = MAX_PRIORITY - (long) priorityOf(agents.get(i), tick - lastThoughtTicks[i]);
+            order[i] = (key << 32) | i;
+        }
+        Arrays.sort(order, 0, count);
+
+        int thought = 0;
+        int skipped = 0;
+        for (int rank = 0; rank < count; rank++) {
+            if (thought > 0 && ((budgetNanos > 0 && System.nanoTime() - start >= budgetNanos)
+                    || (maxAgentsPerTick > 0 && thought >= maxAgentsPerTick))) {
+                break; // The others wait for the next ticks
+            }
+            int index = (int) order[rank];
+            AITask task = agents.get(index).think((int) Math.min(Integer.MAX_VALUE, tick - lastThoughtTicks[index]));
+            lastThoughtTicks[index] = tick;
+            thought++;
+            if (task != null && !submit(task)) {
+                skipped++;
+            }
+        }
+
+        lastAppliedCount = applied;
+        lastThoughtCount = thought;
+        lastDeferredCount = count - thought;
+        lastSkippedCount = skipped;
+        totalDeferredCount += count - thought;
+        totalSkippedCount += skipped;
+        lastTickNanos = System.nanoTime() - start;
+        tickHistogram.record(lastTickNanos);
+    }
+
+    /**
+     * Computes the priority of an agent: on screen first, then close to the hero, plus the time waited.
+     */
+    private int priorityOf(AIAgent agent, long ticksWaited) {
+        DynamicSprite sprite = agent.getSprite();
+        int priority = (int) Math.min(ticksWaited, MAX_COUNTED_WAIT) * WAIT_PRIORITY;
+        if (camera != null && camera.isVisible(sprite.getX(), sprite.getY(), sprite.getWidth(), sprite.getHeight())) {
+            priority += ON_SCREEN_PRIORITY;
+        }
+        if (hero != null) {
+            double distance = Math.hypot(sprite.getX() - hero.getX(), sprite.getY() - hero.getY());
+            priority -= (int) Math.min(distance, ON_SCREEN_PRIORITY - 1);
+        }
+        return priority;
+    }
+
+    /**
+     * Starts a task on a planner thread, or computes it at once without planner threads.
+     *
+     * @return false if the task was skipped because too many tasks are waiting
+     */
+    private boolean submit(AITask task) {
+        PlannedTask planned = new PlannedTask(task, game);
+        if (planners == null) {
+            task.compute();
+            finishedTasks.add(planned); // Applied at the start of the next tick, as with planner threads
+            return true;
+        }
+        try {
+            runningTaskCount.incrementAndGet();
+            planners.execute(() -> {
+                try {
+                    task.compute();
+                    finishedTasks.add(planned);
+                } catch (RuntimeException e) {
+                    e.printStackTrace(); // One agent failing must not stop the others
+                } finally {
+                    runningTaskCount.decrementAndGet();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            runningTaskCount.decrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Forgets the results not applied yet and the tasks still running, e.g. when the game is restarted.
+     * The agents keep their place.
+     */
+    public void reset() {
+        game++;
+        finishedTasks.clear();
+        Arrays.fill(lastThoughtTicks, 0, agents.size(), tick);
+    }
+
+    /**
+     * Stops the planner threads. Tasks still waiting are dropped.
+     */
+    public void close() {
+        if (planners != null) {
+            planners.shutdownNow();
+        }
+    }
+
+    public int getAgentCount() {
+        return agents.size();
+    }
+
+    /**
+     * Gets the number of agents that had their turn on the last tick.
+     *
+     * @return the number of agents that thought
+     */
+    public int getLastThoughtCount() {
+        return lastThoughtCount;
+    }
+
+    /**
+     * Gets the number of agents whose turn was moved to a later tick on the last tick, as the budget was spent.
+     *
+     * @return the number of deferred agents
+     */
+    public int getLastDeferredCount() {
+        return lastDeferredCount;
+    }
+
+    /**
+     * Gets the number of long tasks skipped on the last tick, as too many were waiting for a planner thread.
+     * The agents get another turn later.
+     *
+     * @return the number of skipped tasks
+     */
+    public int getLastSkippedCount() {
+        return lastSkippedCount;
+    }
+
+    /**
+     * Gets the number of task results applied at the start of the last tick.
+     *
+     * @return the number of applied results
+     */
+    public int getLastAppliedCount() {
+        return lastAppliedCount;
+    }
+
+    public long getTotalDeferredCount() {
+        return totalDeferredCount;
+    }
+
+    public long getTotalSkippedCount() {
+        return totalSkippedCount;
+    }
+
+    /**
+     * Gets the number of long tasks waiting for or running on a planner thread.
+     *
+     * @return the number of running tasks
+     */
+    public int getRunningTaskCount() {
+        return runningTaskCount.get();
+    }
+
+    public long getLastTickNanos() {
+        return lastTickNanos;
+    }
+
+    /**
+     * Gets the durations of the ticks of the scheduler.
+     *
+     * @return the histogram of the durations, in nanoseconds
+     */
+    public LatencyHistogram getTickHistogram() {
+        return tickHistogram;
+    }
+}
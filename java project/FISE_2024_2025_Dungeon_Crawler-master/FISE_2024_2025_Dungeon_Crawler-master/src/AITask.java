@@ -0,0 +1,17 @@
+/**
+ * Interface for the long reasoning of an AIAgent, computed off the simulation thread by the AIScheduler.
+ * compute() must only use the data copied into the task when it was created, never the live world;
+ * its result is applied to the world by apply(), on the simulation thread, at the start of a later tick.
+ */
+public interface AITask {
+
+    /**
+     * Does the long work, on a thread of the scheduler.
+     */
+    void compute();
+
+    /**
+     * Applies the result, e.g. sets the direction of the sprite, on the thread running the simulation.
+     */
+    void apply();
+}
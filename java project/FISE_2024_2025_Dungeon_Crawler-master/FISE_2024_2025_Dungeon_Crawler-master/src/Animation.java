@@ -0,0 +1,33 @@
+import java.util.EnumMap;
+
+/**
+ * Animation groups one clip per Direction, e.g. the walk cycle of a character facing each way.
+ * It is built from a sprite sheet where each Direction has its own row (see Direction.getFrameLineNumber()).
+ * Like the clips, an Animation is immutable and can be shared by all the sprites using the same sheet.
+ */
+public class Animation {
+    // Clip played for each direction.
+    private final EnumMap<Direction, AnimationClip> clips = new EnumMap<>(Direction.class);
+
+    /**
+     * Creates the animation of a sheet with one row of frames per direction.
+     *
+     * @param sheet           the sliced sprite sheet
+     * @param frameDurationMs the time each frame is shown, in milliseconds
+     */
+    public Animation(SpriteSheet sheet, long frameDurationMs) {
+        for (Direction direction : Direction.values()) {
+            clips.put(direction, new AnimationClip(sheet.getRow(direction.getFrameLineNumber()), frameDurationMs));
+        }
+    }
+
+    /**
+     * Gets the clip played for a direction.
+     *
+     * @param direction the direction the sprite is facing
+     * @return the clip of this direction
+     */
+    public AnimationClip getClip(Direction direction) {
+        return clips.get(direction);
+    }
+}
@@ -0,0 +1,45 @@
+import java.awt.image.BufferedImage;
+
+/**
+ * AnimationClip is a sequence of frames shown one after the other, each for the same duration, in a loop.
+ * A clip holds no playing state, so the same clip can be shared by any number of sprites.
+ */
+public class AnimationClip {
+    // Frames of the clip, in order.
+    private final BufferedImage[] frames;
+
+    // Time each frame is shown, in milliseconds.
+    private final long frameDurationMs;
+
+    /**
+     * Creates a looping clip.
+     *
+     * @param frames          the frames of the clip, in order
+     * @param frameDurationMs the time each frame is shown, in milliseconds
+     */
+    public AnimationClip(BufferedImage[] frames, long frameDurationMs) {
+        if (frames.length == 0 || frameDurationMs <= 0) {
+            throw new IllegalArgumentException("A clip needs at least one frame and a positive duration");
+        }
+        this.frames = frames.clone();
+        this.frameDurationMs = frameDurationMs;
+    }
+
+    /**
+     * Gets the frame shown at a given time.
+     *
+     * @param timeMs the time in milliseconds
+     * @return the frame to draw at that time
+     */
+    public BufferedImage getFrame(long timeMs) {
+        return frames[(int) Math.floorMod(timeMs / frameDurationMs, (long) frames.length)];
+    }
+
+    public int getFrameCount() {
+        return frames.length;
+    }
+
+    public long getFrameDurationMs() {
+        return frameDurationMs;
+    }
+}
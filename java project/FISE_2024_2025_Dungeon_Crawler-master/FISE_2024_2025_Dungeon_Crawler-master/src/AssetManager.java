@@ -0,0 +1,209 @@
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AssetManager is a cache of the images of the game, shared by the whole process.
+ * Each image is decoded once, converted to the pixel format of the screen (so that drawing it can be
+ * accelerated), and then returned to every caller asking for the same path, including after a Retry.
+ * The tile images of the levels are also packed into a single texture atlas.
+ */
+public final class AssetManager {
+    // Images of the level tiles, packed together in the tile atlas.
+    public static final String TREE = "./img/tree.png";
+    public static final String GRASS = "./img/grass.png";
+    public static final String ROCK = "./img/rock.png";
+    public static final String TRAP = "./img/trap.png";
+    private static final String[] TILE_PATHS = {TREE, GRASS, ROCK, TRAP};
+
+    // Maximum width of the tile atlas in pixels.
+    private static final int ATLAS_MAX_WIDTH = 1024;
+
+    // The instance shared by the whole process.
+    private static final AssetManager INSTANCE = new AssetManager();
+
+    // Decoded and converted images by path.
+    private final Map<String, BufferedImage> images = new ConcurrentHashMap<>();
+
+    // Animations sliced from sprite sheets, by path, frame size and frame duration.
+    private final Map<String, Animation> animations = new ConcurrentHashMap<>();
+
+    // Atlas of the tile images, created on first use.
+    private TextureAtlas tileAtlas;
+
+    // Statistics of the cache.
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong cachedBytes = new AtomicLong();
+
+    private AssetManager() {
+    }
+
+    /**
+     * Gets the asset manager shared by the whole process.
+     *
+     * @return the asset manager
+     */
+    public static AssetManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Gets an image, decoding and converting it the first time its path is asked for.
+     *
+     * @param path the path to the image file
+     * @return the image, in the pixel format of the screen
+     * @throws IOException if the image cannot be read
+     */
+    public BufferedImage getImage(String path) throws IOException {
+        BufferedImage image = images.get(path);
+        if (image != null) {
+            hitCount.incrementAndGet();
+            return image;
+        }
+        try {
+            return images.computeIfAbsent(path, key -> {
+                missCount.incrementAndGet();
+                try {
+                    BufferedImage decoded = ImageIO.read(new File(key));
+                    if (decoded == null) {
+                        throw new IOException("Unsupported image format: " + key);
+                    }
+                    BufferedImage converted = toCompatibleImage(decoded);
+                    cachedBytes.addAndGet(sizeInBytes(converted));
+                    return converted;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Gets the animation of a sprite sheet with one row of frames per Direction. The sheet is sliced
+     * into frames the first time, then the same animation is shared by every sprite using it.
+     *
+     * @param path            the path to the sprite sheet
+     * @param frameWidth      the width of one frame
+     * @param frameHeight     the height of one frame
+     * @param frameDurationMs the time each frame is shown, in milliseconds
+     * @return the shared animation
+     * @throws IOException if the sheet cannot be read
+     */
+    public Animation getAnimation(String path, int frameWidth, int frameHeight, long frameDurationMs)
+            throws IOException {
+        String key = path + "#" + frameWidth + "x" + frameHeight + "@" + frameDurationMs;
+        Animation animation = animations.get(key);
+        if (animation != null) {
+            hitCount.incrementAndGet();
+            return animation;
+        }
+        BufferedImage sheet = getImage(path);
+        return animations.computeIfAbsent(key, k -> {
+            missCount.incrementAndGet();
+            cachedBytes.addAndGet(sizeInBytes(sheet)); // The frames hold about as many pixels as the sheet
+            return new Animation(new SpriteSheet(sheet, frameWidth, frameHeight), frameDurationMs);
+        });
+    }
+
+    /**
+     * Gets the image of a level tile. Tiles are regions of the tile atlas, so they all share one texture;
+     * other paths are returned as plain images.
+     *
+     * @param path the path to the tile image (e.g. AssetManager.TREE)
+     * @return the tile image
+     * @throws IOException if an image cannot be read
+     */
+    public BufferedImage getTileImage(String path) throws IOException {
+        BufferedImage region = getTileAtlas().getRegion(path);
+        if (region != null) {
+            hitCount.incrementAndGet();
+            return region;
+        }
+        return getImage(path);
+    }
+
+    /**
+     * Gets the atlas containing all the tile images, packing it the first time.
+     *
+     * @return the tile atlas
+     * @throws IOException if a tile image cannot be read
+     */
+    public synchronized TextureAtlas getTileAtlas() throws IOException {
+        if (tileAtlas == null) {
+            Map<String, BufferedImage> tiles = new LinkedHashMap<>();
+            for (String path : TILE_PATHS) {
+                tiles.put(path, getImage(path));
+            }
+            tileAtlas = new TextureAtlas(tiles, ATLAS_MAX_WIDTH, getGraphicsConfiguration());
+            cachedBytes.addAndGet(sizeInBytes(tileAtlas.getImage()));
+        }
+        return tileAtlas;
+    }
+
+    /**
+     * Converts an image to the pixel format of the screen, so that it can be drawn without conversion.
+     * Without a screen (headless mode), images are converted to premultiplied ARGB.
+     *
+     * @param source the decoded image
+     * @return an image with the same pixels, in the best format for drawing
+     */
+    private static BufferedImage toCompatibleImage(BufferedImage source) {
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        BufferedImage converted = (gc != null)
+                ? gc.createCompatibleImage(source.getWidth(), source.getHeight(), source.getTransparency())
+                : new BufferedImage(source.getWidth(), source.getHeight(), BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = converted.createGraphics();
+        try {
+            g.setComposite(AlphaComposite.Src);
+            g.drawImage(source, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return converted;
+    }
+
+    /**
+     * Gets the configuration of the default screen, or null in headless mode.
+     */
+    private static GraphicsConfiguration getGraphicsConfiguration() {
+        if (GraphicsEnvironment.isHeadless()) {
+            return null;
+        }
+        return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+    }
+
+    /**
+     * Estimates the memory used by the pixels of an image.
+     */
+    private static long sizeInBytes(BufferedImage image) {
+        return (long) image.getWidth() * image.getHeight() * image.getColorModel().getPixelSize() / 8;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getCachedBytes() {
+        return cachedBytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return "AssetManager[images=" + images.size() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", bytes=" + getCachedBytes() + "]";
+    }
+}
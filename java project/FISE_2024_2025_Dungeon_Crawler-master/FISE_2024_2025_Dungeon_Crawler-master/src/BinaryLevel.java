@@ -0,0 +1,243 @@
+import java.awt.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * BinaryLevel is a level stored in the compact binary format written by the LevelConverter.
+ * The file is mapped in memory (read-only) and the tiles are read directly from it: opening a level
+ * only reads its header and palette, whatever the size of the level, and the sprites are created only for
+ * the regions drawn. The LevelConverter pads the palette to every value a tile can hold; a file with a
+ * shorter palette still opens, its tiles outside the palette reading as no tile.
+ *
+ * Format (big-endian):
+ * <pre>
+ *  0  int    magic "DCLV"
+ *  4  short  version (1)
+ *  6  byte   bits per tile (4 or 8)
+ *  7  byte   palette size (1 to 256, 0 meaning 256)
+ *  8  int    columns
+ * 12  int    rows
+ * 16  short  tile width in pixels (unsigned, not 0)
+ * 18  short  tile height in pixels (unsigned, not 0)
+ * 20  palette: for each entry, the symbol of the text format (0 for no tile) and the tile type
+ *  .  tiles: palette indexes, row by row; with 4 bits per tile, the high half of a byte comes first
+ * </pre>
+ */
+public class BinaryLevel implements TileGrid, SpriteSource {
+    // Magic number at the start of every binary level file ("DCLV").
+    public static final int MAGIC = 0x44434C56;
+
+    // Version of the format written by the LevelConverter.
+    public static final short VERSION = 1;
+
+    // Size of the fixed part of the header, before the palette.
+    public static final int HEADER_SIZE = 20;
+
+    // Read-only view of the whole file.
+    private final MappedByteBuffer buffer;
+
+    private final int bitsPerTile;
+    private final int columns;
+    private final int rows;
+    private final int tileWidth;
+    private final int tileHeight;
+
+    // Symbol and tile type of each palette entry.
+    private final byte[] paletteSymbols;
+    private final byte[] paletteTypes;
+
+    // Position of the tile array in the file.
+    private final int tilesOffset;
+
+    // Images of the tiles, loaded once and shared by all the sprites.
+    private final Image imageTree;
+    private final Image imageGrass;
+    private final Image imageRock;
+    private final Image imageTrap;
+
+    /**
+     * Checks if a file is a binary level, by reading its magic number.
+     *
+     * @param pathName the path to the file
+     * @return true if the file starts with the magic number of the binary format
+     */
+    public static boolean isBinaryLevel(String pathName) {
+        try (FileChannel channel = FileChannel.open(Paths.get(pathName), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) > 0) {
+                // Read until the 4 bytes are there or the file ends
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Opens a binary level by mapping its file in memory. Only the header and the palette are read.
+     *
+     * @param pathName the path to the binary level file
+     * @throws IOException if the file cannot be mapped, is not a binary level, has an unsupported version,
+     *                     or is truncated
+     */
+    public BinaryLevel(String pathName) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(pathName), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Level file too big to be mapped: " + pathName);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a binary level file: " + pathName);
+        }
+        if (buffer.getShort(4) != VERSION) {
+            throw new IOException("Unsupported binary level version " + buffer.getShort(4) + ": " + pathName);
+        }
+        bitsPerTile = buffer.get(6);
+        if (bitsPerTile != 4 && bitsPerTile != 8) {
+            throw new IOException("Unsupported number of bits per tile " + bitsPerTile + ": " + pathName);
+        }
+        int paletteSize = buffer.get(7) == 0 ? 256 : Byte.toUnsignedInt(buffer.get(7));
+        columns = buffer.getInt(8);
+        rows = buffer.getInt(12);
+        tileWidth = Short.toUnsignedInt(buffer.getShort(16));
+        tileHeight = Short.toUnsignedInt(buffer.getShort(18));
+        if (tileWidth == 0 || tileHeight == 0) {
+            throw new IOException("Bad tile size " + tileWidth + "x" + tileHeight + ": " + pathName);
+        }
+        tilesOffset = HEADER_SIZE + 2 * paletteSize;
+        long tileBytes = ((long) columns * rows * bitsPerTile + 7) / 8;
+        if (columns < 0 || rows < 0 || tilesOffset + tileBytes > buffer.limit()) {
+            throw new IOException("Truncated binary level file: " + pathName);
+        }
+
+        // One entry for every value a tile can hold: the entries missing from the file are no tile, so that a
+        // corrupt tile can never be read outside the palette (and the tiles need no check here)
+        paletteSymbols = new byte[1 << bitsPerTile];
+        paletteTypes = new byte[1 << bitsPerTile];
+        Arrays.fill(paletteTypes, CollisionMap.EMPTY);
+        for (int i = 0; i < Math.min(paletteSize, paletteTypes.length); i++) {
+            paletteSymbols[i] = buffer.get(HEADER_SIZE + 2 * i);
+            paletteTypes[i] = buffer.get(HEADER_SIZE + 2 * i + 1);
+        }
+
+        // Get the images of the different types of sprites, shared through the tile atlas
+        AssetManager assets = AssetManager.getInstance();
+        imageTree = assets.getTileImage(AssetManager.TREE);
+        imageGrass = assets.getTileImage(AssetManager.GRASS);
+        imageRock = assets.getTileImage(AssetManager.ROCK);
+        imageTrap = assets.getTileImage(AssetManager.TRAP);
+    }
+
+    /**
+     * Gets the palette index of a tile, read directly from the mapped file.
+     */
+    private int getPaletteIndex(int column, int row) {
+        long tile = (long) row * columns + column;
+        if (bitsPerTile == 8) {
+            return Byte.toUnsignedInt(buffer.get(tilesOffset + (int) tile));
+        }
+        int packed = buffer.get(tilesOffset + (int) (tile >> 1));
+        return (tile & 1) == 0 ? (packed >> 4) & 0x0F : packed & 0x0F;
+    }
+
+    /**
+     * Gets the symbol of the text format for a tile (0 where there is no tile).
+     *
+     * @param column the column of the tile
+     * @param row    the row of the tile
+     * @return the symbol of the tile
+     */
+    public byte getSymbol(int column, int row) {
+        if (column < 0 || row < 0 || column >= columns || row >= rows) {
+            return 0;
+        }
+        return paletteSymbols[getPaletteIndex(column, row)];
+    }
+
+    @Override
+    public byte getTile(int column, int row) {
+        if (column < 0 || row < 0 || column >= columns || row >= rows) {
+            return CollisionMap.EMPTY;
+        }
+        return paletteTypes[getPaletteIndex(column, row)];
+    }
+
+    /**
+     * Calls an action on every static sprite overlapping a rectangle of the world.
+     * The sprites are created on the fly from the tiles of the rectangle, and are not kept.
+     *
+     * @param x      the x-coordinate of the rectangle
+     * @param y      the y-coordinate of the rectangle
+     * @param width  the width of the rectangle
+     * @param height the height of the rectangle
+     * @param action the action to run on each sprite found
+     */
+    @Override
+    public void forEachIn(double x, double y, double width, double height, Consumer<Sprite> action) {
+        int firstColumn = Math.max(0, (int) Math.floor(x / tileWidth));
+        int lastColumn = Math.min(columns - 1, (int) Math.ceil((x + width) / tileWidth) - 1);
+        int firstRow = Math.max(0, (int) Math.floor(y / tileHeight));
+        int lastRow = Math.min(rows - 1, (int) Math.ceil((y + height) / tileHeight) - 1);
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                Sprite sprite = createSprite(getSymbol(column, row), column, row);
+                if (sprite != null) {
+                    action.accept(sprite);
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the sprite of a tile (same symbols as in the Playground), or null if the tile has no sprite.
+     *
+     * @param symbol the symbol of the tile
+     * @param column the column of the tile
+     * @param row    the row of the tile
+     * @return the sprite of the tile, or null
+     */
+    public Sprite createSprite(byte symbol, int column, int row) {
+        int x = column * tileWidth;
+        int y = row * tileHeight;
+        switch (symbol) {
+            case 'T':
+                return new SolidSprite(x, y, imageTree, tileWidth, tileHeight);
+            case ' ':
+                return new Sprite(x, y, imageGrass, tileWidth, tileHeight);
+            case 'R':
+                return new SolidSprite(x, y, imageRock, tileWidth, tileHeight);
+            case 'J':
+                return new Trap(x, y, imageTrap, tileWidth, tileHeight);
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public int getColumns() {
+        return columns;
+    }
+
+    @Override
+    public int getRows() {
+        return rows;
+    }
+
+    @Override
+    public int getTileWidth() {
+        return tileWidth;
+    }
+
+    @Override
+    public int getTileHeight() {
+        return tileHeight;
+    }
+}
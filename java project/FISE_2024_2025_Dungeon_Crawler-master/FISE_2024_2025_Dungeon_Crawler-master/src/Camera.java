@@ -0,0 +1,113 @@
+/**
+ * Camera represents the part of the world shown in the window.
+ * It follows a point (usually the hero), stays inside the world, and converts world
+ * coordinates to screen coordinates so that levels bigger than the window can be displayed.
+ */
+public class Camera {
+    // Top-left corner of the viewport in world coordinates (whole pixels, to avoid seams between tiles).
+    private int x;
+    private int y;
+
+    // Size of the viewport (the drawing area on screen) in pixels.
+    private int viewportWidth;
+    private int viewportHeight;
+
+    // Size of the world in pixels; the camera never shows what is outside.
+    private int worldWidth;
+    private int worldHeight;
+
+    /**
+     * Sets the size of the area drawn on screen.
+     *
+     * @param viewportWidth  the width of the viewport in pixels
+     * @param viewportHeight the height of the viewport in pixels
+     */
+    public void setViewport(int viewportWidth, int viewportHeight) {
+        this.viewportWidth = viewportWidth;
+        this.viewportHeight = viewportHeight;
+        clamp();
+    }
+
+    /**
+     * Sets the size of the world the camera moves in.
+     *
+     * @param worldWidth  the width of the world in pixels
+     * @param worldHeight the height of the world in pixels
+     */
+    public void setWorldSize(int worldWidth, int worldHeight) {
+        this.worldWidth = worldWidth;
+        this.worldHeight = worldHeight;
+        clamp();
+    }
+
+    /**
+     * Moves the camera so that a point of the world is at the center of the viewport,
+     * as far as the borders of the world allow.
+     *
+     * @param centerX the x-coordinate of the point in the world
+     * @param centerY the y-coordinate of the point in the world
+     */
+    public void centerOn(double centerX, double centerY) {
+        x = (int) Math.round(centerX - viewportWidth / 2.0);
+        y = (int) Math.round(centerY - viewportHeight / 2.0);
+        clamp();
+    }
+
+    /**
+     * Keeps the viewport inside the world. A world smaller than the viewport is drawn at the top-left corner.
+     */
+    private void clamp() {
+        x = Math.max(0, Math.min(x, worldWidth - viewportWidth));
+        y = Math.max(0, Math.min(y, worldHeight - viewportHeight));
+    }
+
+    /**
+     * Checks if a rectangle of the world is at least partly inside the viewport.
+     *
+     * @param rectX      the x-coordinate of the rectangle in the world
+     * @param rectY      the y-coordinate of the rectangle in the world
+     * @param rectWidth  the width of the rectangle
+     * @param rectHeight the height of the rectangle
+     * @return true if the rectangle can be seen, false otherwise
+     */
+    public boolean isVisible(double rectX, double rectY, double rectWidth, double rectHeight) {
+        return rectX + rectWidth > x && rectY + rectHeight > y
+                && rectX < x + viewportWidth && rectY < y + viewportHeight;
+    }
+
+    /**
+     * Converts a world x-coordinate to a screen x-coordinate.
+     *
+     * @param worldX the x-coordinate in the world
+     * @return the x-coordinate on screen
+     */
+    public double toScreenX(double worldX) {
+        return worldX - x;
+    }
+
+    /**
+     * Converts a world y-coordinate to a screen y-coordinate.
+     *
+     * @param worldY the y-coordinate in the world
+     * @return the y-coordinate on screen
+     */
+    public double toScreenY(double worldY) {
+        return worldY - y;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public int getViewportWidth() {
+        return viewportWidth;
+    }
+
+    public int getViewportHeight() {
+        return viewportHeight;
+    }
+}
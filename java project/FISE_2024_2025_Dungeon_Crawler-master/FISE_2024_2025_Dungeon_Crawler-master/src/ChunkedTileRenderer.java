@@ -0,0 +1,295 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ChunkedTileRenderer draws the static sprites of the world into square chunk images, on a pool of worker
+ * threads. Painting a frame only copies the finished chunks: the chunks of the view that are missing are
+ * drawn in parallel (the painting thread waits for them), and the chunks around the view are drawn in the
+ * background so that they are ready when the camera gets there. The least recently seen chunks are dropped
+ * when there are too many, and their images are reused.
+ * The sprite source is read from several threads at once: it must not change while chunks are drawn (call
+ * invalidate() first, it waits for the workers). A ChunkedWorld is read one chunk at a time, as it is synchronized.
+ */
+public class ChunkedTileRenderer {
+    // Number of chunks kept, as a multiple of the number of chunks in the view (plus its border).
+    private static final int KEPT_CHUNKS_FACTOR = 3;
+
+    // Size of a chunk in pixels.
+    private final int chunkSize;
+
+    // Seconds after which an idle worker thread stops (a new one is started when chunks are missing).
+    private static final int WORKER_KEEP_ALIVE_SECONDS = 30;
+
+    // Threads drawing the chunks.
+    private final ThreadPoolExecutor workers;
+    private final int threads;
+
+    // Content drawn: sprites found by position, elements drawn everywhere, and size of the world.
+    private SpriteSource source;
+    private List<Displayable> unindexed = new ArrayList<>();
+    private int width;
+    private int height;
+
+    // Chunks drawn or being drawn, by chunk coordinates.
+    private final HashMap<Long, Chunk> chunks = new HashMap<>();
+
+    // Images of dropped chunks, ready to be reused.
+    private final ArrayDeque<BufferedImage> freeImages = new ArrayDeque<>();
+
+    // States of a chunk: waiting for a worker, being drawn, drawn, or dropped before a worker took it.
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int DONE = 2;
+    private static final int DROPPED = 3;
+
+    // Number of paints so far, used to find the least recently seen chunks.
+    private long frame = 0;
+
+    // Number of chunks drawn since the creation of the renderer.
+    private final AtomicLong rasterizedCount = new AtomicLong();
+
+    /**
+     * A square part of the world, with the image of its static sprites.
+     */
+    private static final class Chunk {
+        final int column;
+        final int row;
+        final BufferedImage image;
+        final AtomicInteger state = new AtomicInteger(QUEUED);
+        Future<?> task;   // Drawing of the image (done once the image is ready or the chunk dropped)
+        long lastSeen;    // Last frame where the chunk was in the view or its border
+
+        Chunk(int column, int row, BufferedImage image) {
+            this.column = column;
+            this.row = row;
+            this.image = image;
+        }
+    }
+
+    /**
+     * Creates a renderer with its worker threads.
+     *
+     * @param chunkSize the size of a chunk in pixels
+     * @param threads   the number of threads drawing the chunks
+     */
+    public ChunkedTileRenderer(int chunkSize, int threads) {
+        this.chunkSize = chunkSize;
+        this.threads = Math.max(1, threads);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(this.threads, this.threads, WORKER_KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "tile-raster-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true); // The window closing must be enough to exit the game
+            return thread;
+        });
+        workers.allowCoreThreadTimeOut(true); // A renderer left behind (e.g. after Retry) keeps no thread
+    }
+
+    /**
+     * Replaces the content drawn, dropping every chunk.
+     *
+     * @param source    the source of the static sprites
+     * @param unindexed the elements without a position, drawn in every chunk
+     * @param width     the width of the world in pixels
+     * @param height    the height of the world in pixels
+     */
+    public void setContent(SpriteSource source, List<Displayable> unindexed, int width, int height) {
+        this.source = source;
+        this.unindexed = new ArrayList<>(unindexed);
+        this.width = width;
+        this.height = height;
+        invalidate();
+    }
+
+    /**
+     * Drops every chunk, so that they are drawn again when they are seen.
+     * Waits for the chunks being drawn, so the sprites can be changed safely afterwards.
+     */
+    public void invalidate() {
+        for (Iterator<Chunk> iterator = chunks.values().iterator(); iterator.hasNext(); ) {
+            release(iterator.next());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Draws the part of the world seen by the camera, drawing the missing chunks first.
+     *
+     * @param g      the Graphics object used for drawing, in world coordinates
+     * @param gc     the configuration of the screen, to create images in its native format (may be null)
+     * @param camera the camera giving the visible part of the world
+     */
+    public void paint(Graphics g, GraphicsConfiguration gc, Camera camera) {
+        if (source == null || width <= 0 || height <= 0) {
+            return;
+        }
+        frame++;
+        int columns = (width + chunkSize - 1) / chunkSize;
+        int rows = (height + chunkSize - 1) / chunkSize;
+        int firstColumn = Math.max(0, camera.getX() / chunkSize);
+        int firstRow = Math.max(0, camera.getY() / chunkSize);
+        int lastColumn = Math.min(columns - 1, (camera.getX() + camera.getViewportWidth() - 1) / chunkSize);
+        int lastRow = Math.min(rows - 1, (camera.getY() + camera.getViewportHeight() - 1) / chunkSize);
+
+        // Start drawing the chunks of the view first, so the workers take them before those of the border
+        ArrayList<Chunk> visible = new ArrayList<>();
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                Chunk chunk = getOrStart(column, row, gc);
+                chunk.lastSeen = frame;
+                visible.add(chunk);
+            }
+        }
+        for (int row = Math.max(0, firstRow - 1); row <= Math.min(rows - 1, lastRow + 1); row++) {
+            for (int column = Math.max(0, firstColumn - 1); column <= Math.min(columns - 1, lastColumn + 1); column++) {
+                boolean inView = row >= firstRow && row <= lastRow && column >= firstColumn && column <= lastColumn;
+                if (!inView) {
+                    getOrStart(column, row, gc).lastSeen = frame;
+                }
+            }
+        }
+
+        // Copy the chunks of the view, waiting for those still being drawn
+        for (Chunk chunk : visible) {
+            try {
+                chunk.task.get();
+                g.drawImage(chunk.image, chunk.column * chunkSize, chunk.row * chunkSize, null);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                System.err.println("Cannot draw chunk " + chunk.column + "," + chunk.row + ": " + e.getCause());
+            }
+        }
+
+        int border = (lastColumn - firstColumn + 3) * (lastRow - firstRow + 3);
+        evict(border * KEPT_CHUNKS_FACTOR);
+    }
+
+    /**
+     * Gets a chunk, starting to draw it if it is not there yet.
+     */
+    private Chunk getOrStart(int column, int row, GraphicsConfiguration gc) {
+        long key = ((long) row << 32) | (column & 0xFFFFFFFFL);
+        Chunk chunk = chunks.get(key);
+        if (chunk == null) {
+            chunk = new Chunk(column, row, takeImage(gc));
+            chunks.put(key, chunk);
+            Chunk started = chunk;
+            SpriteSource chunkSource = source;
+            List<Displayable> chunkUnindexed = unindexed;
+            chunk.task = workers.submit(() -> rasterize(started, chunkSource, chunkUnindexed));
+        }
+        return chunk;
+    }
+
+    /**
+     * Draws the static sprites of a chunk into its image. Runs on a worker thread.
+     */
+    private void rasterize(Chunk chunk, SpriteSource chunkSource, List<Displayable> chunkUnindexed) {
+        if (!chunk.state.compareAndSet(QUEUED, RUNNING)) {
+            return; // Dropped while waiting in the queue
+        }
+        int x = chunk.column * chunkSize;
+        int y = chunk.row * chunkSize;
+        Graphics2D g = chunk.image.createGraphics();
+        try {
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, 0, chunkSize, chunkSize);
+            g.setComposite(AlphaComposite.SrcOver);
+            g.translate(-x, -y);
+            g.clipRect(x, y, chunkSize, chunkSize); // Sprites on the edge are cut, their neighbour draws the rest
+            chunkSource.forEachIn(x, y, chunkSize, chunkSize, sprite -> sprite.draw(g));
+            for (Displayable displayable : chunkUnindexed) {
+                displayable.draw(g);
+            }
+        } finally {
+            g.dispose();
+            chunk.state.set(DONE);
+        }
+        rasterizedCount.incrementAndGet();
+    }
+
+    /**
+     * Drops the least recently seen chunks until no more than a given number are kept.
+     */
+    private void evict(int maxChunks) {
+        while (chunks.size() > maxChunks) {
+            Long oldestKey = null;
+            long oldestFrame = Long.MAX_VALUE;
+            for (Map.Entry<Long, Chunk> entry : chunks.entrySet()) {
+                if (entry.getValue().lastSeen < oldestFrame) {
+                    oldestFrame = entry.getValue().lastSeen;
+                    oldestKey = entry.getKey();
+                }
+            }
+            if (oldestKey == null || oldestFrame == frame) {
+                return; // Everything kept is in use
+            }
+            release(chunks.remove(oldestKey));
+        }
+    }
+
+    /**
+     * Gives the image of a dropped chunk back for reuse, waiting for its drawing to end if a worker started it.
+     */
+    private void release(Chunk chunk) {
+        if (!chunk.state.compareAndSet(QUEUED, DROPPED)) {
+            try {
+                chunk.task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return; // The image may still be in use: it is left to the garbage collector
+            } catch (ExecutionException e) {
+                // The chunk was not drawn, but its image can still be reused
+            }
+        }
+        freeImages.push(chunk.image);
+    }
+
+    /**
+     * Takes a free image for a new chunk, or creates one.
+     */
+    private BufferedImage takeImage(GraphicsConfiguration gc) {
+        BufferedImage image = freeImages.poll();
+        if (image != null) {
+            return image;
+        }
+        // A compatible image has the pixel format of the screen, so copying it is fast
+        return (gc != null)
+                ? gc.createCompatibleImage(chunkSize, chunkSize, Transparency.TRANSLUCENT)
+                : new BufferedImage(chunkSize, chunkSize, BufferedImage.TYPE_INT_ARGB_PRE);
+    }
+
+    /**
+     * Stops the worker threads. The renderer must not be used afterwards.
+     */
+    public void close() {
+        workers.shutdownNow();
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getChunkCount() {
+        return chunks.size();
+    }
+
+    public long getRasterizedCount() {
+        return rasterizedCount.get();
+    }
+}
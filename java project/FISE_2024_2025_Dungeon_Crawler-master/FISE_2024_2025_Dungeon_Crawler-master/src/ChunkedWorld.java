@@ -0,0 +1,432 @@
+import java.awt.*;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * ChunkedWorld is a level streamed from its text file, for maps too big to be loaded at once by the Playground.
+ * The map is split into square chunks of tiles. A chunk is read from the file only when it is needed (by the
+ * physics, by the rendering, or because the followed sprite is close to it), and the chunks that were not used
+ * for the longest time are evicted when the memory budget is exceeded (LRU policy).
+ * Opening a level only reads where each line starts; no sprite is created before its chunk is displayed.
+ */
+public class ChunkedWorld implements TileGrid, SpriteSource, Engine {
+    // Rough memory cost of one sprite object, used to estimate the size of a chunk.
+    private static final int SPRITE_BYTES = 64;
+
+    // Size of the tiles in pixels (all the tile images are 64x64).
+    private final int tileWidth;
+    private final int tileHeight;
+
+    // Size of a chunk, in tiles on each side.
+    private final int chunkSize;
+
+    // Maximum estimated memory used by the resident chunks, in bytes.
+    private final long memoryBudget;
+
+    // Size of the map in tiles, and in chunks.
+    private final int columns;
+    private final int rows;
+    private final int chunkColumns;
+    private final int chunkRows;
+
+    // Position of each line in the file, and its length without the end of line characters.
+    private final long[] lineStarts;
+    private final int[] lineLengths;
+
+    // The level file, kept open to read the chunks.
+    private final RandomAccessFile file;
+
+    // Images of the tiles, loaded once and shared by the sprites of every chunk.
+    private final Image imageTree;
+    private final Image imageGrass;
+    private final Image imageRock;
+    private final Image imageTrap;
+
+    // Resident chunks by chunk index (row * chunkColumns + column), null when not loaded.
+    private final Chunk[] chunks;
+
+    // Most and least recently used resident chunks (doubly linked list for the LRU policy).
+    private Chunk mostRecent;
+    private Chunk leastRecent;
+
+    // Estimated memory used by the resident chunks, in bytes.
+    private long residentBytes = 0;
+
+    // Number of chunks read from the file and evicted since the world was opened.
+    private long loadCount = 0;
+    private long evictionCount = 0;
+
+    // Sprite followed by the streaming, and how many chunks around it are kept loaded.
+    private Sprite focus;
+    private int preloadRadius = 1;
+
+    // Buffer used to read one line of a chunk.
+    private final byte[] lineBuffer;
+
+    /**
+     * A square part of the map: the tile types, and the sprites once they have been asked for.
+     */
+    private static final class Chunk {
+        final int index;
+        final byte[] symbols;
+        final byte[] types;
+        ArrayList<Sprite> sprites;
+        long bytes;
+        Chunk previous; // More recently used
+        Chunk next;     // Less recently used
+
+        Chunk(int index, int size) {
+            this.index = index;
+            this.symbols = new byte[size * size];
+            this.types = new byte[size * size];
+            this.bytes = 2L * size * size;
+        }
+    }
+
+    /**
+     * Opens a level file for streaming. Only the positions of the lines are read.
+     *
+     * @param pathName     the path to the text file of the level (same format as for the Playground)
+     * @param chunkSize    the size of a chunk, in tiles on each side
+     * @param memoryBudget the maximum estimated memory used by the loaded chunks, in bytes
+     * @throws IOException if the level file or the tile images cannot be read
+     */
+    public ChunkedWorld(String pathName, int chunkSize, long memoryBudget) throws IOException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.chunkSize = chunkSize;
+        this.memoryBudget = memoryBudget;
+
+        // Get the images of the different types of sprites, shared through the tile atlas
+        AssetManager assets = AssetManager.getInstance();
+        imageTree = assets.getTileImage(AssetManager.TREE);
+        imageGrass = assets.getTileImage(AssetManager.GRASS);
+        imageRock = assets.getTileImage(AssetManager.ROCK);
+        imageTrap = assets.getTileImage(AssetManager.TRAP);
+        tileWidth = imageGrass.getWidth(null);
+        tileHeight = imageGrass.getHeight(null);
+
+        // Find where each line starts, without keeping its content
+        long[] starts = new long[1024];
+        int[] lengths = new int[1024];
+        int lineCount = 0;
+        int maxLength = 0;
+        try (InputStream input = new FileInputStream(pathName)) {
+            byte[] buffer = new byte[1 << 16];
+            long position = 0;
+            long lineStart = 0;
+            int length = 0;
+            boolean pendingLine = false;
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++, position++) {
+                    byte element = buffer[i];
+                    if (element == '\n') {
+                        if (lineCount == starts.length) {
+                            starts = Arrays.copyOf(starts, lineCount * 2);
+                            lengths = Arrays.copyOf(lengths, lineCount * 2);
+                        }
+                        starts[lineCount] = lineStart;
+                        lengths[lineCount] = length;
+                        maxLength = Math.max(maxLength, length);
+                        lineCount++;
+                        lineStart = position + 1;
+                        length = 0;
+                        pendingLine = false;
+                    } else if (element != '\r') {
+                        length = (int) (position + 1 - lineStart); // '\r' of a "\r\n" end is not counted
+                        pendingLine = true;
+                    }
+                }
+            }
+            if (pendingLine) { // Last line without end of line
+                if (lineCount == starts.length) {
+                    starts = Arrays.copyOf(starts, lineCount + 1);
+                    lengths = Arrays.copyOf(lengths, lineCount + 1);
+                }
+                starts[lineCount] = lineStart;
+                lengths[lineCount] = length;
+                maxLength = Math.max(maxLength, length);
+                lineCount++;
+            }
+        }
+        lineStarts = starts;
+        lineLengths = lengths;
+        columns = maxLength;
+        rows = lineCount;
+        chunkColumns = (columns + chunkSize - 1) / chunkSize;
+        chunkRows = (rows + chunkSize - 1) / chunkSize;
+        chunks = new Chunk[chunkColumns * chunkRows];
+        lineBuffer = new byte[chunkSize];
+        file = new RandomAccessFile(pathName, "r");
+    }
+
+    /**
+     * Sets the sprite around which the chunks are loaded in advance by update().
+     *
+     * @param focus         the sprite to follow (usually the hero)
+     * @param preloadRadius the number of chunks kept loaded on each side of the chunk of the sprite
+     */
+    public synchronized void setFocus(Sprite focus, int preloadRadius) {
+        this.focus = focus;
+        this.preloadRadius = preloadRadius;
+    }
+
+    /**
+     * Loads the chunks around the followed sprite, so that the physics and the rendering
+     * rarely have to wait for the file. Called on each tick by the game loop.
+     */
+    @Override
+    public synchronized void update() {
+        if (focus == null) {
+            return;
+        }
+        int centerColumn = (int) Math.floor(focus.getX() / tileWidth) / chunkSize;
+        int centerRow = (int) Math.floor(focus.getY() / tileHeight) / chunkSize;
+        for (int chunkRow = centerRow - preloadRadius; chunkRow <= centerRow + preloadRadius; chunkRow++) {
+            for (int chunkColumn = centerColumn - preloadRadius; chunkColumn <= centerColumn + preloadRadius; chunkColumn++) {
+                if (chunkColumn >= 0 && chunkRow >= 0 && chunkColumn < chunkColumns && chunkRow < chunkRows) {
+                    getChunk(chunkColumn, chunkRow);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the type of a tile, loading its chunk if needed. Cells outside of the map are EMPTY.
+     *
+     * @param column the column of the tile
+     * @param row    the row of the tile
+     * @return the tile type
+     */
+    @Override
+    public synchronized byte getTile(int column, int row) {
+        if (column < 0 || row < 0 || column >= columns || row >= rows) {
+            return CollisionMap.EMPTY;
+        }
+        Chunk chunk = getChunk(column / chunkSize, row / chunkSize);
+        return chunk.types[(row % chunkSize) * chunkSize + (column % chunkSize)];
+    }
+
+    /**
+     * Calls an action on every static sprite overlapping a rectangle of the world.
+     * The chunks of the rectangle are loaded and their sprites created if needed.
+     *
+     * @param x      the x-coordinate of the rectangle
+     * @param y      the y-coordinate of the rectangle
+     * @param width  the width of the rectangle
+     * @param height the height of the rectangle
+     * @param action the action to run on each sprite found
+     */
+    @Override
+    public synchronized void forEachIn(double x, double y, double width, double height, Consumer<Sprite> action) {
+        int chunkPixelWidth = chunkSize * tileWidth;
+        int chunkPixelHeight = chunkSize * tileHeight;
+        int firstColumn = Math.max(0, (int) Math.floor(x / chunkPixelWidth));
+        int lastColumn = Math.min(chunkColumns - 1, (int) Math.floor((x + width) / chunkPixelWidth));
+        int firstRow = Math.max(0, (int) Math.floor(y / chunkPixelHeight));
+        int lastRow = Math.min(chunkRows - 1, (int) Math.floor((y + height) / chunkPixelHeight));
+
+        for (int chunkRow = firstRow; chunkRow <= lastRow; chunkRow++) {
+            for (int chunkColumn = firstColumn; chunkColumn <= lastColumn; chunkColumn++) {
+                for (Sprite sprite : getSprites(getChunk(chunkColumn, chunkRow))) {
+                    if (sprite.getX() + sprite.getWidth() > x && sprite.getY() + sprite.getHeight() > y
+                            && sprite.getX() < x + width && sprite.getY() < y + height) {
+                        action.accept(sprite);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets a resident chunk, reading it from the file if needed, and marks it as the most recently used.
+     */
+    private Chunk getChunk(int chunkColumn, int chunkRow) {
+        int index = chunkRow * chunkColumns + chunkColumn;
+        Chunk chunk = chunks[index];
+        if (chunk == null) {
+            chunk = readChunk(chunkColumn, chunkRow);
+            chunks[index] = chunk;
+            residentBytes += chunk.bytes;
+            loadCount++;
+            linkFirst(chunk);
+            evictOverBudget();
+        } else if (chunk != mostRecent) {
+            unlink(chunk);
+            linkFirst(chunk);
+        }
+        return chunk;
+    }
+
+    /**
+     * Reads the symbols of a chunk from the file and converts them to tile types.
+     */
+    private Chunk readChunk(int chunkColumn, int chunkRow) {
+        Chunk chunk = new Chunk(chunkRow * chunkColumns + chunkColumn, chunkSize);
+        int firstColumn = chunkColumn * chunkSize;
+        try {
+            for (int localRow = 0; localRow < chunkSize; localRow++) {
+                int row = chunkRow * chunkSize + localRow;
+                if (row >= rows) {
+                    break;
+                }
+                int count = Math.min(chunkSize, lineLengths[row] - firstColumn);
+                if (count <= 0) {
+                    continue; // Short line: nothing in this chunk
+                }
+                file.seek(lineStarts[row] + firstColumn);
+                file.readFully(lineBuffer, 0, count);
+                for (int localColumn = 0; localColumn < count; localColumn++) {
+                    int cell = localRow * chunkSize + localColumn;
+                    chunk.symbols[cell] = lineBuffer[localColumn];
+                    chunk.types[cell] = CollisionMap.tileTypeOf(lineBuffer[localColumn]);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read chunk " + chunkColumn + "," + chunkRow, e);
+        }
+        return chunk;
+    }
+
+    /**
+     * Gets the sprites of a chunk, creating them the first time (same symbols as in the Playground).
+     */
+    private ArrayList<Sprite> getSprites(Chunk chunk) {
+        if (chunk.sprites != null) {
+            return chunk.sprites;
+        }
+        ArrayList<Sprite> sprites = new ArrayList<>();
+        int firstColumn = (chunk.index % chunkColumns) * chunkSize;
+        int firstRow = (chunk.index / chunkColumns) * chunkSize;
+        for (int cell = 0; cell < chunk.symbols.length; cell++) {
+            int x = (firstColumn + cell % chunkSize) * tileWidth;
+            int y = (firstRow + cell / chunkSize) * tileHeight;
+            switch (chunk.symbols[cell]) {
+                case 'T' -> sprites.add(new SolidSprite(x, y, imageTree, tileWidth, tileHeight));
+                case ' ' -> sprites.add(new Sprite(x, y, imageGrass, tileWidth, tileHeight));
+                case 'R' -> sprites.add(new SolidSprite(x, y, imageRock, tileWidth, tileHeight));
+                case 'J' -> sprites.add(new Trap(x, y, imageTrap, tileWidth, tileHeight));
+            }
+        }
+        chunk.sprites = sprites;
+        long spriteBytes = (long) sprites.size() * SPRITE_BYTES;
+        chunk.bytes += spriteBytes;
+        residentBytes += spriteBytes;
+        evictOverBudget();
+        return sprites;
+    }
+
+    /**
+     * Evicts the least recently used chunks until the memory budget is respected.
+     * The most recently used chunk is never evicted, even if it alone exceeds the budget.
+     */
+    private void evictOverBudget() {
+        while (residentBytes > memoryBudget && leastRecent != null && leastRecent != mostRecent) {
+            Chunk evicted = leastRecent;
+            unlink(evicted);
+            chunks[evicted.index] = null;
+            residentBytes -= evicted.bytes;
+            evictionCount++;
+        }
+    }
+
+    /**
+     * Puts a chunk at the head of the LRU list.
+     */
+    private void linkFirst(Chunk chunk) {
+        chunk.previous = null;
+        chunk.next = mostRecent;
+        if (mostRecent != null) {
+            mostRecent.previous = chunk;
+        }
+        mostRecent = chunk;
+        if (leastRecent == null) {
+            leastRecent = chunk;
+        }
+    }
+
+    /**
+     * Removes a chunk from the LRU list.
+     */
+    private void unlink(Chunk chunk) {
+        if (chunk.previous != null) {
+            chunk.previous.next = chunk.next;
+        } else {
+            mostRecent = chunk.next;
+        }
+        if (chunk.next != null) {
+            chunk.next.previous = chunk.previous;
+        } else {
+            leastRecent = chunk.previous;
+        }
+        chunk.previous = null;
+        chunk.next = null;
+    }
+
+    /**
+     * Closes the level file. The world cannot load chunks anymore afterwards.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    public synchronized void close() throws IOException {
+        file.close();
+    }
+
+    @Override
+    public int getColumns() {
+        return columns;
+    }
+
+    @Override
+    public int getRows() {
+        return rows;
+    }
+
+    @Override
+    public int getTileWidth() {
+        return tileWidth;
+    }
+
+    @Override
+    public int getTileHeight() {
+        return tileHeight;
+    }
+
+    /**
+     * Gets the width of the level in pixels.
+     *
+     * @return the width of the level
+     */
+    public int getWidth() {
+        return columns * tileWidth;
+    }
+
+    /**
+     * Gets the height of the level in pixels.
+     *
+     * @return the height of the level
+     */
+    public int getHeight() {
+        return rows * tileHeight;
+    }
+
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public synchronized long getLoadCount() {
+        return loadCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+}
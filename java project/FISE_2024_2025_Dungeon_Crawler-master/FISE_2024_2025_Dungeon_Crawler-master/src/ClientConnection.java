@@ -0,0 +1,235 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ClientConnection is the client side of the connection to a GameServer: it sends the keys of the player
+ * and rebuilds the state of the game from the delta snapshots, acknowledging each one so that the next
+ * deltas are computed from it. The last states are kept, since the server computes a delta from the last
+ * state it knows the client has.
+ * After the welcome message the socket is non-blocking: poll() only reads what has already arrived, so it
+ * can be called on each tick of a game loop, or when a Selector says the socket is readable.
+ */
+public class ClientConnection implements AutoCloseable {
+    // Size of the buffers: received snapshots, and messages waiting to be sent.
+    private static final int INPUT_BUFFER_BYTES = 1 << 18;
+    private static final int OUTPUT_BUFFER_BYTES = 4096;
+
+    private final SocketChannel channel;
+    private final ByteBuffer input = ByteBuffer.allocate(INPUT_BUFFER_BYTES);
+    private final ByteBuffer output = ByteBuffer.allocate(OUTPUT_BUFFER_BYTES);
+
+    // Content of the welcome message.
+    private final int playerId;
+    private final int tickRate;
+    private final long levelChecksum;
+    private final String levelPath;
+
+    // States received in the last ticks, by tick % GameServer.HISTORY_TICKS, and the last one (null before).
+    private final SnapshotState[] history = new SnapshotState[GameServer.HISTORY_TICKS];
+    private SnapshotState latest;
+
+    // Bytes and snapshots received, and snapshots that were not deltas.
+    private long bytesReceived = 0;
+    private long snapshotCount = 0;
+    private long fullSnapshotCount = 0;
+
+    /**
+     * Connects to a server and reads its welcome message.
+     *
+     * @param host the host of the server
+     * @param port the port of the server
+     * @throws IOException if the server cannot be reached or does not welcome the client
+     */
+    public ClientConnection(String host, int port) throws IOException {
+        channel = SocketChannel.open(new InetSocketAddress(host, port));
+        try {
+            channel.socket().setTcpNoDelay(true); // Keys are small and must leave at once
+            int length;
+            while ((length = NetProtocol.completeMessageLength(flipped())) < 0) {
+                input.compact();
+                int read = channel.read(input);
+                if (read < 0) {
+                    throw new EOFException("Connection closed by the server (full?)");
+                }
+                bytesReceived += read;
+            }
+            int end = input.position() + NetProtocol.LENGTH_BYTES + length;
+            input.position(input.position() + NetProtocol.LENGTH_BYTES);
+            if (input.get() != NetProtocol.WELCOME) {
+                throw new IOException("Not a game server");
+            }
+            playerId = NetProtocol.getVarInt(input);
+            tickRate = NetProtocol.getVarInt(input);
+            levelChecksum = input.getLong();
+            byte[] path = new byte[input.getShort() & 0xFFFF];
+            input.get(path);
+            levelPath = new String(path, StandardCharsets.UTF_8);
+            input.position(end);
+            input.compact(); // Snapshots may already follow
+            channel.configureBlocking(false);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        for (int i = 0; i < history.length; i++) {
+            history[i] = new SnapshotState(16);
+        }
+    }
+
+    /**
+     * Flips the input buffer to read what was received.
+     */
+    private ByteBuffer flipped() {
+        input.flip();
+        return input;
+    }
+
+    /**
+     * Sends a key event of the player.
+     *
+     * @param type    InputRingBuffer.KEY_PRESSED or KEY_RELEASED
+     * @param keyCode the code of the key
+     * @throws IOException if the connection is broken
+     */
+    public void sendInput(int type, int keyCode) throws IOException {
+        int start = NetProtocol.beginMessage(output, NetProtocol.INPUT);
+        output.put((byte) type);
+        NetProtocol.putVarInt(output, keyCode);
+        NetProtocol.endMessage(output, start);
+        flush();
+    }
+
+    /**
+     * Reads the snapshots received since the last call, without waiting, and acknowledges the last one.
+     *
+     * @return the number of snapshots read
+     * @throws IOException if the connection is closed or a snapshot cannot be rebuilt
+     */
+    public int poll() throws IOException {
+        int read;
+        while ((read = channel.read(input)) > 0) {
+            bytesReceived += read;
+        }
+        if (read < 0) {
+            throw new EOFException("Connection closed by the server");
+        }
+        int snapshots = 0;
+        input.flip();
+        try {
+            int length;
+            while ((length = NetProtocol.completeMessageLength(input)) > 0) {
+                int end = input.position() + NetProtocol.LENGTH_BYTES + length;
+                int received = input.limit();
+                input.position(input.position() + NetProtocol.LENGTH_BYTES);
+                input.limit(end); // A snapshot too short fails instead of reading the next message
+                if (input.get() == NetProtocol.SNAPSHOT) {
+                    readSnapshot();
+                    snapshots++;
+                }
+                input.limit(received);
+                input.position(end);
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("Bad snapshot: " + e.getMessage(), e);
+        } finally {
+            input.compact();
+        }
+        if (snapshots > 0) {
+            int start = NetProtocol.beginMessage(output, NetProtocol.ACK);
+            NetProtocol.putVarLong(output, latest.getTick());
+            NetProtocol.endMessage(output, start);
+        }
+        flush();
+        return snapshots;
+    }
+
+    /**
+     * Rebuilds a state from a delta and the state it was computed from.
+     */
+    private void readSnapshot() throws IOException {
+        long tick = NetProtocol.getVarLong(input.duplicate());
+        long baseTick = SnapshotState.peekBaseTick(input);
+        SnapshotState base = null;
+        if (baseTick != 0) {
+            base = history[(int) (baseTick % history.length)];
+            if (base.getTick() != baseTick) {
+                throw new IOException("State of tick " + baseTick + " not kept for the snapshot of tick " + tick);
+            }
+        } else {
+            fullSnapshotCount++;
+        }
+        SnapshotState state = history[(int) (tick % history.length)];
+        state.readDelta(base, input);
+        latest = state;
+        snapshotCount++;
+    }
+
+    /**
+     * Sends what the socket accepts of the waiting messages, without blocking.
+     */
+    private void flush() throws IOException {
+        output.flip();
+        channel.write(output);
+        output.compact();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Gets the socket, e.g. to register it with a Selector (it is non-blocking).
+     *
+     * @return the channel of the connection
+     */
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Gets the last state received.
+     *
+     * @return the state, or null before the first snapshot
+     */
+    public SnapshotState getLatestState() {
+        return latest;
+    }
+
+    public int getPlayerId() {
+        return playerId;
+    }
+
+    public int getTickRate() {
+        return tickRate;
+    }
+
+    public long getLevelChecksum() {
+        return levelChecksum;
+    }
+
+    public String getLevelPath() {
+        return levelPath;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getSnapshotCount() {
+        return snapshotCount;
+    }
+
+    /**
+     * Gets the number of snapshots that were not deltas (the first one, and after losing the history).
+     *
+     * @return the number of full snapshots
+     */
+    public long getFullSnapshotCount() {
+        return fullSnapshotCount;
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * CollisionMap stores the type of every tile of the level in a flat byte array,
+ * indexed by column and row. It is built once by the Playground while the level is parsed
+ * and lets the physics answer "is there a solid tile here?" by looking only at the few cells
+ * covered by a hitbox, instead of scanning every sprite of the environment.
+ */
+public class CollisionMap implements TileGrid {
+    // Tile types stored in the map.
+    public static final byte EMPTY = 0; // Nothing, or a passable tile such as grass
+    public static final byte SOLID = 1; // Trees and rocks: blocks movement
+    public static final byte TRAP = 2;  // Traps: passable, but hurts the hero
+    public static final byte EXIT = 3;  // Exit of the level ('.'): passable
+
+    // Number of columns and rows of the grid.
+    private final int columns;
+    private final int rows;
+
+    // Size of one tile in pixels.
+    private final int tileWidth;
+    private final int tileHeight;
+
+    // Tile types, stored row by row (index = row * columns + column).
+    private final byte[] tiles;
+
+    /**
+     * Creates an empty collision map (every cell is EMPTY).
+     *
+     * @param columns    the number of columns of the grid
+     * @param rows       the number of rows of the grid
+     * @param tileWidth  the width of one tile in pixels
+     * @param tileHeight the height of one tile in pixels
+     */
+    public CollisionMap(int columns, int rows, int tileWidth, int tileHeight) {
+        this.columns = columns;
+        this.rows = rows;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.tiles = new byte[columns * rows];
+    }
+
+    /**
+     * Sets the type of a tile.
+     *
+     * @param column the column of the tile
+     * @param row    the row of the tile
+     * @param type   the tile type (EMPTY, SOLID, TRAP or EXIT)
+     */
+    public void setTile(int column, int row, byte type) {
+        tiles[row * columns + column] = type;
+    }
+
+    /**
+     * Gets the type of a tile. Cells outside of the grid are EMPTY, as there is no sprite there.
+     *
+     * @param column the column of the tile
+     * @param row    the row of the tile
+     * @return the tile type
+     */
+    @Override
+    public byte getTile(int column, int row) {
+        if (column < 0 || row < 0 || column >= columns || row >= rows) {
+            return EMPTY;
+        }
+        return tiles[row * columns + column];
+    }
+
+    /**
+     * Gets the tile type of a symbol of the level file.
+     *
+     * @param symbol the character read in the level file
+     * @return SOLID for trees and rocks, TRAP for traps, EXIT for the exit, EMPTY for anything else
+     */
+    public static byte tileTypeOf(byte symbol) {
+        switch (symbol) {
+            case 'T':
+            case 'R':
+                return SOLID;
+            case 'J':
+                return TRAP;
+            case '.':
+                return EXIT;
+            default:
+                return EMPTY;
+        }
+    }
+
+    @Override
+    public int getColumns() {
+        return columns;
+    }
+
+    @Override
+    public int getRows() {
+        return rows;
+    }
+
+    @Override
+    public int getTileWidth() {
+        return tileWidth;
+    }
+
+    @Override
+    public int getTileHeight() {
+        return tileHeight;
+    }
+}
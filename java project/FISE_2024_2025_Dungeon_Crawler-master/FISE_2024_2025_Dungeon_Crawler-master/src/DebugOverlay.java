@@ -0,0 +1,138 @@
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * DebugOverlay shows the performance of the game on top of the screen: frames per second, ticks per second,
+ * and the p50, p99 and max duration of each engine update over the last second, plus the work of the physics.
+ * The text is computed once per second, so drawing the overlay on each frame stays cheap.
+ * It is drawn by the RenderEngine and toggled with F3.
+ */
+public class DebugOverlay implements Displayable {
+    // Interval over which the numbers are measured, in nanoseconds.
+    private static final long INTERVAL_NS = 1_000_000_000L;
+
+    // Position and colors of the text.
+    private static final int MARGIN = 8;
+    private static final int LINE_HEIGHT = 14;
+    private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    private static final Color BACKGROUND = new Color(0, 0, 0, 160);
+
+    // Histograms measured by the engines, by name, and their values over the last interval.
+    private final ArrayList<String> names = new ArrayList<>();
+    private final ArrayList<LatencyHistogram> sources = new ArrayList<>();
+    private final ArrayList<LatencyHistogram> intervals = new ArrayList<>();
+
+    // Game loop counting the ticks, and physics giving its work (both may be null).
+    private final GameLoop gameLoop;
+    private final PhysicEngine physicEngine;
+
+    // Frames drawn and ticks run at the start of the interval.
+    private long frameCount = 0;
+    private long intervalStartNs = System.nanoTime();
+    private long intervalStartFrames = 0;
+    private long intervalStartTicks = 0;
+
+    // Lines of text shown, computed at the end of each interval.
+    private String[] lines = {"Measuring..."};
+
+    // Area covered by the overlay when it was last drawn, in screen coordinates.
+    private volatile Rectangle bounds = new Rectangle(0, 0, 320, 120);
+
+    /**
+     * Creates an overlay showing the engines of a game loop.
+     *
+     * @param gameLoop     the game loop, whose timed engines and tick count are shown (may be null)
+     * @param physicEngine the physics, whose sprite and collision check counts are shown (may be null)
+     */
+    public DebugOverlay(GameLoop gameLoop, PhysicEngine physicEngine) {
+        this.gameLoop = gameLoop;
+        this.physicEngine = physicEngine;
+        if (gameLoop != null) {
+            for (TimedEngine engine : gameLoop.getTimedEngines()) {
+                addHistogram(engine.getName(), engine.getHistogram());
+            }
+        }
+    }
+
+    /**
+     * Adds a histogram to show, e.g. the paint time of the RenderEngine.
+     *
+     * @param name      the name shown in front of the percentiles
+     * @param histogram the histogram filled by the measured code
+     */
+    public void addHistogram(String name, LatencyHistogram histogram) {
+        names.add(name);
+        sources.add(histogram);
+        intervals.add(new LatencyHistogram());
+    }
+
+    /**
+     * Counts a drawn frame, and computes the numbers when an interval is over.
+     * Called by the RenderEngine on each painted frame (a paint of the whole panel, or one paint of the changed
+     * regions), even when the overlay is hidden. Called on the painting thread only, which also draws the lines.
+     */
+    public void onFrame() {
+        frameCount++;
+        long now = System.nanoTime();
+        long elapsed = now - intervalStartNs;
+        if (elapsed < INTERVAL_NS) {
+            return;
+        }
+        long ticks = (gameLoop != null) ? gameLoop.getTickCount() : 0;
+        double seconds = elapsed / 1e9;
+        ArrayList<String> text = new ArrayList<>();
+        text.add(String.format(Locale.ROOT, "FPS %5.1f   TPS %5.1f",
+                (frameCount - intervalStartFrames) / seconds, (ticks - intervalStartTicks) / seconds));
+        if (physicEngine != null) {
+            text.add(String.format(Locale.ROOT, "Sprites %d   Checks/tick %d   Particles %d",
+                    physicEngine.getLastEntityCount(), physicEngine.getLastCollisionCheckCount(),
+                    physicEngine.getParticleSystem().getLiveCount()));
+        }
+        text.add(String.format(Locale.ROOT, "%-20s %8s %8s %8s", "ms", "p50", "p99", "max"));
+        for (int i = 0; i < names.size(); i++) {
+            LatencyHistogram interval = intervals.get(i);
+            interval.reset();
+            sources.get(i).drainTo(interval);
+            text.add(String.format(Locale.ROOT, "%-20s %8.3f %8.3f %8.3f", names.get(i),
+                    interval.getPercentile(50) / 1e6, interval.getPercentile(99) / 1e6, interval.getMax() / 1e6));
+        }
+        lines = text.toArray(new String[0]);
+        intervalStartNs = now;
+        intervalStartFrames = frameCount;
+        intervalStartTicks = ticks;
+    }
+
+    /**
+     * Gets the area covered by the overlay, so that it can be drawn again when its text changes.
+     *
+     * @return the area in screen coordinates
+     */
+    public Rectangle getBounds() {
+        return bounds;
+    }
+
+    /**
+     * Draws the overlay in the top-left corner. The graphics must be in screen coordinates.
+     *
+     * @param g the graphics of the panel
+     */
+    @Override
+    public void draw(Graphics g) {
+        String[] shown = lines;
+        g.setFont(FONT);
+        FontMetrics metrics = g.getFontMetrics();
+        int width = 0;
+        for (String line : shown) {
+            width = Math.max(width, metrics.stringWidth(line));
+        }
+        Rectangle area = new Rectangle(MARGIN / 2, MARGIN / 2, width + MARGIN, shown.length * LINE_HEIGHT + MARGIN);
+        bounds = area;
+        g.setColor(BACKGROUND);
+        g.fillRect(area.x, area.y, area.width, area.height);
+        g.setColor(Color.WHITE);
+        for (int i = 0; i < shown.length; i++) {
+            g.drawString(shown[i], MARGIN, MARGIN + (i + 1) * LINE_HEIGHT - 3);
+        }
+    }
+}
@@ -12,4 +12,15 @@ public interface Displayable {
      * @param g the Graphics object used to render the element
      */
     public void draw(Graphics g);
+
+    /**
+     * Draws the displayable element between its previous and current position.
+     * Static elements do not move, so by default this is the same as draw(g).
+     *
+     * @param g             the Graphics object used to render the element
+     * @param interpolation the fraction (from 0 to 1) of the simulation tick elapsed since the last update
+     */
+    public default void draw(Graphics g, double interpolation) {
+        draw(g);
+    }
 }
@@ -1,68 +1,92 @@
 import java.awt.*;
-        import java.awt.geom.Rectangle2D;
-import java.util.ArrayList;
 
 /**
  * Represents a movable and animated sprite with direction and collision detection.
  * This class inherits from SolidSprite and adds additional movement and animation controls.
+ * Its state (position, direction, speed, flags...) is stored in an EntityStore: the sprite is a view over
+ * one index of the store, so that the PhysicEngine can go through all the moving sprites with dense loops.
+ * The x and y fields inherited from Sprite only keep the starting position: use getX() and getY().
  Track Trap Interactions: Add a counter in DynamicSprite to track how many times the character has entered a trap.
  */
 public class DynamicSprite extends SolidSprite {
-    // Add a trap count to track trap touches
-    private int trapCount = 0;
-    private boolean isInvicible = false;
-    private long lastTimeCollision=System.currentTimeMillis();
-    private final long invincibleDelayInMs=2000;
+    // Store holding the state of the sprite, and the index of the sprite in it.
+    // The trap count, invincibility and time of the last collision are kept there too.
+    private EntityStore store;
+    private int index;
+
+    // Time a sprite stays invincible after hitting a trap, in milliseconds.
+    public static final long INVINCIBLE_DELAY_MS = 2000;
+
+    // Listener told when the game is over (null if nobody listens).
+    private GameListener gameListener;
+
+    /**
+     * Sets the listener told about the game events of this sprite, such as the game being over.
+     *
+     * @param gameListener the listener, or null
+     */
+    public void setGameListener(GameListener gameListener) {
+        this.gameListener = gameListener;
+    }
 
     /**
      * Increments the trap counter. If it reaches 3, the game is over.
      */
     public void incrementTrapCount() {
-            if (!isInvicible) { // Only increment if not invincible
-                trapCount++;
+            if (!getIsInvicible()) { // Only increment if not invincible
+                store.trapCount[index]++;
                 becomeInvicible(); // Activate invincibility after trap interaction
             }
 
             // Check if the player has lost all chances
-            if (trapCount >= 3) {
-                Main.gameOver(); // Display Game Over screen
+            if (store.trapCount[index] >= 3 && gameListener != null) {
+                gameListener.onGameOver(this); // Tell the game (e.g. to display the Game Over screen)
             }
         }
 
 
 
+    /**
+     * Called when the sprite steps onto the exit of the level: tells the listener that the level is complete.
+     */
+    public void reachExit() {
+        if (gameListener != null) {
+            gameListener.onLevelComplete(this);
+        }
+    }
+
     /**
      * Resets the trap count (useful if restarting the game).
      */
     public void resetTrapCount() {
-        trapCount = 0;
+        store.trapCount[index] = 0;
     }
 
+    /**
+     * Gets the number of traps touched.
+     *
+     * @return the trap count
+     */
+    public int getTrapCount() {
+        return store.trapCount[index];
+    }
 
 
 
 
 
-    // Direction of movement; initialized to face EAST by default.
-    private Direction direction = Direction.EAST;
 
     // Speed of the sprite in pixels per frame.
-    private double speed = 5;
+    private static final double DEFAULT_SPEED = 5;
 
     // Time between frames for animation, in milliseconds.
-    private double timeBetweenFrame = 250;
-
-    // Determines whether the sprite is currently moving.
-    private boolean isWalking = true;
-
-    private boolean isAlive = true;
-
-    // Number of columns in the sprite sheet for animation frames.
-    private final int spriteSheetNumberOfColumn = 10;
+    private static final long TIME_BETWEEN_FRAME = 250;
 
+    // Frames of the sprite for each direction, cut from the sprite sheet once (null if there is no image).
+    private final Animation animation;
 
     public void dies(){
-        isAlive=false;
+        store.flags[index] &= ~EntityStore.ALIVE;
         System.out.println("Dead");
     }
     /**
@@ -75,49 +99,87 @@ public class DynamicSprite extends SolidSprite {
      * @param height The height of the sprite.
      */
     public DynamicSprite(double x, double y, Image image, double width, double height) {
+        this(x, y, image, (image == null) ? null
+                : new Animation(new SpriteSheet(image, (int) width, (int) height), TIME_BETWEEN_FRAME), width, height);
+    }
+
+    /**
+     * Constructor to initialize a dynamic sprite with an animation shared with other sprites
+     * (see AssetManager.getAnimation), so that the sprite sheet is sliced only once.
+     *
+     * @param x         The x-coordinate of the sprite.
+     * @param y         The y-coordinate of the sprite.
+     * @param animation The frames of the sprite for each direction.
+     * @param width     The width of the sprite.
+     * @param height    The height of the sprite.
+     */
+    public DynamicSprite(double x, double y, Animation animation, double width, double height) {
+        this(x, y, null, animation, width, height);
+    }
+
+    /**
+     * Common constructor: the image is kept as the sprite image, the animation is used for drawing.
+     */
+    private DynamicSprite(double x, double y, Image image, Animation animation, double width, double height) {
         super(x, y, image, width, height);
+        this.animation = animation;
+        // Until it joins a PhysicEngine, the sprite has a store of its own
+        this.store = new EntityStore(1);
+        this.index = store.add(this, x, y, width, height);
+        store.speed[index] = DEFAULT_SPEED;
+        store.direction[index] = (byte) Direction.EAST.ordinal(); // Facing EAST by default
+        store.flags[index] = EntityStore.WALKING | EntityStore.ALIVE;
     }
 
     /**
-     * Checks if moving in the current direction is possible by detecting collisions
-     * with solid sprites in the environment.
-     *
-     * @param environment List of sprites in the environment.
-     * @return true if movement is possible, false if it would cause a collision.
-     */
-    private boolean isMovingPossible(ArrayList<Sprite> environment) {
-        // Creates a hitbox for the next position based on direction and speed.
-        Rectangle2D.Double moved = new Rectangle2D.Double();
-
-        // Adjust hitbox position based on direction
-        switch (direction) {
-            case EAST:
-                moved.setRect(super.getHitBox().getX() + speed, super.getHitBox().getY(),
-                        super.getHitBox().getWidth(), super.getHitBox().getHeight());
-                break;
-            case WEST:
-                moved.setRect(super.getHitBox().getX() - speed, super.getHitBox().getY(),
-                        super.getHitBox().getWidth(), super.getHitBox().getHeight());
-                break;
-            case NORTH:
-                moved.setRect(super.getHitBox().getX(), super.getHitBox().getY() - speed,
-                        super.getHitBox().getWidth(), super.getHitBox().getHeight());
-                break;
-            case SOUTH:
-                moved.setRect(super.getHitBox().getX(), super.getHitBox().getY() + speed,
-                        super.getHitBox().getWidth(), super.getHitBox().getHeight());
-                break;
+     * Moves the state of the sprite into another store (e.g. the one of the PhysicEngine),
+     * removing it from its current store.
+     *
+     * @param target the new store of the sprite
+     */
+    public void moveToStore(EntityStore target) {
+        if (target == store) {
+            return;
         }
+        int newIndex = target.copyFrom(store, index);
+        store.remove(index);
+        store = target;
+        index = newIndex;
+    }
 
-        // Check collision with other solid sprites
-        for (Sprite s : environment) {
-            if ((s instanceof SolidSprite) && !(s instanceof Trap) && (s != this)) {
-                if (((SolidSprite) s).intersect(moved)) {
-                    return false; // Movement not possible if collision is detected
-                }
-            }
-        }
-        return true; // Movement is possible if no collisions detected
+    /**
+     * Called by the store when the sprite gets another index (after the removal of another sprite).
+     */
+    void setStoreIndex(int index) {
+        this.index = index;
+    }
+
+    /**
+     * Gets the store holding the state of the sprite.
+     *
+     * @return the entity store
+     */
+    public EntityStore getStore() {
+        return store;
+    }
+
+    /**
+     * Gets the index of the sprite in its store.
+     *
+     * @return the index in the entity store
+     */
+    public int getStoreIndex() {
+        return index;
+    }
+
+    @Override
+    public double getX() {
+        return store.x[index];
+    }
+
+    @Override
+    public double getY() {
+        return store.y[index];
     }
 
     /**
@@ -126,74 +188,115 @@ public class DynamicSprite extends SolidSprite {
      * @param direction The new direction for the sprite.
      */
     public void setDirection(Direction direction) {
-        this.direction = direction;
+        store.direction[index] = (byte) direction.ordinal();
     }
 
     /**
-     * Moves the sprite in the current direction by its speed.
+     * Gets the direction of the sprite.
+     *
+     * @return the direction the sprite faces
      */
-    private void move() {
-        switch (direction) {
-            case NORTH -> this.y -= speed;
-            case SOUTH -> this.y += speed;
-            case EAST -> this.x += speed;
-            case WEST -> this.x -= speed;
-        }
+    public Direction getDirection() {
+        return EntityStore.directionOf(store.direction[index]);
+    }
+
+    /**
+     * Sets the speed of the sprite.
+     *
+     * @param speed the speed in pixels per tick
+     */
+    public void setSpeed(double speed) {
+        store.speed[index] = speed;
+    }
+
+    public double getSpeed() {
+        return store.speed[index];
     }
 
     /**
      * Checks if movement is possible and, if so, moves the sprite in the current direction.
+     * Only the cells of the collision map under the moved hitbox are checked.
      *
-     * @param environment List of sprites in the environment.
+     * @param collisionMap Grid of the tile types of the environment.
      */
-    public void moveIfPossible(ArrayList<Sprite> environment) {
-        if (isMovingPossible(environment)) {
-            move();
-        }
-        // Check if the sprite has touched a trap
-        for (Sprite sprite : environment) {
-            if ((sprite instanceof SolidSprite) && ((SolidSprite) sprite).intersect(this.getHitBox())) {
-                // Assuming 'J' represents a trap in the game
-                if (sprite instanceof Trap) { // A new TrapSprite class could extend SolidSprite
-         //           Main.gameOver(); // Trigger game over when touching a trap
-                    return;
-                }
-            }
-        }
+    public void moveIfPossible(TileGrid collisionMap) {
+        store.moveIfPossible(index, collisionMap);
     }
 
     /**
-     * Draws the sprite on the screen, displaying the appropriate animation frame based on
-     * direction and time.
+     * Gets the x-coordinate of the sprite between its previous and current position.
+     *
+     * @param interpolation The fraction of the simulation tick elapsed since the last move.
+     * @return the interpolated x-coordinate
+     */
+    public double getInterpolatedX(double interpolation) {
+        double previousX = store.previousX[index];
+        return previousX + (store.x[index] - previousX) * interpolation;
+    }
+
+    /**
+     * Gets the y-coordinate of the sprite between its previous and current position.
+     *
+     * @param interpolation The fraction of the simulation tick elapsed since the last move.
+     * @return the interpolated y-coordinate
+     */
+    public double getInterpolatedY(double interpolation) {
+        double previousY = store.previousY[index];
+        return previousY + (store.y[index] - previousY) * interpolation;
+    }
+
+    /**
+     * Draws the sprite on the screen at its current position.
      *
      * @param g The Graphics object used for rendering the sprite.
      */
     @Override
     public void draw(Graphics g) {
-        // Calculate the current frame index based on system time for animation
-        int index = (int) (System.currentTimeMillis() / timeBetweenFrame % spriteSheetNumberOfColumn);
-
-        // Draw the current frame from the sprite sheet based on direction and index
-        if (!isInvicible || (System.currentTimeMillis()%250<150)){
-            g.drawImage(image, (int) x, (int) y, (int) (x + width), (int) (y + height),
-                    (int) (index * this.width),
-                    (int) (direction.getFrameLineNumber() * height),
-                    (int) ((index + 1) * this.width),
-                    (int) ((direction.getFrameLineNumber() + 1) * this.height), null);
+        draw(g, 1);
+    }
+
+    /**
+     * Draws the sprite on the screen, displaying the appropriate animation frame based on
+     * direction and time. The sprite is placed between its previous and current position.
+     * Frames are pre-sliced, so this is an unscaled copy of a cached image. Drawing never changes the
+     * state of the sprite: the frame comes from the time of the last tick.
+     *
+     * @param g             The Graphics object used for rendering the sprite.
+     * @param interpolation The fraction of the simulation tick elapsed since the last move.
+     */
+    @Override
+    public void draw(Graphics g, double interpolation) {
+        // Draw the current frame of the clip of the direction, already cut from the sheet: a plain copy
+        Image frame = getFrame();
+        if (frame != null) {
+            // Position between the last two ticks
+            g.drawImage(frame, (int) getInterpolatedX(interpolation), (int) getInterpolatedY(interpolation), null);
         }
-        //  Reset Invincibility:
-        if (isInvicible && System.currentTimeMillis()-lastTimeCollision > invincibleDelayInMs) {
-            isInvicible = false;
+    }
+
+    /**
+     * Gets the image drawn for the sprite at the time of the last tick: the frame of the animation for its
+     * direction, or nothing while it blinks during invincibility.
+     * The RenderEngine compares it between frames to know if the sprite must be drawn again.
+     *
+     * @return the frame to draw, or null if the sprite is not drawn at that time
+     */
+    public Image getFrame() {
+        long timeMs = store.getTime();
+        if (animation == null || (getIsInvicible() && timeMs % 250 >= 150)) {
+            return null;
         }
+        return animation.getClip(getDirection()).getFrame(timeMs);
     }
 
-    // Activates invincibility for the sprite
+    // Activates invincibility for the sprite, from the time of the current tick
+    // (it ends in the PhysicEngine update, after INVINCIBLE_DELAY_MS)
     public void becomeInvicible() {
-        isInvicible = true;
-        lastTimeCollision = System.currentTimeMillis();
+        store.flags[index] |= EntityStore.INVINCIBLE;
+        store.invincibleSince[index] = store.getTime();
     }
 
     public boolean getIsInvicible() {
-        return isInvicible;
+        return (store.flags[index] & EntityStore.INVINCIBLE) != 0;
     }
 }
@@ -0,0 +1,32 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event of one Engine update (or one paint of the RenderEngine), with its duration.
+ * Recorded with e.g. java -XX:StartFlightRecording=filename=game.jfr -cp bin Main, and shown in JDK Mission Control.
+ * When no recording is running, no event is created (see isRecording), so that an update allocates nothing.
+ */
+@Name("dungeon.EngineUpdate")
+@Label("Engine Update")
+@Category("Dungeon Crawler")
+@Description("One update of a game engine")
+public class EngineUpdateEvent extends Event {
+    // Type of the event, to ask if a recording wants it before creating one.
+    private static final EventType TYPE = EventType.getEventType(EngineUpdateEvent.class);
+
+    @Label("Engine")
+    public String engine;
+
+    /**
+     * Checks if a running recording has this event enabled.
+     *
+     * @return true if an event should be created for the next update
+     */
+    public static boolean isRecording() {
+        return TYPE.isEnabled();
+    }
+}
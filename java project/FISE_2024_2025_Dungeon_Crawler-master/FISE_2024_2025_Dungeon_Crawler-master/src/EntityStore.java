@@ -0,0 +1,349 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * EntityStore keeps the state of many moving entities in parallel arrays of primitives (one array per
+ * component, one index per entity) instead of one object per entity. The systems (e.g. the PhysicEngine)
+ * then go through each array from start to end, which stays fast with thousands of enemies.
+ * A DynamicSprite is a view over one index of a store: its getters and setters read and write the arrays.
+ * <p>
+ * Indexes are dense: removing an entity moves the last one into its place (and updates its view).
+ */
+public class EntityStore {
+    // Flags of an entity, combined in the flags array.
+    public static final int WALKING = 1;
+    public static final int INVINCIBLE = 2;
+    public static final int ALIVE = 4;
+
+    // Movement of one step in each direction, by Direction ordinal.
+    private static final Direction[] DIRECTIONS = Direction.values();
+    private static final double[] STEP_X = new double[DIRECTIONS.length];
+    private static final double[] STEP_Y = new double[DIRECTIONS.length];
+
+    static {
+        for (Direction direction : DIRECTIONS) {
+            switch (direction) {
+                case NORTH -> STEP_Y[direction.ordinal()] = -1;
+                case SOUTH -> STEP_Y[direction.ordinal()] = 1;
+                case EAST -> STEP_X[direction.ordinal()] = 1;
+                case WEST -> STEP_X[direction.ordinal()] = -1;
+            }
+        }
+    }
+
+    // Number of entities in the store (they use the indexes 0 to count - 1).
+    private int count = 0;
+
+    // Time of the current tick, in milliseconds of the game clock (set by the PhysicEngine).
+    private long time = 0;
+
+    // Components, one array each, indexed by entity. They are replaced by bigger ones when the store grows,
+    // so a system must read them from the store after adding entities.
+    double[] x;
+    double[] y;
+    double[] previousX;  // Position before the last tick, for interpolated drawing
+    double[] previousY;
+    double[] width;      // Size of the hitbox
+    double[] height;
+    double[] speed;      // In pixels per tick
+    byte[] direction;    // Direction ordinal
+    int[] flags;         // WALKING, INVINCIBLE, ALIVE
+    int[] trapCount;
+    long[] invincibleSince; // Time of the last trap hit, in milliseconds
+    long[] firstTriggerCell; // Cells under the hitbox when the TriggerIndex last looked (see TriggerIndex.cell)
+    long[] lastTriggerCell;
+
+    // View of each entity, told when the entity moves to another index.
+    DynamicSprite[] sprites;
+
+    /**
+     * Creates an empty store.
+     *
+     * @param initialCapacity the number of entities the store can hold before growing
+     */
+    public EntityStore(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        x = new double[capacity];
+        y = new double[capacity];
+        previousX = new double[capacity];
+        previousY = new double[capacity];
+        width = new double[capacity];
+        height = new double[capacity];
+        speed = new double[capacity];
+        direction = new byte[capacity];
+        flags = new int[capacity];
+        trapCount = new int[capacity];
+        invincibleSince = new long[capacity];
+        firstTriggerCell = new long[capacity];
+        lastTriggerCell = new long[capacity];
+        sprites = new DynamicSprite[capacity];
+    }
+
+    /**
+     * Adds an entity at the end of the store.
+     *
+     * @param sprite the view of the entity
+     * @param x      the x-coordinate of the entity
+     * @param y      the y-coordinate of the entity
+     * @param width  the width of the hitbox
+     * @param height the height of the hitbox
+     * @return the index of the new entity
+     */
+    public int add(DynamicSprite sprite, double x, double y, double width, double height) {
+        if (count == sprites.length) {
+            grow(count * 2);
+        }
+        int index = count++;
+        this.x[index] = x;
+        this.y[index] = y;
+        previousX[index] = x;
+        previousY[index] = y;
+        this.width[index] = width;
+        this.height[index] = height;
+        speed[index] = 0;
+        direction[index] = 0;
+        flags[index] = 0;
+        trapCount[index] = 0;
+        invincibleSince[index] = 0;
+        firstTriggerCell[index] = TriggerIndex.NO_CELL; // Triggers under a new entity are entered on the next tick
+        lastTriggerCell[index] = TriggerIndex.NO_CELL;
+        sprites[index] = sprite;
+        return index;
+    }
+
+    /**
+     * Adds a copy of an entity of another store, e.g. when a sprite joins the PhysicEngine.
+     *
+     * @param source      the store holding the entity
+     * @param sourceIndex the index of the entity in that store
+     * @return the index of the copy in this store
+     */
+    public int copyFrom(EntityStore source, int sourceIndex) {
+        int index = add(source.sprites[sourceIndex], source.x[sourceIndex], source.y[sourceIndex],
+                source.width[sourceIndex], source.height[sourceIndex]);
+        previousX[index] = source.previousX[sourceIndex];
+        previousY[index] = source.previousY[sourceIndex];
+        speed[index] = source.speed[sourceIndex];
+        direction[index] = source.direction[sourceIndex];
+        flags[index] = source.flags[sourceIndex];
+        trapCount[index] = source.trapCount[sourceIndex];
+        invincibleSince[index] = source.invincibleSince[sourceIndex];
+        return index;
+    }
+
+    /**
+     * Removes an entity. The last entity takes its index, and its view is told about it.
+     *
+     * @param index the index of the entity to remove
+     */
+    public void remove(int index) {
+        int last = --count;
+        if (index != last) {
+            x[index] = x[last];
+            y[index] = y[last];
+            previousX[index] = previousX[last];
+            previousY[index] = previousY[last];
+            width[index] = width[last];
+            height[index] = height[last];
+            speed[index] = speed[last];
+            direction[index] = direction[last];
+            flags[index] = flags[last];
+            trapCount[index] = trapCount[last];
+            invincibleSince[index] = invincibleSince[last];
+            firstTriggerCell[index] = firstTriggerCell[last];
+            lastTriggerCell[index] = lastTriggerCell[last];
+            sprites[index] = sprites[last];
+            sprites[index].setStoreIndex(index);
+        }
+        sprites[last] = null; // Let the removed view be garbage collected
+    }
+
+    /**
+     * Sets the state of an entity received from elsewhere (e.g. a snapshot of the GameServer), as if it had
+     * moved there during the last tick: the position it had is kept for interpolated drawing.
+     *
+     * @param index     the index of the entity
+     * @param x         the new x-coordinate
+     * @param y         the new y-coordinate
+     * @param direction the direction ordinal
+     * @param flags     the flags (WALKING, INVINCIBLE, ALIVE)
+     * @param trapCount the number of traps touched
+     */
+    public void setReceivedState(int index, double x, double y, byte direction, int flags, int trapCount) {
+        previousX[index] = this.x[index];
+        previousY[index] = this.y[index];
+        this.x[index] = x;
+        this.y[index] = y;
+        this.direction[index] = direction;
+        this.flags[index] = flags;
+        this.trapCount[index] = trapCount;
+    }
+
+    /**
+     * Makes every array bigger, keeping the entities.
+     */
+    private void grow(int capacity) {
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        previousX = Arrays.copyOf(previousX, capacity);
+        previousY = Arrays.copyOf(previousY, capacity);
+        width = Arrays.copyOf(width, capacity);
+        height = Arrays.copyOf(height, capacity);
+        speed = Arrays.copyOf(speed, capacity);
+        direction = Arrays.copyOf(direction, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+        trapCount = Arrays.copyOf(trapCount, capacity);
+        invincibleSince = Arrays.copyOf(invincibleSince, capacity);
+        firstTriggerCell = Arrays.copyOf(firstTriggerCell, capacity);
+        lastTriggerCell = Arrays.copyOf(lastTriggerCell, capacity);
+        sprites = Arrays.copyOf(sprites, capacity);
+    }
+
+    /**
+     * Sets the time of the current tick. Timed states (invincibility, animation frames) all use this time,
+     * so they only change from one tick to the next.
+     *
+     * @param time the time in milliseconds of the game clock
+     */
+    public void setTime(long time) {
+        this.time = time;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Computes a checksum of the simulated state of every entity (position, direction, flags, traps touched),
+     * in index order. Two runs that did exactly the same thing have the same checksum, so it is used to
+     * check that a replay ends like the recorded game.
+     *
+     * @return the checksum (a CRC32)
+     */
+    public long checksum() {
+        CRC32 crc = new CRC32();
+        byte[] bytes = new byte[8];
+        for (int i = 0; i < count; i++) {
+            updateLong(crc, bytes, Double.doubleToLongBits(x[i]));
+            updateLong(crc, bytes, Double.doubleToLongBits(y[i]));
+            updateLong(crc, bytes, ((long) direction[i] << 56) | ((long) flags[i] << 32) | (trapCount[i] & 0xFFFFFFFFL));
+            updateLong(crc, bytes, invincibleSince[i]);
+        }
+        return crc.getValue();
+    }
+
+    private static void updateLong(CRC32 crc, byte[] bytes, long value) {
+        for (int b = 0; b < 8; b++) {
+            bytes[b] = (byte) (value >>> (56 - 8 * b));
+        }
+        crc.update(bytes, 0, 8);
+    }
+
+    /**
+     * Ends the invincibility of the entities hit more than a given delay before the time of the tick.
+     *
+     * @param delayMs   the duration of the invincibility, in milliseconds
+     * @param onExpired called with the index of each entity whose invincibility has just ended (null for none);
+     *                  it must not add or remove entities
+     */
+    public void expireInvincibility(long delayMs, IntConsumer onExpired) {
+        for (int i = 0; i < count; i++) {
+            if ((flags[i] & INVINCIBLE) != 0 && time - invincibleSince[i] > delayMs) {
+                flags[i] &= ~INVINCIBLE;
+                if (onExpired != null) {
+                    onExpired.accept(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves an entity one step in its direction if the moved hitbox does not cover a solid tile.
+     * The position before the move is kept for interpolated drawing.
+     *
+     * @param index        the index of the entity
+     * @param collisionMap the grid of the tile types of the environment
+     */
+    public void moveIfPossible(int index, TileGrid collisionMap) {
+        double currentX = x[index];
+        double currentY = y[index];
+        previousX[index] = currentX;
+        previousY[index] = currentY;
+        double movedX = currentX + STEP_X[direction[index]] * speed[index];
+        double movedY = currentY + STEP_Y[direction[index]] * speed[index];
+        if (!collisionMap.overlaps(movedX, movedY, width[index], height[index], CollisionMap.SOLID)) {
+            x[index] = movedX;
+            y[index] = movedY;
+        }
+    }
+
+    /**
+     * Computes where entities would be after one step, without changing the store (first phase of the
+     * parallel physics). The store and the collision map are only read, so several threads can work on
+     * different ranges at the same time. An entity blocked by a solid tile keeps its position.
+     * Same computation as moveIfPossible, so that both modes give exactly the same positions.
+     *
+     * @param from         the first index of the range
+     * @param to           the index after the last one of the range
+     * @param collisionMap the grid of the tile types of the environment
+     * @param proposedX    the array receiving the proposed x-coordinates, by index
+     * @param proposedY    the array receiving the proposed y-coordinates, by index
+     */
+    public void proposeMoves(int from, int to, TileGrid collisionMap, double[] proposedX, double[] proposedY) {
+        for (int index = from; index < to; index++) {
+            double currentX = x[index];
+            double currentY = y[index];
+            double movedX = currentX + STEP_X[direction[index]] * speed[index];
+            double movedY = currentY + STEP_Y[direction[index]] * speed[index];
+            if (!collisionMap.overlaps(movedX, movedY, width[index], height[index], CollisionMap.SOLID)) {
+                proposedX[index] = movedX;
+                proposedY[index] = movedY;
+            } else {
+                proposedX[index] = currentX;
+                proposedY[index] = currentY;
+            }
+        }
+    }
+
+    /**
+     * Applies the proposed positions to all the entities, in index order (second phase of the parallel physics).
+     *
+     * @param proposedX the proposed x-coordinates, by index
+     * @param proposedY the proposed y-coordinates, by index
+     */
+    public void commitMoves(double[] proposedX, double[] proposedY) {
+        for (int index = 0; index < count; index++) {
+            previousX[index] = x[index];
+            previousY[index] = y[index];
+            x[index] = proposedX[index];
+            y[index] = proposedY[index];
+        }
+    }
+
+    /**
+     * Gets the number of entities in the store.
+     *
+     * @return the number of entities
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Gets the view of an entity.
+     *
+     * @param index the index of the entity
+     * @return the sprite viewing this entity
+     */
+    public DynamicSprite getSprite(int index) {
+        return sprites[index];
+    }
+
+    /**
+     * Gets the Direction stored as an ordinal.
+     */
+    static Direction directionOf(byte ordinal) {
+        return DIRECTIONS[ordinal];
+    }
+}
@@ -0,0 +1,328 @@
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * FlowFieldService tells any number of enemies which way to go to reach a target (usually the hero).
+ * Instead of one path search per enemy, a single breadth-first search is run from the cell of the target
+ * over the whole tile grid: every cell that can reach the target gets the direction of its next step and
+ * its distance in cells. An enemy then finds its direction with one array read, whatever the number of
+ * enemies.
+ * <p>
+ * The field is built again only when the target enters another cell. With a background thread, the
+ * search runs there and the simulation keeps the previous field until the new one is ready (it is picked
+ * up at the start of a tick, in update()); when the target moves faster than the searches, the cells it
+ * only went through are skipped. The two threads share three fields (a triple buffer): the simulation owns
+ * the one it reads, the background thread owns the one it builds, and the third is exchanged in one atomic
+ * step by either of them, so a field never has two owners and neither thread ever waits for the other. Without a background thread the field is built in update(), so that
+ * headless runs and replays stay deterministic.
+ * The lookups must be done by the thread updating the service (the simulation thread). The grid is read
+ * from the background thread: it must support it (CollisionMap and BinaryLevel do) and its solid tiles must
+ * not change.
+ */
+public class FlowFieldService implements Engine {
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    // Direction of a cell that has none: the target itself.
+    private static final byte NO_DIRECTION = -1;
+
+    // Seconds after which the idle search thread stops (a new one is started for the next search).
+    private static final int WORKER_KEEP_ALIVE_SECONDS = 30;
+
+    // Grid searched, and its size in cells.
+    private final TileGrid grid;
+    private final int columns;
+    private final int rows;
+
+    // Thread running the searches (null when they run in update()).
+    private final ThreadPoolExecutor worker;
+
+    // Fields of the triple buffer, by slot (only the first one without a background thread).
+    private final Field[] fields;
+
+    // Field used by the lookups, owned by the simulation thread.
+    private Field current;
+
+    // Field the background thread builds into, owned by it (the executor hands it from thread to thread).
+    private Field back;
+
+    // Slot of the field between the two threads, plus FRESH when the background thread has put a finished
+    // field there that the simulation has not picked up yet.
+    private final AtomicInteger middle = new AtomicInteger();
+    private static final int FRESH = 4;
+    private static final int SLOT_MASK = 3;
+
+    // Cell of the target of the last search asked for, and whether a search task is queued or running.
+    private final AtomicInteger requestedCell = new AtomicInteger(-1);
+    private final AtomicBoolean searchScheduled = new AtomicBoolean();
+
+    // Sprite followed by update(), and the cell it was in at the last request.
+    private DynamicSprite target;
+    private int targetCell = -1;
+
+    // Cells waiting to be expanded by the search, reused by every search.
+    private final int[] queue;
+
+    // Number of searches done, and duration of the last one in nanoseconds.
+    private final AtomicInteger searchCount = new AtomicInteger();
+    private volatile long lastSearchNanos = 0;
+
+    /**
+     * Result of a search. A cell was reached by the search when its stamp is the number of the search,
+     * so the arrays never need to be cleared.
+     */
+    private static final class Field {
+        final byte[] directions;  // Direction ordinal of the next step, by cell
+        final int[] distances;    // Number of steps to the target, by cell
+        final int[] stamps;       // Number of the search that reached the cell
+        final int slot;           // Index in the fields of the service
+        int search = 0;           // Number of the search that built the field (0: never built)
+        int targetCell = -1;
+
+        Field(int slot, int cells) {
+            this.slot = slot;
+            directions = new byte[cells];
+            distances = new int[cells];
+            stamps = new int[cells];
+        }
+    }
+
+    /**
+     * Creates a service over a tile grid.
+     *
+     * @param grid       the grid of the tile types; solid tiles cannot be crossed
+     * @param background true to run the searches on a background thread, false to run them in update()
+     */
+    public FlowFieldService(TileGrid grid, boolean background) {
+        this.grid = grid;
+        this.columns = grid.getColumns();
+        this.rows = grid.getRows();
+        int cells = columns * rows;
+        queue = new int[cells];
+        if (background) {
+            // Three fields: one used by the lookups, one being built, one exchanged between them
+            fields = new Field[]{new Field(0, cells), new Field(1, cells), new Field(2, cells)};
+            current = fields[0];
+            back = fields[1];
+            middle.set(fields[2].slot);
+            worker = new ThreadPoolExecutor(1, 1, WORKER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "flow-field");
+                thread.setDaemon(true); // The window closing must be enough to exit the game
+                return thread;
+            });
+            worker.allowCoreThreadTimeOut(true);
+        } else {
+            fields = new Field[]{new Field(0, cells)};
+            current = fields[0];
+            worker = null;
+        }
+    }
+
+    /**
+     * Sets the sprite to reach. Its cell is looked at on each update.
+     *
+     * @param target the sprite to reach, or null to stop following it
+     */
+    public void setTarget(DynamicSprite target) {
+        this.target = target;
+    }
+
+    /**
+     * Picks up the field finished by the background thread, then asks for a new search if the target has
+     * entered another cell.
+     */
+    @Override
+    public void update() {
+        if ((middle.get() & FRESH) != 0) {
+            // Give the field read until now for the one finished: only the background thread sets FRESH,
+            // so the slot taken is a finished field (the one seen, or a newer one)
+            current = fields[middle.getAndSet(current.slot) & SLOT_MASK];
+        }
+        if (target != null) {
+            int cell = cellAt(target.getX() + target.getWidth() / 2, target.getY() + target.getHeight() / 2);
+            if (cell != targetCell) {
+                targetCell = cell;
+                requestTarget(cell);
+            }
+        }
+    }
+
+    /**
+     * Asks for a search toward a cell. Without a background thread the field is built at once.
+     *
+     * @param column the column of the cell to reach
+     * @param row    the row of the cell to reach
+     */
+    public void requestTarget(int column, int row) {
+        requestTarget(isInside(column, row) ? row * columns + column : -1);
+    }
+
+    private void requestTarget(int cell) {
+        if (worker == null) {
+            search(current, cell);
+            return;
+        }
+        requestedCell.set(cell);
+        if (searchScheduled.compareAndSet(false, true)) {
+            worker.execute(this::runSearches);
+        }
+    }
+
+    /**
+     * Runs the searches asked for on the background thread, until the last requested cell is done.
+     */
+    private void runSearches() {
+        while (true) {
+            int cell = requestedCell.get();
+            search(back, cell);
+            // Publish the field and take the one in the middle: a field the simulation gave back, or a
+            // finished field it never picked up (the new one is better)
+            back = fields[middle.getAndSet(back.slot | FRESH) & SLOT_MASK];
+            searchScheduled.set(false);
+            // A request made during the search may have seen the task still scheduled: run it now
+            if (requestedCell.get() == cell || !searchScheduled.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Builds a field by a breadth-first search from the target cell.
+     * Each cell reached gets the direction toward the cell it was reached from.
+     */
+    private void search(Field field, int targetCell) {
+        long start = System.nanoTime();
+        int stamp = ++field.search;
+        field.targetCell = targetCell;
+        if (targetCell >= 0 && isOpen(targetCell % columns, targetCell / columns)) {
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = targetCell;
+            field.stamps[targetCell] = stamp;
+            field.distances[targetCell] = 0;
+            field.directions[targetCell] = NO_DIRECTION;
+            while (head < tail) {
+                int cell = queue[head++];
+                int column = cell % columns;
+                int row = cell / columns;
+                int distance = field.distances[cell] + 1;
+                // The neighbour on the west goes east to reach this cell, and so on
+                tail = reach(field, column - 1, row, Direction.EAST, distance, stamp, tail);
+                tail = reach(field, column + 1, row, Direction.WEST, distance, stamp, tail);
+                tail = reach(field, column, row - 1, Direction.SOUTH, distance, stamp, tail);
+                tail = reach(field, column, row + 1, Direction.NORTH, distance, stamp, tail);
+            }
+        }
+        searchCount.incrementAndGet();
+        lastSearchNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Adds a neighbour to the search if it is open and not reached yet.
+     *
+     * @return the new end of the queue
+     */
+    private int reach(Field field, int column, int row, Direction direction, int distance, int stamp, int tail) {
+        if (!isOpen(column, row)) {
+            return tail;
+        }
+        int cell = row * columns + column;
+        if (field.stamps[cell] == stamp) {
+            return tail; // Already reached by a shorter way
+        }
+        field.stamps[cell] = stamp;
+        field.distances[cell] = distance;
+        field.directions[cell] = (byte) direction.ordinal();
+        queue[tail] = cell;
+        return tail + 1;
+    }
+
+    private boolean isInside(int column, int row) {
+        return column >= 0 && row >= 0 && column < columns && row < rows;
+    }
+
+    private boolean isOpen(int column, int row) {
+        return isInside(column, row) && grid.getTile(column, row) != CollisionMap.SOLID;
+    }
+
+    /**
+     * Gets the cell at a position, or -1 outside of the grid.
+     */
+    private int cellAt(double x, double y) {
+        int column = (int) Math.floor(x / grid.getTileWidth());
+        int row = (int) Math.floor(y / grid.getTileHeight());
+        return isInside(column, row) ? row * columns + column : -1;
+    }
+
+    /**
+     * Gets the cell of a position if the current field reached it, or -1.
+     */
+    private int reachedCellAt(double x, double y) {
+        int cell = cellAt(x, y);
+        Field field = current;
+        return (cell >= 0 && field.search > 0 && field.stamps[cell] == field.search) ? cell : -1;
+    }
+
+    /**
+     * Gets the direction of the next step toward the target from a position.
+     *
+     * @param x the x-coordinate of the position
+     * @param y the y-coordinate of the position
+     * @return the direction, or null if the target cannot be reached or the position is in its cell
+     */
+    public Direction getDirection(double x, double y) {
+        int cell = reachedCellAt(x, y);
+        if (cell < 0) {
+            return null;
+        }
+        byte direction = current.directions[cell];
+        return direction == NO_DIRECTION ? null : DIRECTIONS[direction];
+    }
+
+    /**
+     * Gets the direction of the next step toward the target for a sprite, from the center of its hitbox.
+     *
+     * @param sprite the sprite looking for its way
+     * @return the direction, or null if the target cannot be reached or the sprite is in its cell
+     */
+    public Direction getDirection(DynamicSprite sprite) {
+        return getDirection(sprite.getX() + sprite.getWidth() / 2, sprite.getY() + sprite.getHeight() / 2);
+    }
+
+    /**
+     * Gets the number of steps from a position to the target, e.g. to leave far enemies idle.
+     *
+     * @param x the x-coordinate of the position
+     * @param y the y-coordinate of the position
+     * @return the number of cells to cross, or -1 if the target cannot be reached
+     */
+    public int getDistance(double x, double y) {
+        int cell = reachedCellAt(x, y);
+        return cell < 0 ? -1 : current.distances[cell];
+    }
+
+    /**
+     * Stops the background thread. The last field can still be looked up.
+     */
+    public void close() {
+        if (worker != null) {
+            worker.shutdownNow();
+        }
+    }
+
+    public int getSearchCount() {
+        return searchCount.get();
+    }
+
+    /**
+     * Gets the duration of the last search.
+     *
+     * @return the duration in nanoseconds
+     */
+    public long getLastSearchNanos() {
+        return lastSearchNanos;
+    }
+}
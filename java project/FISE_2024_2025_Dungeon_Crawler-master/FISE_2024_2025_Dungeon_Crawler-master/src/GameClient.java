@@ -0,0 +1,191 @@
+import javax.swing.*;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * GameClient shows a game run by a GameServer: it is a thin client, with no physics and no game rules.
+ * The keys pressed in its window are sent to the server, and on each tick of its game loop the last snapshot
+ * received gives the position, direction and state of every player; the RenderEngine draws them over the
+ * static layer of the same level (the client must have the level file, it is checked by its checksum).
+ * <pre>
+ * java -cp bin GameClient [--host localhost] [--port 7777]
+ * </pre>
+ */
+public class GameClient implements Engine, KeyListener {
+    // Maximum number of key events waiting between two ticks.
+    private static final int INPUT_BUFFER_CAPACITY = 256;
+
+    // Frame rate of the window (another one can be chosen with -Dgame.frameRate=...).
+    private static final int DEFAULT_FRAME_RATE = 60;
+
+    private final ClientConnection connection;
+    private final RenderEngine renderEngine;
+
+    // Sprites of the players, by player id, and the store holding their state.
+    private final EntityStore store = new EntityStore(16);
+    private final HashMap<Integer, DynamicSprite> sprites = new HashMap<>();
+    private final Animation heroAnimation;
+
+    // Key events from the AWT event thread, sent to the server on the next tick.
+    private final InputRingBuffer inputBuffer = new InputRingBuffer(INPUT_BUFFER_CAPACITY);
+
+    // Game loop drawing the players.
+    private GameLoop gameLoop;
+
+    // First error of the connection (the loop stops on it).
+    private IOException connectionError;
+
+    /**
+     * Creates a client for a connection.
+     *
+     * @param connection   the connection to the server, welcome message read
+     * @param renderEngine the engine drawing the game
+     * @throws IOException if the image of the players cannot be loaded
+     */
+    public GameClient(ClientConnection connection, RenderEngine renderEngine) throws IOException {
+        this.connection = connection;
+        this.renderEngine = renderEngine;
+        this.heroAnimation = AssetManager.getInstance().getAnimation("./img/heroTileSheetLowRes.png", 48, 50, 250);
+    }
+
+    /**
+     * Sends the keys pressed since the last tick, then shows the last state received.
+     * Called by the game loop on each tick.
+     */
+    @Override
+    public void update() {
+        try {
+            inputBuffer.drain(this::sendInput);
+            if (connectionError != null) {
+                throw connectionError;
+            }
+            connection.poll();
+        } catch (IOException e) {
+            System.err.println("Disconnected: " + e.getMessage());
+            gameLoop.stop();
+            return;
+        }
+        // Shown even when no snapshot arrived: the previous position becomes the current one, so the
+        // drawing between two ticks keeps the players still instead of moving them back and forth
+        SnapshotState state = connection.getLatestState();
+        if (state != null) {
+            show(state);
+        }
+    }
+
+    private void sendInput(int type, int keyCode, long timeNanos) {
+        if (connectionError != null) {
+            return;
+        }
+        try {
+            connection.sendInput(type, keyCode);
+        } catch (IOException e) {
+            connectionError = e;
+        }
+    }
+
+    /**
+     * Moves the sprites of the players to a state, creating the sprites of new players and removing the
+     * sprites of the players who left.
+     */
+    private void show(SnapshotState state) {
+        store.setTime(state.getTime());
+        for (int i = 0; i < state.size(); i++) {
+            int id = state.getId(i);
+            DynamicSprite sprite = sprites.get(id);
+            if (sprite == null) {
+                sprite = new DynamicSprite(state.getX(i), state.getY(i), heroAnimation,
+                        Playground.HERO_WIDTH, Playground.HERO_HEIGHT);
+                sprite.moveToStore(store);
+                sprites.put(id, sprite);
+                renderEngine.addToRenderList(sprite);
+                if (id == connection.getPlayerId()) {
+                    renderEngine.setCameraTarget(sprite);
+                }
+            }
+            store.setReceivedState(sprite.getStoreIndex(), state.getX(i), state.getY(i), state.getDirection(i),
+                    state.getFlags(i), state.getTrapCount(i));
+        }
+        if (sprites.size() > state.size()) {
+            Iterator<Map.Entry<Integer, DynamicSprite>> entries = sprites.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<Integer, DynamicSprite> entry = entries.next();
+                if (state.indexOf(entry.getKey()) < 0) {
+                    renderEngine.removeFromRenderList(entry.getValue());
+                    entry.getValue().moveToStore(new EntityStore(1));
+                    entries.remove();
+                }
+            }
+        }
+    }
+
+    public void setGameLoop(GameLoop gameLoop) {
+        this.gameLoop = gameLoop;
+    }
+
+    @Override
+    public void keyTyped(KeyEvent e) {
+        // Unused, but implemented as required by KeyListener
+    }
+
+    @Override
+    public void keyPressed(KeyEvent e) {
+        inputBuffer.offer(InputRingBuffer.KEY_PRESSED, e.getKeyCode(), System.nanoTime());
+    }
+
+    @Override
+    public void keyReleased(KeyEvent e) {
+        inputBuffer.offer(InputRingBuffer.KEY_RELEASED, e.getKeyCode(), System.nanoTime());
+    }
+
+    /**
+     * Connects to a server and opens the game window.
+     *
+     * @param args the options (see the class comment)
+     * @throws Exception if the server cannot be reached or the level is not the same
+     */
+    public static void main(String[] args) throws Exception {
+        String host = "localhost";
+        int port = NetProtocol.DEFAULT_PORT;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--host" -> host = args[++i];
+                case "--port" -> port = Integer.parseInt(args[++i]);
+                default -> {
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+                }
+            }
+        }
+        ClientConnection connection = new ClientConnection(host, port);
+        String levelPath = connection.getLevelPath();
+        if (!new File(levelPath).isFile() || InputRecorder.checksumOf(levelPath) != connection.getLevelChecksum()) {
+            System.err.println("The server plays " + levelPath + ", which is missing or different here");
+            connection.close();
+            System.exit(2);
+        }
+
+        JFrame frame = new JFrame("Java Labs - player " + connection.getPlayerId());
+        frame.setSize(400, 600);
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        RenderEngine renderEngine = new RenderEngine(frame);
+        Playground level = new Playground(levelPath);
+        renderEngine.setStaticLayer(level.getSpriteSource(), level.getWidth(), level.getHeight());
+
+        GameClient client = new GameClient(connection, renderEngine);
+        GameLoop gameLoop = new GameLoop(renderEngine, connection.getTickRate(), Integer.getInteger("game.frameRate", DEFAULT_FRAME_RATE),
+                new Engine[]{client});
+        client.setGameLoop(gameLoop);
+        renderEngine.setWorldLock(gameLoop.getWorldLock());
+
+        frame.getContentPane().add(renderEngine);
+        frame.addKeyListener(client);
+        frame.setVisible(true);
+        gameLoop.start();
+    }
+}
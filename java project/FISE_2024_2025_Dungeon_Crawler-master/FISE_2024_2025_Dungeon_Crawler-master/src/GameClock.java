@@ -0,0 +1,15 @@
+/**
+ * Interface for the clock giving the time of the simulation. The PhysicEngine reads it once per tick and
+ * keeps that time in its entity store, so every timed state (invincibility, animation frames) uses the
+ * same time during a tick and only changes from one tick to the next.
+ * The game uses a SystemClock; tests and fast-forward runs use a VirtualClock, moved forward by hand.
+ */
+public interface GameClock {
+
+    /**
+     * Gets the current time of the clock.
+     *
+     * @return the time in milliseconds (only differences between two times are meaningful)
+     */
+    long millis();
+}
@@ -1,30 +1,164 @@
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.util.Arrays;
+import java.util.BitSet;
 
 /**
  * The GameEngine class is responsible for handling user inputs to control the hero's movement.
  * It implements the Engine interface (to perform updates) and the KeyListener interface
  * (to handle keyboard inputs).
+ * Key events are not applied on the AWT event thread: they are timestamped and put in an InputRingBuffer,
+ * which the simulation drains once per tick. The keys held down are kept in a bitset, so that releasing
+ * an arrow key gives the direction back to another arrow key still held.
+ * After the input, the non-player characters think, within the time budget of the AIScheduler.
  */
 public class GameEngine implements Engine, KeyListener {
+    // Maximum number of key events waiting between two ticks.
+    private static final int INPUT_BUFFER_CAPACITY = 256;
+
+    // Arrow keys and the directions they give to the hero.
+    private static final int[] ARROW_KEYS = {KeyEvent.VK_UP, KeyEvent.VK_DOWN, KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT};
+    private static final Direction[] ARROW_DIRECTIONS = {Direction.NORTH, Direction.SOUTH, Direction.WEST, Direction.EAST};
+
     // Reference to the hero character, a DynamicSprite, whose direction is controlled by user input.
     private DynamicSprite hero;
 
+    // Key events from the AWT event thread, waiting for the next tick.
+    private final InputRingBuffer inputBuffer = new InputRingBuffer(INPUT_BUFFER_CAPACITY);
+
+    // Keys currently held down, by key code (only read and written by the simulation thread).
+    private final BitSet keyStates = new BitSet();
+
+    // Order in which the arrow keys were pressed (higher is more recent), by index in ARROW_KEYS.
+    private final long[] arrowPressOrder = new long[ARROW_KEYS.length];
+    private long pressCounter = 0;
+
+    // Handler of the drained events, created once so that draining never creates objects.
+    private final InputRingBuffer.Handler inputHandler = this::applyInput;
+
+    // Non-player characters, given turns to think within a time budget on each tick.
+    private final AIScheduler aiScheduler;
+
+    // Log receiving the key events applied, to replay the game later (null when not recording).
+    private InputRecorder inputRecorder;
+
+    // Time between a key event and the tick moving the hero accordingly, in nanoseconds.
+    private long inputLatencyCount = 0;
+    private long inputLatencyTotalNanos = 0;
+    private long inputLatencyMaxNanos = 0;
+    private long lastInputLatencyNanos = 0;
+
     /**
      * Constructor that initializes the GameEngine with a hero.
      * @param hero The DynamicSprite character that the GameEngine will control.
      */
     public GameEngine(DynamicSprite hero) {
+        this(hero, 0);
+    }
+
+    /**
+     * Constructor that initializes the GameEngine with a hero and the threads of its AIScheduler.
+     * @param hero           The DynamicSprite character that the GameEngine will control.
+     * @param plannerThreads The number of threads running the long reasoning of the non-player characters
+     *                       (0 to run it in the tick, the same way on every run).
+     */
+    public GameEngine(DynamicSprite hero, int plannerThreads) {
         this.hero = hero;
+        this.aiScheduler = new AIScheduler(plannerThreads);
+        aiScheduler.setHero(hero);
     }
 
     /**
-     * The update method required by the Engine interface.
-     * Currently, it is left empty as there is no periodic update logic needed in this version.
+     * Applies the key events received since the last tick, in the order they happened, then lets the
+     * non-player characters think.
+     * Called by the game loop on each tick, just before the PhysicEngine moves the hero.
      */
     @Override
     public void update() {
-        // This can be expanded if periodic updates are needed.
+        inputBuffer.drain(inputHandler);
+        aiScheduler.update();
+    }
+
+    /**
+     * Applies one key event: updates the held keys and the direction of the hero.
+     */
+    private void applyInput(int type, int keyCode, long timeNanos) {
+        if (inputRecorder != null) {
+            inputRecorder.record(type, keyCode);
+        }
+        int arrow = arrowIndexOf(keyCode);
+        if (type == InputRingBuffer.KEY_PRESSED) {
+            // A key repeated while held keeps its place in the press order
+            if (!keyStates.get(keyCode) && arrow >= 0) {
+                arrowPressOrder[arrow] = ++pressCounter;
+            }
+            keyStates.set(keyCode);
+        } else {
+            keyStates.clear(keyCode);
+        }
+        if (arrow < 0) {
+            return;
+        }
+
+        // The hero goes in the direction of the arrow key pressed last among those still held.
+        // When no arrow key is held, the hero keeps its direction.
+        int latest = -1;
+        for (int i = 0; i < ARROW_KEYS.length; i++) {
+            if (keyStates.get(ARROW_KEYS[i]) && (latest < 0 || arrowPressOrder[i] > arrowPressOrder[latest])) {
+                latest = i;
+            }
+        }
+        if (latest >= 0) {
+            hero.setDirection(ARROW_DIRECTIONS[latest]);
+            recordInputLatency(System.nanoTime() - timeNanos);
+        }
+    }
+
+    /**
+     * Forgets the keys held and the key events not applied yet, e.g. when the game is restarted.
+     * The simulation must not be updated at the same time (e.g. hold the lock of the game loop).
+     */
+    public void reset() {
+        inputBuffer.drain((type, keyCode, timeNanos) -> { }); // Events of the previous game are dropped
+        keyStates.clear();
+        Arrays.fill(arrowPressOrder, 0);
+        pressCounter = 0;
+        aiScheduler.reset();
+    }
+
+    /**
+     * Gets the scheduler of the non-player characters, e.g. to add agents or read its metrics.
+     * @return the AI scheduler of the engine
+     */
+    public AIScheduler getAIScheduler() {
+        return aiScheduler;
+    }
+
+    /**
+     * Sets the log receiving the key events applied on each tick.
+     * @param inputRecorder the recorder, or null to stop recording
+     */
+    public void setInputRecorder(InputRecorder inputRecorder) {
+        this.inputRecorder = inputRecorder;
+    }
+
+    /**
+     * Gets the index of an arrow key in ARROW_KEYS, or -1 for another key.
+     */
+    private static int arrowIndexOf(int keyCode) {
+        for (int i = 0; i < ARROW_KEYS.length; i++) {
+            if (ARROW_KEYS[i] == keyCode) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void recordInputLatency(long latencyNanos) {
+        lastInputLatencyNanos = latencyNanos;
+        inputLatencyTotalNanos += latencyNanos;
+        inputLatencyCount++;
+        inputLatencyMaxNanos = Math.max(inputLatencyMaxNanos, latencyNanos);
     }
 
     /**
@@ -38,39 +172,75 @@ public class GameEngine implements Engine, KeyListener {
     }
 
     /**
-     * Handles the keyPressed event. This method changes the direction of the hero
-     * based on arrow key inputs.
+     * Handles the keyPressed event: the key press is queued for the next tick.
      * @param e The KeyEvent triggered by a key press.
      */
     @Override
     public void keyPressed(KeyEvent e) {
-        switch (e.getKeyCode()) {
-            case KeyEvent.VK_UP:
-                // Set hero's direction to NORTH when the up arrow key is pressed.
-                hero.setDirection(Direction.NORTH);
-                break;
-            case KeyEvent.VK_DOWN:
-                // Set hero's direction to SOUTH when the down arrow key is pressed.
-                hero.setDirection(Direction.SOUTH);
-                break;
-            case KeyEvent.VK_LEFT:
-                // Set hero's direction to WEST when the left arrow key is pressed.
-                hero.setDirection(Direction.WEST);
-                break;
-            case KeyEvent.VK_RIGHT:
-                // Set hero's direction to EAST when the right arrow key is pressed.
-                hero.setDirection(Direction.EAST);
-                break;
-        }
+        pressKey(e.getKeyCode());
+    }
+
+    /**
+     * Queues a key press given by its key code, without needing a Swing event.
+     * Used by keyPressed, and by headless runs feeding scripted input.
+     * Only one thread may queue key events (the AWT event thread in the game).
+     * @param keyCode The code of the pressed key (e.g. KeyEvent.VK_UP).
+     */
+    public void pressKey(int keyCode) {
+        inputBuffer.offer(InputRingBuffer.KEY_PRESSED, keyCode, System.nanoTime());
     }
 
     /**
-     * The keyReleased method is required by KeyListener but is not used in this class.
-     * This can be expanded to handle any logic upon key release if needed.
+     * Handles the keyReleased event: the key release is queued for the next tick.
      * @param e The KeyEvent triggered by a key release.
      */
     @Override
     public void keyReleased(KeyEvent e) {
-        // Unused, but implemented as required by KeyListener
+        releaseKey(e.getKeyCode());
+    }
+
+    /**
+     * Queues a key release given by its key code, without needing a Swing event.
+     * @param keyCode The code of the released key (e.g. KeyEvent.VK_UP).
+     */
+    public void releaseKey(int keyCode) {
+        inputBuffer.offer(InputRingBuffer.KEY_RELEASED, keyCode, System.nanoTime());
+    }
+
+    /**
+     * Checks if a key is held down, as of the last tick.
+     * @param keyCode The code of the key.
+     * @return true if the key is held down.
+     */
+    public boolean isKeyDown(int keyCode) {
+        return keyStates.get(keyCode);
+    }
+
+    /**
+     * Gets the time between the last key event changing the hero's direction and the tick applying it.
+     * @return the latency in nanoseconds (0 before the first key event).
+     */
+    public long getLastInputLatencyNanos() {
+        return lastInputLatencyNanos;
+    }
+
+    /**
+     * Gets the average time between a key event and the tick applying it.
+     * @return the average latency in nanoseconds (0 before the first key event).
+     */
+    public long getAverageInputLatencyNanos() {
+        return inputLatencyCount == 0 ? 0 : inputLatencyTotalNanos / inputLatencyCount;
+    }
+
+    public long getMaxInputLatencyNanos() {
+        return inputLatencyMaxNanos;
+    }
+
+    /**
+     * Gets the number of key events dropped because too many arrived between two ticks.
+     * @return the number of dropped events.
+     */
+    public long getDroppedInputCount() {
+        return inputBuffer.getDroppedCount();
     }
 }
@@ -0,0 +1,24 @@
+/**
+ * Listener of the game events raised by the simulation, such as the hero losing all its lives or reaching the exit.
+ * The Swing game shows its Game Over screen from it, while a headless run can simply record the event,
+ * so the simulation itself never depends on the user interface.
+ */
+public interface GameListener {
+
+    /**
+     * Called when a sprite has touched traps too many times and the game is over.
+     * It is called from the thread running the simulation.
+     *
+     * @param sprite the sprite that lost all its lives
+     */
+    void onGameOver(DynamicSprite sprite);
+
+    /**
+     * Called when a sprite steps onto the exit of the level. Does nothing by default.
+     * It is called from the thread running the simulation.
+     *
+     * @param sprite the sprite that reached the exit
+     */
+    default void onLevelComplete(DynamicSprite sprite) {
+    }
+}
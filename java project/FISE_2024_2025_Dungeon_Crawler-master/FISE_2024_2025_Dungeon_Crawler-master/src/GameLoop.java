@@ -0,0 +1,228 @@
+import java.util.ArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * GameLoop runs the game on its own thread with a fixed timestep.
+ * The simulation engines (game logic and physics) are updated at a constant tick rate using an
+ * accumulator, so the simulation stays the same whatever the rendering does. The render engine is
+ * updated separately at the display rate, with the fraction of tick elapsed since the last update
+ * so that sprites can be drawn between their previous and current positions.
+ * Every engine update is measured by a TimedEngine, whose durations are shown by the DebugOverlay.
+ * The time of the simulation comes from the tick count (see getSimulationClock), not from the real time,
+ * so a game recorded by an InputRecorder runs exactly the same way when it is replayed.
+ */
+public class GameLoop implements Runnable {
+    // Maximum number of ticks run in a row before drawing, to avoid freezing after a long stall.
+    private static final int MAX_TICKS_PER_FRAME = 5;
+
+    // Engine that draws the game, and engines that make up the simulation (in update order),
+    // each wrapped to measure its updates.
+    private final RenderEngine renderEngine;
+    private final TimedEngine timedRenderEngine;
+    private final TimedEngine[] simulationEngines;
+
+    // Number of simulation ticks run so far.
+    private volatile long tickCount = 0;
+
+    // Ticks per second, ticks simulated since the game (re)started, and time of the simulation, set from
+    // the number of simulated ticks before each tick.
+    private final int tickRate;
+    private long simulationTicks = 0;
+    private final VirtualClock simulationClock = new VirtualClock();
+
+    // Duration of one simulation tick and of one rendered frame, in nanoseconds.
+    private final long tickDurationNs;
+    private final long frameDurationNs;
+
+    // Lock held while the simulation is updated, so that painting never sees a half-done tick.
+    private final Object worldLock = new Object();
+
+    private volatile boolean running = false;
+    private Thread thread;
+
+    /**
+     * Creates a game loop.
+     *
+     * @param renderEngine      the engine used to draw the game
+     * @param tickRate          the number of simulation ticks per second
+     * @param frameRate         the number of rendered frames per second
+     * @param simulationEngines the engines updated on each tick, in this order
+     */
+    public GameLoop(RenderEngine renderEngine, int tickRate, int frameRate, Engine... simulationEngines) {
+        if (tickRate <= 0 || frameRate <= 0) {
+            throw new IllegalArgumentException("Tick rate and frame rate must be positive");
+        }
+        this.renderEngine = renderEngine;
+        this.timedRenderEngine = new TimedEngine("RenderEngine.update", renderEngine);
+        this.simulationEngines = new TimedEngine[simulationEngines.length];
+        for (int i = 0; i < simulationEngines.length; i++) {
+            this.simulationEngines[i] = new TimedEngine(simulationEngines[i].getClass().getSimpleName(),
+                    simulationEngines[i]);
+        }
+        this.tickRate = tickRate;
+        this.tickDurationNs = 1_000_000_000L / tickRate;
+        this.frameDurationNs = 1_000_000_000L / frameRate;
+    }
+
+    /**
+     * Gets the time of the simulation after a number of ticks. The game loop and the headless runs use it
+     * for the time of each tick, so both give the same results.
+     *
+     * @param ticks    the number of ticks completed
+     * @param tickRate the number of ticks per second
+     * @return the time in milliseconds
+     */
+    public static long simulationTimeMs(long ticks, int tickRate) {
+        return ticks * 1000 / tickRate;
+    }
+
+    /**
+     * Gets the clock giving the time of the simulation, to pass to the PhysicEngine. It is only moved by
+     * the loop, by one tick duration before each tick.
+     *
+     * @return the simulation clock
+     */
+    public GameClock getSimulationClock() {
+        return simulationClock;
+    }
+
+    /**
+     * Puts the time of the simulation back to 0, e.g. when the game is restarted from a WorldSnapshot.
+     * The loop must be stopped: this waits for its thread to end. The tick count shown by the overlay
+     * keeps counting.
+     */
+    public synchronized void resetSimulationTime() {
+        if (running) {
+            throw new IllegalStateException("The game loop must be stopped to reset its time");
+        }
+        awaitThreadEnd();
+        simulationTicks = 0;
+        simulationClock.set(0);
+    }
+
+    /**
+     * Gets the lock held during each simulation tick.
+     *
+     * @return the lock shared with the render engine
+     */
+    public Object getWorldLock() {
+        return worldLock;
+    }
+
+    /**
+     * Gets the wrappers measuring the updates of the engines: the simulation engines in update order,
+     * then the render engine.
+     *
+     * @return the timed engines
+     */
+    public ArrayList<TimedEngine> getTimedEngines() {
+        ArrayList<TimedEngine> engines = new ArrayList<>();
+        for (TimedEngine engine : simulationEngines) {
+            engines.add(engine);
+        }
+        engines.add(timedRenderEngine);
+        return engines;
+    }
+
+    /**
+     * Gets the number of simulation ticks run since the loop was created.
+     *
+     * @return the tick count
+     */
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    /**
+     * Starts the loop on a new thread. Does nothing if it is already running.
+     * After a stop, waits for the previous thread to end, so that two loops never run at the same time.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        awaitThreadEnd();
+        running = true;
+        thread = new Thread(this, "game-loop");
+        thread.setDaemon(true); // The window closing must be enough to exit the game
+        thread.start();
+    }
+
+    /**
+     * Waits for the thread of a stopped loop to end (the tick it was running is completed first).
+     */
+    private void awaitThreadEnd() {
+        if (thread == null || thread == Thread.currentThread()) {
+            return;
+        }
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Asks the loop to stop. The current tick is completed before the thread ends.
+     */
+    public synchronized void stop() {
+        running = false;
+        if (thread != null && thread != Thread.currentThread()) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Body of the loop thread: runs the ticks that are due, then draws a frame when it is time.
+     */
+    @Override
+    public void run() {
+        long previousTime = System.nanoTime();
+        long nextFrameTime = previousTime;
+        long accumulator = 0; // Time not yet simulated
+
+        while (running) {
+            long now = System.nanoTime();
+            accumulator += now - previousTime;
+            previousTime = now;
+
+            // Run as many fixed ticks as the elapsed time requires
+            int ticks = 0;
+            while (accumulator >= tickDurationNs && ticks < MAX_TICKS_PER_FRAME && running) {
+                synchronized (worldLock) {
+                    simulationClock.set(simulationTimeMs(++simulationTicks, tickRate));
+                    for (Engine engine : simulationEngines) {
+                        engine.update();
+                    }
+                    tickCount++;
+                }
+                accumulator -= tickDurationNs;
+                ticks++;
+            }
+            // Too far behind (e.g. the computer was asleep): drop the lag instead of catching up
+            if (accumulator >= tickDurationNs) {
+                accumulator %= tickDurationNs;
+            }
+
+            // Draw at the display rate, between the last two ticks
+            if (now >= nextFrameTime) {
+                renderEngine.setInterpolation((double) accumulator / tickDurationNs);
+                timedRenderEngine.update();
+                nextFrameTime = now + frameDurationNs;
+            }
+
+            // Sleep until the next tick or the next frame, whichever comes first
+            long nextTickTime = now + (tickDurationNs - accumulator);
+            long sleep = Math.min(nextTickTime, nextFrameTime) - System.nanoTime();
+            if (sleep > 0) {
+                LockSupport.parkNanos(sleep);
+            }
+        }
+    }
+}
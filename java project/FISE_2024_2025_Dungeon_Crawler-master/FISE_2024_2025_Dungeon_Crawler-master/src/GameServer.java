@@ -0,0 +1,514 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * GameServer runs a game for several players without any window: it is the authority on the game state.
+ * Each player has a hero in the same Playground and a GameEngine of its own, fed with the keys sent by its
+ * client; one PhysicEngine moves all the heroes. After each tick, every client gets a snapshot of the
+ * players as a delta from the last snapshot it acknowledged (see SnapshotState), so a client that lost
+ * some snapshots still gets a state it can rebuild.
+ * <p>
+ * Everything runs on one thread: a java.nio Selector waits for the client messages until the next tick is
+ * due, and no socket operation ever blocks. A client too slow to read its snapshots misses some of them
+ * (counted) instead of slowing the game down.
+ * <p>
+ * Every few seconds the server prints the bandwidth sent per client, the CPU time of its thread per tick,
+ * and from it an estimate of the number of clients one core could serve at the tick rate. Each client gets
+ * the state of every player, so the cost of a tick grows with the square of the number of clients: the
+ * estimate fits that quadratic cost, it does not scale the cost per client linearly.
+ * <pre>
+ * java -cp bin GameServer [--port 7777] [--level data/level1.txt] [--tick-rate 20] [--max-clients 1024]
+ * </pre>
+ * The GameClient shows the game of a server in a window, and the LoadTestClient simulates many clients.
+ */
+public class GameServer implements Runnable {
+    // Defaults of the options.
+    private static final String DEFAULT_LEVEL_PATH = "./data/level1.txt";
+    private static final int DEFAULT_TICK_RATE = 20;
+    private static final int DEFAULT_MAX_CLIENTS = 1024;
+
+    // Number of states kept to compute the deltas: a client that acknowledged an older state gets everything.
+    static final int HISTORY_TICKS = 64;
+
+    // Size of the buffers of a client: received messages, and snapshots waiting to be sent.
+    private static final int INPUT_BUFFER_BYTES = 4096;
+    private static final int OUTPUT_BUFFER_BYTES = 1 << 18;
+
+    // Interval between two reports of the statistics, in nanoseconds.
+    private static final long REPORT_INTERVAL_NS = 5_000_000_000L;
+
+    // Level played, and its checksum sent to the clients (they must have the same file).
+    private final String levelPath;
+    private final long levelChecksum;
+    private final Playground level;
+
+    // Engines of the simulation: one GameEngine per player (in the clients), one PhysicEngine for all.
+    private final PhysicEngine physicEngine = new PhysicEngine();
+    private final VirtualClock clock = new VirtualClock();
+    private final int tickRate;
+    private final int maxClients;
+
+    // Connected clients, by increasing player id.
+    private final ArrayList<Client> clients = new ArrayList<>();
+    private int nextPlayerId = 1;
+
+    // States of the last ticks, by tick % HISTORY_TICKS.
+    private final SnapshotState[] history = new SnapshotState[HISTORY_TICKS];
+
+    // Buffer in which each snapshot is written before being copied to the clients.
+    private final ByteBuffer snapshotBuffer = ByteBuffer.allocate(OUTPUT_BUFFER_BYTES);
+
+    // Network.
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private volatile boolean running = true;
+
+    // Number of ticks run.
+    private long tickCount = 0;
+
+    // Statistics since the start, and over the current report interval.
+    private long totalBytesSent = 0;
+    private long droppedSnapshotCount = 0;
+    private long intervalStartNs;
+    private long intervalStartCpuNs;
+    private long intervalStartTicks;
+    private long intervalBytesSent;
+    private long intervalClientTicks;  // Sum over the ticks of the number of clients
+    private double intervalSquaredClientTicks;  // Sum over the ticks of the square of the number of clients
+
+    // Last report: bytes per second per client, CPU time per tick, and clients per core (quadratic fit).
+    private volatile double lastBytesPerClientPerSecond = 0;
+    private volatile double lastCpuNanosPerTick = 0;
+    private volatile double lastClientsPerCore = 0;
+
+    /**
+     * A connected client: its socket, its buffers and its player.
+     */
+    private final class Client {
+        final int playerId;
+        final SocketChannel channel;
+        final ByteBuffer input = ByteBuffer.allocate(INPUT_BUFFER_BYTES);
+        final ByteBuffer output = ByteBuffer.allocate(OUTPUT_BUFFER_BYTES);
+        final DynamicSprite hero;
+        final GameEngine gameEngine;
+        long acknowledgedTick = 0;  // Tick of the last snapshot received by the client (0: none)
+        long bytesSent = 0;
+
+        Client(int playerId, SocketChannel channel) {
+            this.playerId = playerId;
+            this.channel = channel;
+            hero = new DynamicSprite(Playground.HERO_START_X, Playground.HERO_START_Y, (Animation) null,
+                    Playground.HERO_WIDTH, Playground.HERO_HEIGHT);
+            hero.setGameListener(new GameListener() {
+                @Override
+                public void onGameOver(DynamicSprite sprite) {
+                    System.out.println("Player " + Client.this.playerId + ": game over");
+                }
+
+                @Override
+                public void onLevelComplete(DynamicSprite sprite) {
+                    System.out.println("Player " + Client.this.playerId + ": exit reached");
+                }
+            });
+            gameEngine = new GameEngine(hero);
+        }
+    }
+
+    /**
+     * Loads a level and opens the server socket.
+     *
+     * @param port       the port to listen to (0 for any free port)
+     * @param levelPath  the path to the level (text or binary)
+     * @param tickRate   the number of ticks per second
+     * @param maxClients the most clients accepted at once
+     * @throws IOException if the level cannot be read or the port cannot be opened
+     */
+    public GameServer(int port, String levelPath, int tickRate, int maxClients) throws IOException {
+        if (tickRate <= 0) {
+            throw new IllegalArgumentException("Tick rate must be positive");
+        }
+        this.levelPath = levelPath;
+        this.levelChecksum = InputRecorder.checksumOf(levelPath);
+        this.level = new Playground(levelPath);
+        this.tickRate = tickRate;
+        this.maxClients = maxClients;
+        physicEngine.setClock(clock);
+        physicEngine.setEnvironment(level.getCollisionMap());
+        for (int i = 0; i < HISTORY_TICKS; i++) {
+            history[i] = new SnapshotState(16);
+        }
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Runs the server until stop() is called: waits for the messages of the clients, and runs a tick
+     * whenever one is due.
+     */
+    @Override
+    public void run() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long tickDurationNs = 1_000_000_000L / tickRate;
+        long nextTickNs = System.nanoTime();
+        intervalStartNs = nextTickNs;
+        intervalStartCpuNs = threads.getCurrentThreadCpuTime();
+        try {
+            while (running) {
+                long waitNs = nextTickNs - System.nanoTime();
+                if (waitNs > 0) {
+                    selector.select(Math.max(1, waitNs / 1_000_000));
+                } else {
+                    selector.selectNow();
+                }
+                handleSelectedKeys();
+
+                long now = System.nanoTime();
+                if (now >= nextTickNs) {
+                    tick();
+                    nextTickNs += tickDurationNs;
+                    if (now - nextTickNs > tickDurationNs * tickRate) {
+                        nextTickNs = now; // More than a second late: do not try to catch up
+                    }
+                }
+                if (now - intervalStartNs >= REPORT_INTERVAL_NS) {
+                    report(now, threads.getCurrentThreadCpuTime());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Server stopped: " + e.getMessage());
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Asks the server to stop. Can be called from any thread.
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Handles the sockets ready for an operation.
+     */
+    private void handleSelectedKeys() throws IOException {
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            if (!key.isValid()) {
+                continue;
+            }
+            if (key.isAcceptable()) {
+                accept();
+                continue;
+            }
+            Client client = (Client) key.attachment();
+            try {
+                if (key.isReadable()) {
+                    read(client);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    flush(client);
+                }
+            } catch (IOException | RuntimeException e) {
+                disconnect(client, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Accepts the waiting connections, giving each one a hero and sending it the welcome message.
+     */
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            if (clients.size() >= maxClients) {
+                channel.close();
+                continue;
+            }
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true); // Snapshots are small and must leave at once
+            Client client = new Client(nextPlayerId++, channel);
+            channel.register(selector, SelectionKey.OP_READ, client);
+            physicEngine.addToMovingSpriteList(client.hero);
+            clients.add(client);
+
+            int start = NetProtocol.beginMessage(client.output, NetProtocol.WELCOME);
+            NetProtocol.putVarInt(client.output, client.playerId);
+            NetProtocol.putVarInt(client.output, tickRate);
+            client.output.putLong(levelChecksum);
+            byte[] path = levelPath.getBytes(StandardCharsets.UTF_8);
+            client.output.putShort((short) path.length);
+            client.output.put(path);
+            NetProtocol.endMessage(client.output, start);
+            try {
+                flush(client);
+            } catch (IOException e) {
+                disconnect(client, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reads the messages of a client: keys go to its GameEngine, acknowledgements are kept.
+     */
+    private void read(Client client) throws IOException {
+        if (client.channel.read(client.input) < 0) {
+            disconnect(client, "connection closed");
+            return;
+        }
+        ByteBuffer input = client.input;
+        input.flip();
+        int length;
+        while ((length = NetProtocol.completeMessageLength(input)) > 0) {
+            int end = input.position() + NetProtocol.LENGTH_BYTES + length;
+            int received = input.limit();
+            input.position(input.position() + NetProtocol.LENGTH_BYTES);
+            // A message too short for its fields fails here (and the client is dropped) instead of reading
+            // the next message as the rest of it
+            input.limit(end);
+            byte type = input.get();
+            if (type == NetProtocol.INPUT) {
+                byte kind = input.get();
+                int keyCode = NetProtocol.getVarInt(input);
+                if (kind == InputRingBuffer.KEY_PRESSED) {
+                    client.gameEngine.pressKey(keyCode);
+                } else {
+                    client.gameEngine.releaseKey(keyCode);
+                }
+            } else if (type == NetProtocol.ACK) {
+                long tick = NetProtocol.getVarLong(input);
+                if (tick <= tickCount) {
+                    client.acknowledgedTick = Math.max(client.acknowledgedTick, tick);
+                }
+            }
+            input.limit(received);
+            input.position(end); // Skips what a newer client may add to a message
+        }
+        input.compact();
+    }
+
+    /**
+     * Runs one tick: the input of each player, then the physics, then a snapshot for each client.
+     */
+    private void tick() {
+        tickCount++;
+        clock.set(GameLoop.simulationTimeMs(tickCount, tickRate));
+        for (Client client : clients) {
+            client.gameEngine.update();
+        }
+        physicEngine.update();
+
+        // State of every player, kept to compute the next deltas
+        SnapshotState state = history[(int) (tickCount % HISTORY_TICKS)];
+        state.clear(tickCount, physicEngine.getEntityStore().getTime());
+        for (Client client : clients) {
+            state.add(client.playerId, client.hero);
+        }
+
+        for (int i = clients.size() - 1; i >= 0; i--) {
+            Client client = clients.get(i);
+            sendSnapshot(client, state);
+        }
+        intervalClientTicks += clients.size();
+        intervalSquaredClientTicks += (double) clients.size() * clients.size();
+    }
+
+    /**
+     * Sends a state to a client, as a delta from the last state it acknowledged if it is still kept.
+     */
+    private void sendSnapshot(Client client, SnapshotState state) {
+        SnapshotState base = null;
+        if (client.acknowledgedTick > 0 && tickCount - client.acknowledgedTick < HISTORY_TICKS) {
+            base = history[(int) (client.acknowledgedTick % HISTORY_TICKS)];
+        }
+        snapshotBuffer.clear();
+        int start = NetProtocol.beginMessage(snapshotBuffer, NetProtocol.SNAPSHOT);
+        SnapshotState.writeDelta(base, state, snapshotBuffer);
+        NetProtocol.endMessage(snapshotBuffer, start);
+        snapshotBuffer.flip();
+        if (client.output.remaining() < snapshotBuffer.remaining()) {
+            droppedSnapshotCount++; // The client does not read fast enough: it gets a later one
+            return;
+        }
+        client.output.put(snapshotBuffer);
+        try {
+            flush(client);
+        } catch (IOException e) {
+            disconnect(client, e.getMessage());
+        }
+    }
+
+    /**
+     * Sends what the socket of a client accepts without blocking, and waits for it to be writable again
+     * if something is left.
+     */
+    private void flush(Client client) throws IOException {
+        ByteBuffer output = client.output;
+        output.flip();
+        int written = client.channel.write(output);
+        output.compact();
+        client.bytesSent += written;
+        totalBytesSent += written;
+        intervalBytesSent += written;
+        SelectionKey key = client.channel.keyFor(selector);
+        if (key != null && key.isValid()) {
+            key.interestOps(output.position() > 0
+                    ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Closes the connection of a client and removes its hero from the game.
+     */
+    private void disconnect(Client client, String reason) {
+        if (!clients.remove(client)) {
+            return;
+        }
+        physicEngine.removeFromMovingSpriteList(client.hero);
+        try {
+            client.channel.close();
+        } catch (IOException ignored) {
+            // Already closing
+        }
+        System.out.println("Player " + client.playerId + " left (" + reason + ")");
+    }
+
+    /**
+     * Prints the statistics of the last interval and starts a new one.
+     */
+    private void report(long now, long cpuNs) {
+        double seconds = (now - intervalStartNs) / 1e9;
+        long ticks = tickCount - intervalStartTicks;
+        double averageClients = ticks == 0 ? 0 : (double) intervalClientTicks / ticks;
+        lastBytesPerClientPerSecond = averageClients == 0 ? 0 : intervalBytesSent / seconds / averageClients;
+        lastCpuNanosPerTick = ticks == 0 ? 0 : (double) (cpuNs - intervalStartCpuNs) / ticks;
+        // One core gives 1 s of CPU per second: it can serve clients until a tick takes a tick duration.
+        // Each client gets the state of every player, so a tick costs about k * clients^2; k is fitted on the
+        // ticks of the interval. The fixed and per-client costs are scaled as if they grew with the square
+        // too, so the number is rather low than high when there are more clients than now
+        double cpuPerSquaredClient = intervalSquaredClientTicks == 0 ? 0
+                : (cpuNs - intervalStartCpuNs) / intervalSquaredClientTicks;
+        lastClientsPerCore = cpuPerSquaredClient == 0 ? 0 : Math.sqrt((1e9 / tickRate) / cpuPerSquaredClient);
+        System.out.println(String.format(Locale.ROOT,
+                "Server: %d clients, %.1f ticks/s, %.0f B/s per client, %.3f ms CPU per tick, "
+                        + "~%.0f clients before a tick exceeds its %.0f ms budget (quadratic fit), %d snapshots dropped",
+                clients.size(), ticks / seconds, lastBytesPerClientPerSecond, lastCpuNanosPerTick / 1e6,
+                lastClientsPerCore, 1e3 / tickRate, droppedSnapshotCount));
+        intervalStartNs = now;
+        intervalStartCpuNs = cpuNs;
+        intervalStartTicks = tickCount;
+        intervalBytesSent = 0;
+        intervalClientTicks = 0;
+        intervalSquaredClientTicks = 0;
+    }
+
+    /**
+     * Closes every connection and the server socket.
+     */
+    private void close() {
+        for (int i = clients.size() - 1; i >= 0; i--) {
+            disconnect(clients.get(i), "server stopped");
+        }
+        try {
+            selector.close();
+            serverChannel.close();
+        } catch (IOException ignored) {
+            // Nothing more to do
+        }
+    }
+
+    /**
+     * Gets the port the server listens to, e.g. when it was created with port 0.
+     *
+     * @return the local port
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    public long getTotalBytesSent() {
+        return totalBytesSent;
+    }
+
+    public long getDroppedSnapshotCount() {
+        return droppedSnapshotCount;
+    }
+
+    /**
+     * Gets the bytes sent per second to each client, over the last report interval.
+     *
+     * @return the bandwidth per client, in bytes per second
+     */
+    public double getBytesPerClientPerSecond() {
+        return lastBytesPerClientPerSecond;
+    }
+
+    /**
+     * Gets the CPU time of the server thread per tick, over the last report interval.
+     *
+     * @return the CPU time in nanoseconds
+     */
+    public double getCpuNanosPerTick() {
+        return lastCpuNanosPerTick;
+    }
+
+    /**
+     * Gets the estimate of the number of clients one core could serve at the tick rate: the number at which
+     * a tick would take a whole tick duration, with the cost of a tick fitted as growing with the square of
+     * the number of clients over the last report interval.
+     *
+     * @return the number of clients per core
+     */
+    public double getClientsPerCore() {
+        return lastClientsPerCore;
+    }
+
+    /**
+     * Starts a server from the command line.
+     *
+     * @param args the options (see the class comment)
+     * @throws IOException if the level cannot be read or the port cannot be opened
+     */
+    public static void main(String[] args) throws IOException {
+        int port = NetProtocol.DEFAULT_PORT;
+        String levelPath = DEFAULT_LEVEL_PATH;
+        int tickRate = DEFAULT_TICK_RATE;
+        int maxClients = DEFAULT_MAX_CLIENTS;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port" -> port = Integer.parseInt(args[++i]);
+                case "--level" -> levelPath = args[++i];
+                case "--tick-rate" -> tickRate = Integer.parseInt(args[++i]);
+                case "--max-clients" -> maxClients = Integer.parseInt(args[++i]);
+                default -> {
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+                }
+            }
+        }
+        GameServer server = new GameServer(port, levelPath, tickRate, maxClients);
+        System.out.println("Server listening on port " + server.getPort() + ", level " + levelPath);
+        server.run();
+    }
+}
@@ -0,0 +1,413 @@
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+/**
+ * HeadlessRunner runs the game without any window: it loads a level, feeds scripted input to the
+ * GameEngine and updates the PhysicEngine as fast as possible, then reports the throughput in ticks per second.
+ * It is used for bulk simulations, soak tests and throughput measurements.
+ * <pre>
+ * java -cp bin HeadlessRunner [--level data/level1.txt] [--script "E:20,S:10,W:20,N:10"] [--ticks 1000000]
+ *                             [--continue] [--record run.rec]
+ * java -cp bin HeadlessRunner --replay run.rec [--level data/level1.txt] [--frames dir] [--frame-every 20]
+ * </pre>
+ * The script is a list of DIRECTION:TICKS steps (N, S, E or W), played in a loop. With --continue the run
+ * goes on after a game over or after reaching the exit instead of stopping. --record writes the input of
+ * the run into a log (see InputRecorder), like -Dgame.record=... does for the game.
+ * --replay runs a log again instead of a script, checks that the checksums of the game state match those
+ * of the log, and can save some frames as PNG images.
+ * Time is virtual: each tick moves the clock forward by the duration of a tick of the game, so invincibility
+ * and animations last as many ticks as in a real game, however fast the run is.
+ */
+public class HeadlessRunner implements GameListener {
+    // Ticks per second of the game, giving the time added to the virtual clock at each tick.
+    private static final int DEFAULT_TICK_RATE = 20;
+
+    // Size of the frames saved during a replay (a usual window size).
+    private static final int FRAME_WIDTH = 800;
+    private static final int FRAME_HEIGHT = 600;
+
+    // Script used when none is given: a loop around the first level.
+    private static final String DEFAULT_SCRIPT = "E:20,S:10,W:20,N:10";
+
+    // Engines of the simulation, and the hero they move.
+    private final GameEngine gameEngine;
+    private final PhysicEngine physicEngine;
+    private final DynamicSprite hero;
+
+    // Level played.
+    private final String levelPath;
+    private final Playground level;
+
+    // Time of the simulation, moved forward by one tick duration per tick.
+    private final VirtualClock clock = new VirtualClock();
+    private int tickRate = DEFAULT_TICK_RATE;
+
+    // Log receiving the input of the run (null when not recording).
+    private InputRecorder recorder;
+
+    // Engine drawing the frames saved every frameInterval ticks into frameDirectory (null when not saving).
+    private RenderEngine frameRenderer;
+    private File frameDirectory;
+    private int frameInterval;
+
+    // Scripted input: key pressed at the start of each step, and the length of each step in ticks.
+    private final ArrayList<Integer> scriptKeys = new ArrayList<>();
+    private final ArrayList<Integer> scriptTicks = new ArrayList<>();
+
+    // Number of ticks run so far, the tick of the game over (-1 while the hero is alive),
+    // and the tick at which the hero reached the exit (-1 until then).
+    private long tickCount = 0;
+    private long gameOverTick = -1;
+    private long levelCompleteTick = -1;
+
+    /**
+     * Loads a level and creates the engines, with the hero at its starting position.
+     *
+     * @param levelPath the path to the level (text or binary)
+     * @throws IOException if the image of the hero cannot be loaded
+     */
+    public HeadlessRunner(String levelPath) throws IOException {
+        this.levelPath = levelPath;
+        level = new Playground(levelPath);
+        hero = new DynamicSprite(Playground.HERO_START_X, Playground.HERO_START_Y,
+                AssetManager.getInstance().getAnimation("./img/heroTileSheetLowRes.png", 48, 50, 250),
+                Playground.HERO_WIDTH, Playground.HERO_HEIGHT);
+        hero.setGameListener(this);
+        gameEngine = new GameEngine(hero);
+        physicEngine = new PhysicEngine();
+        physicEngine.setClock(clock);
+        physicEngine.setEnvironment(level.getCollisionMap());
+        physicEngine.addToMovingSpriteList(hero);
+    }
+
+    /**
+     * Sets the number of ticks per second of the simulated game (20 by default), which gives the time of
+     * each tick. Must be called before running.
+     *
+     * @param tickRate the number of ticks per second
+     */
+    public void setTickRate(int tickRate) {
+        if (tickRate <= 0) {
+            throw new IllegalArgumentException("Tick rate must be positive");
+        }
+        this.tickRate = tickRate;
+    }
+
+    /**
+     * Starts writing the input of the run into a log. Must be called before running; the log is finished
+     * by stopRecording.
+     *
+     * @param logPath the path of the log to write
+     * @throws IOException if the log cannot be created
+     */
+    public void startRecording(String logPath) throws IOException {
+        recorder = new InputRecorder(logPath, levelPath, tickRate, physicEngine.getEntityStore());
+        gameEngine.setInputRecorder(recorder);
+    }
+
+    /**
+     * Writes the end of the log started by startRecording.
+     */
+    public void stopRecording() {
+        if (recorder != null) {
+            recorder.close();
+        }
+    }
+
+    /**
+     * Saves a frame of the game as a PNG image every few ticks, centered on the hero.
+     *
+     * @param directory the directory of the images (created if needed)
+     * @param interval  the number of ticks between two frames
+     */
+    public void setFrameOutput(File directory, int interval) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("Frame interval must be positive");
+        }
+        directory.mkdirs();
+        frameDirectory = directory;
+        frameInterval = interval;
+        frameRenderer = new RenderEngine(null);
+        frameRenderer.setSize(FRAME_WIDTH, FRAME_HEIGHT);
+        frameRenderer.setStaticLayer(level.getSpriteSource(), level.getWidth(), level.getHeight());
+        frameRenderer.addToRenderList(hero);
+        frameRenderer.setCameraTarget(hero);
+        frameRenderer.setParticleSystem(physicEngine.getParticleSystem());
+    }
+
+    /**
+     * Sets the scripted input, a list of DIRECTION:TICKS steps separated by commas or spaces.
+     *
+     * @param script the script, e.g. "E:20,S:10"
+     */
+    public void setScript(String script) {
+        scriptKeys.clear();
+        scriptTicks.clear();
+        for (String step : script.trim().split("[,\\s]+")) {
+            String[] parts = step.split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Bad script step (expected DIRECTION:TICKS): " + step);
+            }
+            int keyCode;
+            switch (parts[0].toUpperCase()) {
+                case "N" -> keyCode = KeyEvent.VK_UP;
+                case "S" -> keyCode = KeyEvent.VK_DOWN;
+                case "E" -> keyCode = KeyEvent.VK_RIGHT;
+                case "W" -> keyCode = KeyEvent.VK_LEFT;
+                default -> throw new IllegalArgumentException("Unknown direction in script step: " + step);
+            }
+            int ticks = Integer.parseInt(parts[1]);
+            if (ticks <= 0) {
+                throw new IllegalArgumentException("Script step must last at least one tick: " + step);
+            }
+            scriptKeys.add(keyCode);
+            scriptTicks.add(ticks);
+        }
+    }
+
+    /**
+     * Runs the simulation as fast as possible.
+     *
+     * @param maxTicks              the number of ticks to run
+     * @param continueAfterGameOver true to keep running after a game over or the exit, false to stop there
+     * @return the number of ticks actually run
+     */
+    public long run(long maxTicks, boolean continueAfterGameOver) {
+        int step = 0;
+        long stepEnd = 0; // Tick at which the current step ends
+        long ticksRun = 0;
+        while (ticksRun < maxTicks && (continueAfterGameOver || (gameOverTick < 0 && levelCompleteTick < 0))) {
+            // Start the next step of the script when the current one is over
+            if (!scriptKeys.isEmpty() && tickCount >= stepEnd) {
+                // Release the key of the previous step, as a player would, then press the new one
+                gameEngine.releaseKey(scriptKeys.get((step + scriptKeys.size() - 1) % scriptKeys.size()));
+                gameEngine.pressKey(scriptKeys.get(step));
+                stepEnd = tickCount + scriptTicks.get(step);
+                step = (step + 1) % scriptKeys.size();
+            }
+            tick();
+            ticksRun++;
+        }
+        return ticksRun;
+    }
+
+    /**
+     * Runs a recorded game again: the key events of the log are given to the GameEngine at their tick, and
+     * the checksum of the entity store is compared with the log at each checkpoint and at the end.
+     * The replay goes on after a mismatch, to report the end state too.
+     *
+     * @param replay the log, with its header already read
+     * @return the tick of the first checksum that does not match, or -1 if the replay matches the log
+     * @throws IOException if the log cannot be read
+     */
+    public long replay(InputReplay replay) throws IOException {
+        long firstMismatchTick = -1;
+        while (replay.next()) {
+            while (tickCount < replay.getTick()) {
+                tick();
+            }
+            switch (replay.getKind()) {
+                case InputRecorder.KEY_PRESSED -> gameEngine.pressKey(replay.getKeyCode());
+                case InputRecorder.KEY_RELEASED -> gameEngine.releaseKey(replay.getKeyCode());
+                default -> {
+                    long checksum = physicEngine.getEntityStore().checksum();
+                    if (checksum != replay.getChecksum() && firstMismatchTick < 0) {
+                        firstMismatchTick = tickCount;
+                    }
+                }
+            }
+        }
+        return firstMismatchTick;
+    }
+
+    /**
+     * Runs one tick: the virtual clock, then the engines in the order of the game loop.
+     */
+    private void tick() {
+        clock.set(GameLoop.simulationTimeMs(tickCount + 1, tickRate));
+        gameEngine.update();
+        physicEngine.update();
+        if (recorder != null) {
+            recorder.update();
+        }
+        tickCount++;
+        if (frameRenderer != null && tickCount % frameInterval == 0) {
+            saveFrame();
+        }
+    }
+
+    /**
+     * Draws the game into an image and saves it in the frame directory.
+     */
+    private void saveFrame() {
+        BufferedImage frame = new BufferedImage(FRAME_WIDTH, FRAME_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = frame.createGraphics();
+        try {
+            frameRenderer.paint(g);
+        } finally {
+            g.dispose();
+        }
+        File file = new File(frameDirectory, String.format("frame-%08d.png", tickCount));
+        try {
+            ImageIO.write(frame, "png", file);
+        } catch (IOException e) {
+            System.err.println("Cannot save " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records the game over instead of showing a Game Over screen.
+     *
+     * @param sprite the sprite that lost all its lives
+     */
+    @Override
+    public void onGameOver(DynamicSprite sprite) {
+        if (gameOverTick < 0) {
+            gameOverTick = tickCount;
+        }
+    }
+
+    /**
+     * Records the tick at which the hero reached the exit.
+     *
+     * @param sprite the sprite that reached the exit
+     */
+    @Override
+    public void onLevelComplete(DynamicSprite sprite) {
+        if (levelCompleteTick < 0) {
+            levelCompleteTick = tickCount;
+        }
+    }
+
+    public DynamicSprite getHero() {
+        return hero;
+    }
+
+    public GameEngine getGameEngine() {
+        return gameEngine;
+    }
+
+    public PhysicEngine getPhysicEngine() {
+        return physicEngine;
+    }
+
+    public long getTickCount() {
+        return tickCount;
+    }
+
+    public long getGameOverTick() {
+        return gameOverTick;
+    }
+
+    public long getLevelCompleteTick() {
+        return levelCompleteTick;
+    }
+
+    /**
+     * Entry point of the headless runner.
+     *
+     * @param args the options described in the class documentation
+     * @throws IOException if a script file cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true"); // Never open a window, even by accident
+
+        String levelPath = null;
+        String script = DEFAULT_SCRIPT;
+        long ticks = 1_000_000;
+        boolean continueAfterGameOver = false;
+        String recordPath = null;
+        String replayPath = null;
+        String framesPath = null;
+        int frameInterval = 20;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--level" -> levelPath = args[++i];
+                case "--script" -> script = args[++i];
+                case "--script-file" -> script = new String(Files.readAllBytes(Paths.get(args[++i])));
+                case "--ticks" -> ticks = Long.parseLong(args[++i]);
+                case "--continue" -> continueAfterGameOver = true;
+                case "--record" -> recordPath = args[++i];
+                case "--replay" -> replayPath = args[++i];
+                case "--frames" -> framesPath = args[++i];
+                case "--frame-every" -> frameInterval = Integer.parseInt(args[++i]);
+                default -> {
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+                }
+            }
+        }
+        if (replayPath != null) {
+            System.exit(runReplay(replayPath, levelPath, framesPath, frameInterval));
+        }
+
+        HeadlessRunner runner = new HeadlessRunner(levelPath != null ? levelPath : "./data/level1.txt");
+        runner.setScript(script);
+        if (recordPath != null) {
+            runner.startRecording(recordPath);
+        }
+        if (framesPath != null) {
+            runner.setFrameOutput(new File(framesPath), frameInterval);
+        }
+        long start = System.nanoTime();
+        long ticksRun = runner.run(ticks, continueAfterGameOver);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        runner.stopRecording();
+
+        System.out.printf("Ran %d ticks in %.3f s: %.0f ticks/s%n", ticksRun, seconds, ticksRun / seconds);
+        runner.printEndState();
+    }
+
+    /**
+     * Replays a log and prints the result.
+     *
+     * @return the exit code: 0 if the replay matches the log, 1 if a checksum differs, 2 for a bad level
+     */
+    private static int runReplay(String replayPath, String levelPath, String framesPath, int frameInterval)
+            throws IOException {
+        try (InputReplay replay = new InputReplay(replayPath)) {
+            String replayedLevel = (levelPath != null) ? levelPath : replay.getLevelPath();
+            if (InputRecorder.checksumOf(replayedLevel) != replay.getLevelChecksum()) {
+                System.err.println("The level " + replayedLevel + " is not the one recorded in " + replayPath);
+                return 2;
+            }
+            HeadlessRunner runner = new HeadlessRunner(replayedLevel);
+            runner.setTickRate(replay.getTickRate());
+            if (framesPath != null) {
+                runner.setFrameOutput(new File(framesPath), frameInterval);
+            }
+            long start = System.nanoTime();
+            long mismatchTick = runner.replay(replay);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            long ticksRun = runner.getTickCount();
+            System.out.printf("Replayed %d ticks in %.3f s: %.0f ticks/s (%.0fx real time)%n", ticksRun, seconds,
+                    ticksRun / seconds, ticksRun / (double) replay.getTickRate() / seconds);
+            runner.printEndState();
+            if (mismatchTick >= 0) {
+                System.out.println("Checksum MISMATCH from tick " + mismatchTick);
+                return 1;
+            }
+            System.out.println("Checksums match");
+            return 0;
+        }
+    }
+
+    /**
+     * Prints where the hero is and what happened to it.
+     */
+    private void printEndState() {
+        System.out.printf("Hero at (%.1f, %.1f), traps touched: %d, game over at tick: %s%n",
+                hero.getX(), hero.getY(), hero.getTrapCount(),
+                gameOverTick < 0 ? "never" : String.valueOf(gameOverTick));
+        System.out.printf("Exit reached at tick: %s%n",
+                levelCompleteTick < 0 ? "never" : String.valueOf(levelCompleteTick));
+    }
+}
@@ -0,0 +1,257 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.CRC32;
+
+/**
+ * InputRecorder writes the key events applied by the GameEngine, tick by tick, into a compact binary log,
+ * together with the identity of the level. The simulation being deterministic (fixed ticks, time taken
+ * from the tick count), the InputReplay of the log runs exactly the same game again, e.g. to reproduce a bug.
+ * A checksum of the entity store is written every CHECKPOINT_TICKS ticks and at the end, so that the replay
+ * can check that it ends in the same state.
+ * It is an Engine: it must be updated at the end of each tick, after the PhysicEngine.
+ * When the game is restarted, the next game is written to a new file (run.rec, then run-2.rec, run-3.rec...),
+ * so the log of the game that just ended is kept to be replayed.
+ * <p>
+ * Format (big-endian):
+ * <pre>
+ *  0  int    magic "DCRC"
+ *  4  short  version (1)
+ *  6  int    tick rate (ticks per second)
+ * 10  long   CRC32 of the level file
+ * 18  UTF    path of the level file
+ *  .  records: varint number of ticks since the previous record, byte kind, then
+ *     KEY_PRESSED / KEY_RELEASED: varint key code, applied at the start of the tick
+ *     CHECKPOINT / END: long checksum of the entity store after the tick count reached
+ * </pre>
+ */
+public class InputRecorder implements Engine {
+    // Magic number at the start of every input log ("DCRC").
+    public static final int MAGIC = 0x44435243;
+
+    // Version of the format.
+    public static final short VERSION = 1;
+
+    // Kinds of records (the key events use the values of the InputRingBuffer).
+    public static final byte KEY_PRESSED = InputRingBuffer.KEY_PRESSED;
+    public static final byte KEY_RELEASED = InputRingBuffer.KEY_RELEASED;
+    public static final byte CHECKPOINT = 3;
+    public static final byte END = 4;
+
+    // Number of ticks between two checksums.
+    public static final int CHECKPOINT_TICKS = 1000;
+
+    private DataOutputStream output;
+
+    // Store of the moving sprites, whose checksum is written.
+    private final EntityStore store;
+
+    // Path of the first log, path of the log being written, number of the game recorded, and header values
+    // (kept to start a new log on restart).
+    private final String logPath;
+    private String currentLogPath;
+    private int gameNumber = 1;
+    private final String levelPath;
+    private final int tickRate;
+    private final long levelChecksum;
+
+    // Number of ticks completed, and tick of the last record written.
+    private long tickCount = 0;
+    private long lastRecordTick = 0;
+
+    private boolean closed = false;
+
+    /**
+     * Creates the log file and writes its header.
+     *
+     * @param logPath   the path of the log to write
+     * @param levelPath the path of the level played
+     * @param tickRate  the number of ticks per second of the game
+     * @param store     the entity store of the PhysicEngine
+     * @throws IOException if the level cannot be read or the log cannot be written
+     */
+    public InputRecorder(String logPath, String levelPath, int tickRate, EntityStore store) throws IOException {
+        this.store = store;
+        this.logPath = logPath;
+        this.levelPath = levelPath;
+        this.tickRate = tickRate;
+        this.levelChecksum = checksumOf(levelPath); // Before creating the log, so a bad level leaves no file
+        open(logPath);
+    }
+
+    /**
+     * Creates a log file and writes its header.
+     */
+    private void open(String path) throws IOException {
+        currentLogPath = path;
+        output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16));
+        output.writeInt(MAGIC);
+        output.writeShort(VERSION);
+        output.writeInt(tickRate);
+        output.writeLong(levelChecksum);
+        output.writeUTF(levelPath);
+        tickCount = 0;
+        lastRecordTick = 0;
+        closed = false;
+    }
+
+    /**
+     * Ends the log of the current game and starts a new log from tick 0, in a new file numbered after the
+     * game (run-2.rec for the second game of run.rec), e.g. when the game is restarted. The finished log is
+     * kept. The level is not read again.
+     * The simulation must not be updated at the same time (e.g. hold the lock of the game loop).
+     */
+    public synchronized void restart() {
+        close();
+        gameNumber++;
+        try {
+            open(numberedPath(logPath, gameNumber));
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Gets the path of the log of a game: the path given for the first game, then the number of the game
+     * before the extension ("run.rec", "run-2.rec", "run-3.rec"...).
+     *
+     * @param path   the path of the log of the first game
+     * @param number the number of the game, from 1
+     * @return the path of the log of that game
+     */
+    static String numberedPath(String path, int number) {
+        if (number <= 1) {
+            return path;
+        }
+        String name = Paths.get(path).getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        int cut = dot > 0 ? path.length() - (name.length() - dot) : path.length();
+        return path.substring(0, cut) + "-" + number + path.substring(cut);
+    }
+
+    /**
+     * Gets the path of the log being written (it changes on each restart).
+     *
+     * @return the path of the current log
+     */
+    public synchronized String getLogPath() {
+        return currentLogPath;
+    }
+
+    /**
+     * Computes the CRC32 of a file, identifying the exact level played.
+     *
+     * @param path the path of the file
+     * @return the CRC32 of its content
+     * @throws IOException if the file cannot be read
+     */
+    public static long checksumOf(String path) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[1 << 16];
+        try (InputStream input = Files.newInputStream(Paths.get(path))) {
+            int read;
+            while ((read = input.read(buffer)) > 0) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Records a key event applied by the GameEngine during the current tick.
+     *
+     * @param type    InputRingBuffer.KEY_PRESSED or KEY_RELEASED
+     * @param keyCode the code of the key
+     */
+    public synchronized void record(int type, int keyCode) {
+        if (closed) {
+            return;
+        }
+        try {
+            writeRecordStart((byte) type);
+            writeVarLong(keyCode);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Ends the current tick, writing a checkpoint every CHECKPOINT_TICKS ticks.
+     */
+    @Override
+    public synchronized void update() {
+        if (closed) {
+            return;
+        }
+        tickCount++;
+        if (tickCount % CHECKPOINT_TICKS == 0) {
+            try {
+                writeRecordStart(CHECKPOINT);
+                output.writeLong(store.checksum());
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * Writes the end of the log with the final checksum, and closes the file.
+     * The simulation must not be updated at the same time (e.g. hold the lock of the game loop).
+     * Does nothing if the log is already closed.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        try {
+            writeRecordStart(END);
+            output.writeLong(store.checksum());
+            output.close();
+        } catch (IOException e) {
+            fail(e);
+        }
+        closed = true;
+    }
+
+    /**
+     * Writes the number of ticks since the previous record, and the kind of the record.
+     */
+    private void writeRecordStart(byte kind) throws IOException {
+        writeVarLong(tickCount - lastRecordTick);
+        lastRecordTick = tickCount;
+        output.writeByte(kind);
+    }
+
+    /**
+     * Writes a positive number in 7-bit groups, the lowest first, the high bit telling that a group follows.
+     * Small numbers (most tick gaps and key codes) take one byte.
+     */
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    /**
+     * Stops recording after a write error: the game goes on, without its log.
+     */
+    private void fail(IOException e) {
+        System.err.println("Input recording stopped: " + e.getMessage());
+        closed = true;
+        try {
+            output.close();
+        } catch (IOException ignored) {
+            // Already failing
+        }
+    }
+
+    public synchronized long getTickCount() {
+        return tickCount;
+    }
+}
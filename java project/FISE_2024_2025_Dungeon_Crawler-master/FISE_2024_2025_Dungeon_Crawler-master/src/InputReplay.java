@@ -0,0 +1,128 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * InputReplay reads an input log written by the InputRecorder, one record after the other.
+ * The HeadlessRunner feeds the key events to a GameEngine at their tick and compares the checksums,
+ * to run a recorded game again far faster than real time.
+ */
+public class InputReplay implements AutoCloseable {
+    private final DataInputStream input;
+
+    // Header of the log.
+    private final int tickRate;
+    private final long levelChecksum;
+    private final String levelPath;
+
+    // Current record: its tick, its kind, and its key code or checksum.
+    private long tick = 0;
+    private byte kind;
+    private int keyCode;
+    private long checksum;
+
+    /**
+     * Opens a log and reads its header.
+     *
+     * @param logPath the path of the log
+     * @throws IOException if the file cannot be read or is not an input log
+     */
+    public InputReplay(String logPath) throws IOException {
+        input = new DataInputStream(new BufferedInputStream(new FileInputStream(logPath), 1 << 16));
+        try {
+            if (input.readInt() != InputRecorder.MAGIC) {
+                throw new IOException("Not an input log: " + logPath);
+            }
+            short version = input.readShort();
+            if (version != InputRecorder.VERSION) {
+                throw new IOException("Unsupported input log version " + version + ": " + logPath);
+            }
+            tickRate = input.readInt();
+            levelChecksum = input.readLong();
+            levelPath = input.readUTF();
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return false when the END record has already been read
+     * @throws IOException if the log cannot be read or ends without its END record
+     */
+    public boolean next() throws IOException {
+        if (kind == InputRecorder.END) {
+            return false;
+        }
+        try {
+            tick += readVarLong();
+            kind = input.readByte();
+            switch (kind) {
+                case InputRecorder.KEY_PRESSED, InputRecorder.KEY_RELEASED -> keyCode = (int) readVarLong();
+                case InputRecorder.CHECKPOINT, InputRecorder.END -> checksum = input.readLong();
+                default -> throw new IOException("Unknown record kind " + kind + " at tick " + tick);
+            }
+        } catch (EOFException e) {
+            throw new IOException("Input log ends without its END record (game still running when copied?)", e);
+        }
+        return true;
+    }
+
+    /**
+     * Reads a number written by InputRecorder.writeVarLong.
+     */
+    private long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = input.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Bad number in input log");
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+
+    public int getTickRate() {
+        return tickRate;
+    }
+
+    public long getLevelChecksum() {
+        return levelChecksum;
+    }
+
+    public String getLevelPath() {
+        return levelPath;
+    }
+
+    /**
+     * Gets the tick of the current record: for a key event, the number of ticks completed before it was
+     * applied; for a checksum, the number of ticks completed when it was computed.
+     *
+     * @return the tick of the record
+     */
+    public long getTick() {
+        return tick;
+    }
+
+    public byte getKind() {
+        return kind;
+    }
+
+    public int getKeyCode() {
+        return keyCode;
+    }
+
+    public long getChecksum() {
+        return checksum;
+    }
+}
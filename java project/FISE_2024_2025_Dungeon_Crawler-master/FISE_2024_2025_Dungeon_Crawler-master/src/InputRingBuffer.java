@@ -0,0 +1,116 @@
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * InputRingBuffer passes timestamped input events from one producer thread (the AWT event thread) to one
+ * consumer thread (the simulation), without locks: the producer only moves the tail, the consumer only
+ * moves the head, and each side publishes its counter with release/acquire ordering.
+ * Events are stored in parallel arrays, so that offering and draining never create objects.
+ * When the buffer is full, new events are dropped (and counted) instead of blocking the producer.
+ */
+public class InputRingBuffer {
+    // Types of input events.
+    public static final int KEY_PRESSED = 1;
+    public static final int KEY_RELEASED = 2;
+
+    /**
+     * Receives the events drained from the buffer.
+     */
+    public interface Handler {
+        /**
+         * Handles one input event.
+         *
+         * @param type      KEY_PRESSED or KEY_RELEASED
+         * @param keyCode   the code of the key (e.g. KeyEvent.VK_UP)
+         * @param timeNanos the time of the event, from System.nanoTime()
+         */
+        void onInput(int type, int keyCode, long timeNanos);
+    }
+
+    // Events, by slot (sequence number modulo the capacity).
+    private final int[] types;
+    private final int[] keyCodes;
+    private final long[] times;
+    private final int mask;
+
+    // Sequence number of the next event to read (written by the consumer only).
+    private final AtomicLong head = new AtomicLong();
+
+    // Sequence number of the next event to write (written by the producer only).
+    private final AtomicLong tail = new AtomicLong();
+
+    // Number of events dropped because the buffer was full (written by the producer only).
+    private volatile long droppedCount = 0;
+
+    /**
+     * Creates an empty buffer.
+     *
+     * @param capacity the maximum number of waiting events, rounded up to a power of two
+     */
+    public InputRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        types = new int[size];
+        keyCodes = new int[size];
+        times = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Adds an event. Must only be called by the producer thread.
+     *
+     * @param type      KEY_PRESSED or KEY_RELEASED
+     * @param keyCode   the code of the key
+     * @param timeNanos the time of the event, from System.nanoTime()
+     * @return true if the event was added, false if the buffer was full and the event was dropped
+     */
+    public boolean offer(int type, int keyCode, long timeNanos) {
+        long sequence = tail.get(); // Only this thread writes the tail
+        if (sequence - head.getAcquire() > mask) {
+            droppedCount++;
+            return false;
+        }
+        int slot = (int) sequence & mask;
+        types[slot] = type;
+        keyCodes[slot] = keyCode;
+        times[slot] = timeNanos;
+        tail.setRelease(sequence + 1); // Publish the event after its fields
+        return true;
+    }
+
+    /**
+     * Gives all the waiting events to a handler, in the order they were offered.
+     * Must only be called by the consumer thread.
+     *
+     * @param handler the handler of the events
+     * @return the number of events drained
+     */
+    public int drain(Handler handler) {
+        long sequence = head.get(); // Only this thread writes the head
+        long end = tail.getAcquire();
+        int drained = 0;
+        while (sequence < end) {
+            int slot = (int) sequence & mask;
+            handler.onInput(types[slot], keyCodes[slot], times[slot]);
+            sequence++;
+            drained++;
+        }
+        head.setRelease(sequence); // Give the slots back to the producer
+        return drained;
+    }
+
+    /**
+     * Gets the number of events waiting to be drained.
+     *
+     * @return the number of waiting events
+     */
+    public int size() {
+        return (int) (tail.getAcquire() - head.getAcquire());
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+}
@@ -0,0 +1,129 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram counts durations (in nanoseconds) in buckets, to give percentiles such as p50 and p99
+ * without keeping every value. Each power of two is split into 8 buckets, so a percentile is at most
+ * 12.5% above the real value; recording a value is a few additions and never creates objects.
+ * Values can be recorded by one thread while another reads the percentiles or drains the counts.
+ */
+public class LatencyHistogram {
+    // Each power of two is split into 2^SUB_BUCKET_BITS buckets.
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    // Number of values in each bucket.
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    // Number of values and biggest value recorded.
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos the duration in nanoseconds (negative values count as 0)
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Gets the bucket of a value: values under SUB_BUCKETS have a bucket each, bigger values share a bucket
+     * with the values having the same highest bits.
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value); // Position of the highest bit, at least 3
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Gets the biggest value falling in a bucket.
+     */
+    private static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+        long lowest = (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Gets a percentile of the recorded values.
+     *
+     * @param percentile the percentile, between 0 and 100 (e.g. 99 for p99)
+     * @return the value under which this percentage of values fall, in nanoseconds (0 if nothing was recorded)
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Moves all the recorded values into another histogram, leaving this one empty. Used to show the
+     * percentiles of the last interval (e.g. the last second) while values keep being recorded.
+     *
+     * @param target the histogram receiving the values (usually emptied first with reset)
+     */
+    public void drainTo(LatencyHistogram target) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long moved = counts.getAndSet(i, 0);
+            if (moved != 0) {
+                count.addAndGet(-moved);
+                target.counts.addAndGet(i, moved);
+                target.count.addAndGet(moved);
+            }
+        }
+        long drainedMax = max.getAndSet(0);
+        long targetMax = target.max.get();
+        while (drainedMax > targetMax && !target.max.compareAndSet(targetMax, drainedMax)) {
+            targetMax = target.max.get();
+        }
+    }
+
+    /**
+     * Forgets all the recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        max.set(0);
+    }
+}
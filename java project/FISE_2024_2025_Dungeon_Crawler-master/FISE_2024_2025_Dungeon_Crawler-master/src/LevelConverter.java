@@ -0,0 +1,134 @@
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * LevelConverter converts a level from the text format (one character per tile) to the binary
+ * format read by BinaryLevel. It is an offline tool:
+ * <pre>
+ * java -cp bin LevelConverter data/level1.txt data/level1.lvl
+ * </pre>
+ * Unlike the Playground, which skips the characters it does not know, the converter stops with an
+ * error on an unknown character, so that a typo in a level is noticed.
+ */
+public class LevelConverter {
+    // Symbols of the text format, in palette order. Index 0 (symbol 0) is used where a line is too short.
+    private static final byte[] PALETTE_SYMBOLS = {0, ' ', 'T', 'R', 'J', '.'};
+
+    /**
+     * Converts a text level to a binary level.
+     *
+     * @param textPath   the path to the text level
+     * @param binaryPath the path of the binary level to write
+     * @throws IOException if a file cannot be read or written, or if the level contains an unknown character
+     */
+    public static void convert(String textPath, String binaryPath) throws IOException {
+        // First pass: size of the grid and check of the symbols
+        int columns = 0;
+        int rows = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(textPath, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                byte[] symbols = line.getBytes(StandardCharsets.UTF_8);
+                for (int column = 0; column < symbols.length; column++) {
+                    if (paletteIndexOf(symbols[column]) <= 0) {
+                        throw new IOException("Unknown symbol '" + (char) symbols[column] + "' at line "
+                                + (rows + 1) + ", column " + (column + 1) + " of " + textPath);
+                    }
+                }
+                columns = Math.max(columns, symbols.length);
+                rows++;
+            }
+        }
+
+        int bitsPerTile = PALETTE_SYMBOLS.length <= 16 ? 4 : 8;
+        // The palette is padded with empty entries to every value a tile can hold, so that BinaryLevel
+        // never has to check the tiles against the palette when it opens the level
+        int paletteSize = 1 << bitsPerTile;
+
+        // Size of the tiles: the size of the grass image, as the Playground uses for text levels
+        BufferedImage grass = AssetManager.getInstance().getTileImage(AssetManager.GRASS);
+        try (BufferedReader reader = new BufferedReader(new FileReader(textPath, StandardCharsets.UTF_8));
+             DataOutputStream output = new DataOutputStream(
+                     new BufferedOutputStream(new FileOutputStream(binaryPath), 1 << 16))) {
+            // Header
+            output.writeInt(BinaryLevel.MAGIC);
+            output.writeShort(BinaryLevel.VERSION);
+            output.writeByte(bitsPerTile);
+            output.writeByte(paletteSize & 0xFF);  // 256 is written as 0
+            output.writeInt(columns);
+            output.writeInt(rows);
+            output.writeShort(grass.getWidth());
+            output.writeShort(grass.getHeight());
+
+            // Palette: symbol and tile type of each entry, then the padding (no tile)
+            for (int i = 0; i < paletteSize; i++) {
+                byte symbol = i < PALETTE_SYMBOLS.length ? PALETTE_SYMBOLS[i] : 0;
+                output.writeByte(symbol);
+                output.writeByte(CollisionMap.tileTypeOf(symbol));
+            }
+
+            // Second pass: packed tiles, row by row
+            int pending = -1; // High half of a byte waiting for its low half (4 bits per tile)
+            String line;
+            while ((line = reader.readLine()) != null) {
+                byte[] symbols = line.getBytes(StandardCharsets.UTF_8);
+                for (int column = 0; column < columns; column++) {
+                    int index = column < symbols.length ? paletteIndexOf(symbols[column]) : 0;
+                    if (bitsPerTile == 8) {
+                        output.writeByte(index);
+                    } else if (pending < 0) {
+                        pending = index;
+                    } else {
+                        output.writeByte((pending << 4) | index);
+                        pending = -1;
+                    }
+                }
+            }
+            if (pending >= 0) {
+                output.writeByte(pending << 4); // Odd number of tiles: last low half is empty
+            }
+        }
+    }
+
+    /**
+     * Gets the palette index of a symbol.
+     *
+     * @param symbol the symbol of the text format
+     * @return the index in the palette, or -1 if the symbol is unknown
+     */
+    private static int paletteIndexOf(byte symbol) {
+        for (int i = 0; i < PALETTE_SYMBOLS.length; i++) {
+            if (PALETTE_SYMBOLS[i] == symbol) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Entry point of the converter. Exits with status 1 if the conversion fails (e.g. unknown symbol).
+     *
+     * @param args the text level to read and the binary level to write
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: java LevelConverter <level.txt> <level.lvl>");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        try {
+            convert(args[0], args[1]);
+        } catch (IOException e) {
+            System.err.println("Conversion failed: " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.println("Converted " + args[0] + " to " + args[1] + " in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+}
@@ -0,0 +1,169 @@
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * LoadTestClient connects many simulated players to a GameServer, to measure what the server can hold.
+ * Every bot reads and acknowledges all its snapshots (as a real client does, so the server sends real deltas)
+ * and now and then presses or releases an arrow key. All bots share one thread and one Selector.
+ * At the end it prints the bandwidth used per client; with --embedded the server runs in the same process
+ * and its CPU time per tick, and the estimated number of clients one core can serve, are printed too.
+ * <pre>
+ * java -cp bin LoadTestClient [--host localhost] [--port 7777] [--clients 100] [--seconds 10]
+ *                             [--embedded] [--level ./data/level1.txt] [--tick-rate 20]
+ * </pre>
+ */
+public class LoadTestClient {
+    private static final int DEFAULT_CLIENTS = 100;
+    private static final int DEFAULT_SECONDS = 10;
+    private static final int DEFAULT_TICK_RATE = 20;
+    private static final String DEFAULT_LEVEL_PATH = "./data/level1.txt";
+
+    // Chance, on each snapshot, that a bot changes the key it holds.
+    private static final double KEY_CHANGE_PROBABILITY = 0.05;
+
+    private static final int[] ARROW_KEYS = {KeyEvent.VK_UP, KeyEvent.VK_DOWN, KeyEvent.VK_LEFT, KeyEvent.VK_RIGHT};
+
+    /**
+     * A simulated player: its connection and the key it holds (0: none).
+     */
+    private static class Bot {
+        private final ClientConnection connection;
+        private int heldKey = 0;
+
+        private Bot(ClientConnection connection) {
+            this.connection = connection;
+        }
+    }
+
+    /**
+     * Runs the load test.
+     *
+     * @param args the options (see the class comment)
+     * @throws Exception if the server cannot be reached
+     */
+    public static void main(String[] args) throws Exception {
+        String host = "localhost";
+        int port = NetProtocol.DEFAULT_PORT;
+        int clients = DEFAULT_CLIENTS;
+        int seconds = DEFAULT_SECONDS;
+        boolean embedded = false;
+        String levelPath = DEFAULT_LEVEL_PATH;
+        int tickRate = DEFAULT_TICK_RATE;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--host" -> host = args[++i];
+                case "--port" -> port = Integer.parseInt(args[++i]);
+                case "--clients" -> clients = Integer.parseInt(args[++i]);
+                case "--seconds" -> seconds = Integer.parseInt(args[++i]);
+                case "--embedded" -> embedded = true;
+                case "--level" -> levelPath = args[++i];
+                case "--tick-rate" -> tickRate = Integer.parseInt(args[++i]);
+                default -> {
+                    System.err.println("Unknown option: " + args[i]);
+                    System.exit(2);
+                }
+            }
+        }
+
+        // Server in the same process, on a free port, when asked
+        GameServer server = null;
+        if (embedded) {
+            server = new GameServer(0, levelPath, tickRate, clients);
+            port = server.getPort();
+            Thread serverThread = new Thread(server, "GameServer");
+            serverThread.setDaemon(true);
+            serverThread.start();
+        }
+
+        Random random = new Random(42);
+        ArrayList<Bot> bots = new ArrayList<>(clients);
+        Selector selector = Selector.open();
+        try {
+            for (int i = 0; i < clients; i++) {
+                Bot bot = new Bot(new ClientConnection(host, port));
+                bot.connection.getChannel().register(selector, SelectionKey.OP_READ, bot);
+                bots.add(bot);
+            }
+            System.out.println(String.format(Locale.ROOT, "%d clients connected to %s:%d, running for %d s",
+                    clients, host, port, seconds));
+
+            long start = System.nanoTime();
+            long end = start + seconds * 1_000_000_000L;
+            long errors = 0;
+            while (System.nanoTime() < end) {
+                selector.select(100);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    Bot bot = (Bot) key.attachment();
+                    try {
+                        int snapshots = bot.connection.poll();
+                        if (snapshots > 0 && random.nextDouble() < KEY_CHANGE_PROBABILITY) {
+                            pressRandomKey(bot, random);
+                        }
+                    } catch (IOException e) {
+                        errors++;
+                        key.cancel();
+                        bot.connection.close();
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+            report(bots, elapsedSeconds, errors, server);
+        } finally {
+            for (Bot bot : bots) {
+                bot.connection.close();
+            }
+            selector.close();
+            if (server != null) {
+                server.stop();
+            }
+        }
+    }
+
+    /**
+     * Releases the key held by a bot and presses another one (or none).
+     */
+    private static void pressRandomKey(Bot bot, Random random) throws IOException {
+        if (bot.heldKey != 0) {
+            bot.connection.sendInput(InputRingBuffer.KEY_RELEASED, bot.heldKey);
+        }
+        int choice = random.nextInt(ARROW_KEYS.length + 1);
+        bot.heldKey = (choice == ARROW_KEYS.length) ? 0 : ARROW_KEYS[choice];
+        if (bot.heldKey != 0) {
+            bot.connection.sendInput(InputRingBuffer.KEY_PRESSED, bot.heldKey);
+        }
+    }
+
+    /**
+     * Prints the bandwidth received by the bots, and the cost of the server when it runs here.
+     */
+    private static void report(ArrayList<Bot> bots, double elapsedSeconds, long errors, GameServer server) {
+        long bytes = 0;
+        long snapshots = 0;
+        long fullSnapshots = 0;
+        for (Bot bot : bots) {
+            bytes += bot.connection.getBytesReceived();
+            snapshots += bot.connection.getSnapshotCount();
+            fullSnapshots += bot.connection.getFullSnapshotCount();
+        }
+        int clients = Math.max(1, bots.size());
+        System.out.println(String.format(Locale.ROOT,
+                "Received: %.0f B/s per client, %.1f B per snapshot, %.1f snapshots/s per client",
+                bytes / elapsedSeconds / clients, snapshots == 0 ? 0.0 : (double) bytes / snapshots,
+                snapshots / elapsedSeconds / clients));
+        System.out.println(String.format(Locale.ROOT, "Snapshots: %d deltas, %d full, %d disconnected clients",
+                snapshots - fullSnapshots, fullSnapshots, errors));
+        if (server != null) {
+            System.out.println(String.format(Locale.ROOT,
+                    "Server: %d ticks, %.3f ms CPU per tick, %d snapshots dropped, "
+                            + "~%.0f clients per core before a tick exceeds its budget (quadratic fit)",
+                    server.getTickCount(), server.getCpuNanosPerTick() / 1e6, server.getDroppedSnapshotCount(),
+                    server.getClientsPerCore()));
+        }
+    }
+}
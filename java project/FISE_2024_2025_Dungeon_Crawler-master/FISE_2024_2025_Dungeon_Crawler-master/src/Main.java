@@ -1,50 +1,89 @@
-import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.File;
+import java.util.Arrays;
 
 /**
  * The Main class initializes the game window, sets up all game components (RenderEngine,
  * GameEngine, and PhysicEngine), loads the level, and starts the game loop also the main displays message to test the
  * setup.
- * This design uses 3 engines, each runs by a specific timer (executed every 50 ms).
+ * This design uses 3 engines. The game and physics engines are updated by a game loop thread at a fixed
+ * tick rate, and the render engine is updated by the same loop at the display rate.
  */
 public class Main {
+    // Default number of simulation ticks per second (the game was designed for one tick every 50 ms).
+    private static final int DEFAULT_TICK_RATE = 20;
+
+    // Frame rate used when the refresh rate of the screen is unknown.
+    private static final int DEFAULT_FRAME_RATE = 60;
+
+    // Level files bigger than this are streamed in chunks instead of being loaded at once.
+    private static final long STREAMING_THRESHOLD_BYTES = 1 << 20;
+
+    // Default size of the streamed chunks (in tiles on each side) and memory budget (in MB).
+    private static final int DEFAULT_CHUNK_SIZE = 32;
+    private static final int DEFAULT_CHUNK_BUDGET_MB = 64;
+
+    // Level loaded by default; another one (text or binary) can be chosen with -Dgame.level=...
+    private static final String DEFAULT_LEVEL_PATH = "./data/level1.txt";
+
     private static JFrame frame; // Main game frame
+    private static Main currentGame; // Running game, stopped by the end screens and restarted by Retry
 
     /**
      * Displays the Game Over screen.
      */
     public static void gameOver() {
+        showEndScreen("Game Over");
+    }
+
+    /**
+     * Displays the Level Complete screen, when the hero has reached the exit.
+     */
+    public static void levelComplete() {
+        showEndScreen("Level Complete");
+    }
+
+    /**
+     * Stops the game and replaces it by a message with a button to play again.
+     *
+     * @param message the message shown, e.g. "Game Over"
+     */
+    private static void showEndScreen(String message) {
+        // The game loop runs on its own thread: Swing components must be changed on the EDT
+        if (!SwingUtilities.isEventDispatchThread()) {
+            SwingUtilities.invokeLater(() -> showEndScreen(message));
+            return;
+        }
+        if (currentGame != null) {
+            currentGame.stop(); // Freeze the game behind the end screen
+        }
         if (frame == null) {
             System.err.println("Game frame is not initialized.");
             return;
         }
 
-        // Clear the game content and show Game Over screen
+        // Clear the game content and show the end screen
         frame.getContentPane().removeAll();
 
-        // Create Game Over message
-        JPanel gameOverPanel = new JPanel(new BorderLayout());
-        JLabel gameOverLabel = new JLabel("Game Over", JLabel.CENTER);
-        gameOverLabel.setFont(new Font("Serif", Font.BOLD, 48));
-        gameOverPanel.add(gameOverLabel, BorderLayout.CENTER);
+        // Create the message
+        JPanel endPanel = new JPanel(new BorderLayout());
+        JLabel endLabel = new JLabel(message, JLabel.CENTER);
+        endLabel.setFont(new Font("Serif", Font.BOLD, 48));
+        endPanel.add(endLabel, BorderLayout.CENTER);
 
         // Add a retry button to restart the game
         JButton retryButton = new JButton("Retry");
-        gameOverPanel.add(retryButton, BorderLayout.SOUTH);
-
-        // Action to restart the game when retry button is clicked
-        retryButton.addActionListener(e -> {
-            frame.dispose(); // Close and remove the old game window
-            try {
-                new Main(); // Start a new game
-            } catch (Exception ex) {
-                ex.printStackTrace();
-            }
-        });
+        endPanel.add(retryButton, BorderLayout.SOUTH);
 
-        frame.getContentPane().add(gameOverPanel); // Show Game Over screen
+        // Action to restart the game when retry button is clicked: same window, same engines
+        retryButton.addActionListener(e -> currentGame.restart());
+
+        frame.getContentPane().add(endPanel); // Show the end screen
         frame.revalidate();
     }
 
@@ -61,6 +100,15 @@ public class Main {
     private GameEngine gameEngine;
     private PhysicEngine physicEngine;
 
+    // Thread updating the engines.
+    private GameLoop gameLoop;
+
+    // Log of the input of the game (null when not recording).
+    private InputRecorder recorder;
+
+    // State of the moving sprites when the level starts, restored by Retry.
+    private WorldSnapshot initialSnapshot;
+
     /**
      * Constructor for the Main class. It initializes the game window, sets up all components,
      * loads the game level, and starts the game loop.
@@ -76,42 +124,160 @@ public class Main {
         // Assign displayZoneFrame to the static frame variable
         frame = displayZoneFrame;
 
-        // Initialize the hero sprite with its starting position and sprite sheet.
-        DynamicSprite hero = new DynamicSprite(200, 300,
-                ImageIO.read(new File("./img/heroTileSheetLowRes.png")), 48, 50);
+        // Initialize the hero sprite with its starting position and animation (sliced once per process).
+        DynamicSprite hero = new DynamicSprite(Playground.HERO_START_X, Playground.HERO_START_Y,
+                AssetManager.getInstance().getAnimation("./img/heroTileSheetLowRes.png", 48, 50, 250),
+                Playground.HERO_WIDTH, Playground.HERO_HEIGHT);
+        // Show the Game Over screen when the hero has no life left, and the Level Complete screen at the exit.
+        hero.setGameListener(new GameListener() {
+            @Override
+            public void onGameOver(DynamicSprite sprite) {
+                gameOver();
+            }
+
+            @Override
+            public void onLevelComplete(DynamicSprite sprite) {
+                levelComplete();
+            }
+        });
 
         // Initialize the render engine and pass it the display frame to render graphics.
         renderEngine = new RenderEngine(displayZoneFrame);
+        renderEngine.setStaticLayerThreads(Integer.getInteger("game.rasterThreads", 0));  // Threads drawing the tile chunks.
 
         // Initialize the physics and game engines.
         physicEngine = new PhysicEngine();
-        gameEngine = new GameEngine(hero);
+        physicEngine.setParallelism(Integer.getInteger("game.physicsThreads", 1));  // Threads moving the sprites.
+        gameEngine = new GameEngine(hero, Integer.getInteger("game.aiThreads", 0));  // Threads of the long AI tasks.
+        gameEngine.getAIScheduler().setCamera(renderEngine.getCamera());  // Characters on screen think first.
+
+        // Load the level from a text file and prepare the game environment.
+        // Big text levels (or -Dgame.streaming=true) are streamed in chunks around the hero;
+        // binary levels are mapped in memory by the Playground and never need streaming.
+        String levelPath = System.getProperty("game.level", DEFAULT_LEVEL_PATH);
+        Engine[] simulationEngines;
+        boolean streaming = !BinaryLevel.isBinaryLevel(levelPath) && (Boolean.getBoolean("game.streaming")
+                || new File(levelPath).length() > STREAMING_THRESHOLD_BYTES);
+        if (streaming) {
+            int chunkSize = Integer.getInteger("game.chunkSize", DEFAULT_CHUNK_SIZE);
+            long budget = Integer.getInteger("game.chunkBudgetMB", DEFAULT_CHUNK_BUDGET_MB) * 1024L * 1024L;
+            ChunkedWorld world = new ChunkedWorld(levelPath, chunkSize, budget);
+            world.setFocus(hero, 1);  // Keep the chunks around the hero loaded.
+            renderEngine.setStaticLayer(world, world.getWidth(), world.getHeight());  // Sprites come from the chunks.
+            physicEngine.setEnvironment(world);  // Collision tiles come from the chunks.
+            simulationEngines = new Engine[]{gameEngine, world, physicEngine};
+        } else {
+            Playground level = new Playground(levelPath);
+            renderEngine.setStaticLayer(level.getSpriteSource(), level.getWidth(), level.getHeight());  // Level sprites never move.
+            physicEngine.setEnvironment(level.getCollisionMap());  // Set the grid of collision tiles.
+            simulationEngines = new Engine[]{gameEngine, physicEngine};
+        }
 
-        // Set up timers for each engine to update at a regular interval (50 milliseconds).
-        Timer renderTimer = new Timer(50, (time) -> renderEngine.update());
-        Timer gameTimer = new Timer(50, (time) -> gameEngine.update());
-        Timer physicTimer = new Timer(50, (time) -> physicEngine.update());
+        // Record the input of the game with -Dgame.record=run.rec, to replay it with the HeadlessRunner.
+        // It is updated last, at the end of each tick. Retry starts a new log in a new file (run-2.rec...).
+        int tickRate = Integer.getInteger("game.tickRate", DEFAULT_TICK_RATE);
+        String recordPath = System.getProperty("game.record");
+        if (recordPath != null) {
+            recorder = new InputRecorder(recordPath, levelPath, tickRate, physicEngine.getEntityStore());
+            gameEngine.setInputRecorder(recorder);
+            simulationEngines = Arrays.copyOf(simulationEngines, simulationEngines.length + 1);
+            simulationEngines[simulationEngines.length - 1] = recorder;
+        }
 
-        // Start the timers to begin the game loop.
-        renderTimer.start();
-        gameTimer.start();
-        physicTimer.start();
+        // Add the hero to the render and physics engines.
+        renderEngine.addToRenderList(hero);  // Add the hero to the render list.
+        renderEngine.setCameraTarget(hero);  // The camera follows the hero on big levels.
+        renderEngine.setParticleSystem(physicEngine.getParticleSystem());  // Sparks of the traps.
+        physicEngine.addToMovingSpriteList(hero);  // Allow the hero to move with physics.
+
+        // Set up the game loop: game logic then physics at a fixed tick rate, rendering at the display rate.
+        // Both rates can be changed with -Dgame.tickRate=... and -Dgame.frameRate=...
+        int frameRate = Integer.getInteger("game.frameRate", getDisplayRefreshRate());
+        gameLoop = new GameLoop(renderEngine, tickRate, frameRate, simulationEngines);
+        renderEngine.setWorldLock(gameLoop.getWorldLock());
+        physicEngine.setClock(gameLoop.getSimulationClock());  // Time comes from the ticks, so replays match.
+        renderEngine.setDebugOverlay(new DebugOverlay(gameLoop, physicEngine));  // Performance numbers, shown with F3.
+        currentGame = this;
 
         // Add the render engine to the JFrame content to handle visual rendering.
         displayZoneFrame.getContentPane().add(renderEngine);
         displayZoneFrame.setVisible(true);  // Make the game window visible.
 
-        // Load the level from a text file and prepare the game environment.
-        Playground level = new Playground("./data/level1.txt");
-
-        // Add sprites and solid objects to the render and physics engines.
-        renderEngine.addToRenderList(level.getSpriteList());  // Add level sprites.
-        renderEngine.addToRenderList(hero);  // Add the hero to the render list.
-        physicEngine.addToMovingSpriteList(hero);  // Allow the hero to move with physics.
-        physicEngine.setEnvironment(level.getSolidSpriteList());  // Set collision objects.
-
         // Enable the GameEngine to listen to key events for player input.
         displayZoneFrame.addKeyListener(gameEngine);
+        // F3 shows or hides the performance overlay.
+        displayZoneFrame.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                if (e.getKeyCode() == KeyEvent.VK_F3) {
+                    renderEngine.toggleDebugOverlay();
+                }
+            }
+        });
+
+        // Finish the input log when the window is closed during the game.
+        displayZoneFrame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                stop();
+            }
+        });
+
+        // Keep the starting state, then start the game loop once the level is loaded.
+        initialSnapshot = WorldSnapshot.capture(physicEngine.getEntityStore());
+        gameLoop.start();
+    }
+
+    /**
+     * Stops the game loop and finishes the input log, between two ticks.
+     */
+    private void stop() {
+        gameLoop.stop();
+        if (recorder != null) {
+            synchronized (gameLoop.getWorldLock()) {
+                recorder.close();
+            }
+        }
+    }
+
+    /**
+     * Starts the game again in the same window and engines: the moving sprites are put back in the state
+     * captured when the level was loaded, so nothing is loaded again. Must be called on the EDT.
+     */
+    private void restart() {
+        gameLoop.stop();
+        gameLoop.resetSimulationTime();  // Waits for the loop thread to end
+        synchronized (gameLoop.getWorldLock()) {
+            initialSnapshot.restore(physicEngine.getEntityStore());
+            gameEngine.reset();
+            physicEngine.getParticleSystem().clear();
+            if (recorder != null) {
+                recorder.restart();  // A new log for the new game, the one of the game that ended is kept
+                System.out.println("Recording the new game to " + recorder.getLogPath());
+            }
+        }
+
+        // Show the game instead of the end screen
+        displayZoneFrame.getContentPane().removeAll();
+        displayZoneFrame.getContentPane().add(renderEngine);
+        displayZoneFrame.revalidate();
+        renderEngine.requestFullRepaint();
+        displayZoneFrame.requestFocus();  // The key listeners are on the window
+        gameLoop.start();
+    }
+
+    /**
+     * Gets the refresh rate of the screen, used as the default frame rate.
+     *
+     * @return the refresh rate in Hz, or DEFAULT_FRAME_RATE if it is unknown
+     */
+    private static int getDisplayRefreshRate() {
+        if (GraphicsEnvironment.isHeadless()) {
+            return DEFAULT_FRAME_RATE;
+        }
+        int refreshRate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+                .getDisplayMode().getRefreshRate();
+        return refreshRate == DisplayMode.REFRESH_RATE_UNKNOWN ? DEFAULT_FRAME_RATE : refreshRate;
     }
 
     /**
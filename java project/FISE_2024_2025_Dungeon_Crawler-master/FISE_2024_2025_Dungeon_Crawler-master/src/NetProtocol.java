@@ -0,0 +1,128 @@
+import java.nio.ByteBuffer;
+
+/**
+ * NetProtocol holds the messages exchanged by the GameServer and its clients, and the helpers to write them.
+ * Every message is framed as an int length (of what follows), then a byte type, then its content.
+ * Numbers are mostly written in 7-bit groups (varints, as in the input logs), so that small values take a
+ * single byte.
+ * <pre>
+ * Server to client
+ *   WELCOME   varint player id, varint tick rate, long CRC32 of the level file, short length and UTF-8
+ *             bytes of the path of the level
+ *   SNAPSHOT  state of the players at a tick, as a delta from a state the client acknowledged
+ *             (see SnapshotState.writeDelta)
+ * Client to server
+ *   INPUT     byte InputRingBuffer.KEY_PRESSED or KEY_RELEASED, varint key code
+ *   ACK       varlong tick of the last snapshot received
+ * </pre>
+ */
+public final class NetProtocol {
+    // Port used when none is given.
+    public static final int DEFAULT_PORT = 7777;
+
+    // Types of messages.
+    public static final byte WELCOME = 1;
+    public static final byte SNAPSHOT = 2;
+    public static final byte INPUT = 3;
+    public static final byte ACK = 4;
+
+    // Bytes of the length in front of each message.
+    public static final int LENGTH_BYTES = Integer.BYTES;
+
+    // Longest message accepted; a longer one means the peer is broken.
+    public static final int MAX_MESSAGE_BYTES = 1 << 20;
+
+    private NetProtocol() {
+    }
+
+    /**
+     * Starts a message: leaves room for its length and writes its type.
+     *
+     * @param buffer the buffer receiving the message
+     * @param type   the type of the message
+     * @return the position of the length, to give to endMessage
+     */
+    public static int beginMessage(ByteBuffer buffer, byte type) {
+        int start = buffer.position();
+        buffer.putInt(0);
+        buffer.put(type);
+        return start;
+    }
+
+    /**
+     * Ends a message started by beginMessage, writing its length.
+     *
+     * @param buffer the buffer holding the message
+     * @param start  the position returned by beginMessage
+     */
+    public static void endMessage(ByteBuffer buffer, int start) {
+        buffer.putInt(start, buffer.position() - start - LENGTH_BYTES);
+    }
+
+    /**
+     * Gets the length of the first complete message of a buffer, between its position and its limit.
+     * A message that could never fit in the buffer is not valid: waiting for the rest of it would wait forever,
+     * the buffer being full.
+     *
+     * @param buffer the received bytes, ready to be read
+     * @return the length of the message after its length field, or -1 if it is not complete yet
+     * @throws IllegalStateException if the length is not valid
+     */
+    public static int completeMessageLength(ByteBuffer buffer) {
+        if (buffer.remaining() < LENGTH_BYTES) {
+            return -1;
+        }
+        int length = buffer.getInt(buffer.position());
+        if (length <= 0 || length > MAX_MESSAGE_BYTES || length > buffer.capacity() - LENGTH_BYTES) {
+            throw new IllegalStateException("Bad message length " + length);
+        }
+        return buffer.remaining() >= LENGTH_BYTES + length ? length : -1;
+    }
+
+    /**
+     * Writes a positive number in 7-bit groups, the lowest first, the high bit telling that a group follows.
+     */
+    public static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads a number written by putVarLong.
+     */
+    public static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = buffer.get() & 0xFF;
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("Bad number in message");
+    }
+
+    public static void putVarInt(ByteBuffer buffer, int value) {
+        putVarLong(buffer, value & 0xFFFFFFFFL);
+    }
+
+    public static int getVarInt(ByteBuffer buffer) {
+        return (int) getVarLong(buffer);
+    }
+
+    /**
+     * Writes a number that may be negative (e.g. a difference of positions): small values of both signs
+     * take one byte ("zigzag": 0, -1, 1, -2, 2... become 0, 1, 2, 3, 4...).
+     */
+    public static void putSignedVarInt(ByteBuffer buffer, int value) {
+        putVarInt(buffer, (value << 1) ^ (value >> 31));
+    }
+
+    public static int getSignedVarInt(ByteBuffer buffer) {
+        int zigzag = getVarInt(buffer);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+}
@@ -0,0 +1,262 @@
+import java.awt.*;
+
+/**
+ * ParticleSystem moves and draws many short-lived effects (sparks of a trap hit, dust, projectiles) without
+ * creating any object while the game runs. Particles are not sprites: their state is kept in arrays of
+ * primitives allocated once, with a fixed capacity, and the slots of dead particles are kept in a free list
+ * to be reused by the next spawns. Tens of thousands of live particles cost a few arrays and no garbage.
+ * <p>
+ * The PhysicEngine updates the particles once per tick, and the RenderEngine draws them all in one batch
+ * (one color change per kind of particle, then one filled square per particle).
+ */
+public class ParticleSystem {
+    // Kinds of particles, used as indexes in the tables below.
+    public static final byte SPARK = 0;      // Trap hit: fast and short
+    public static final byte DUST = 1;       // Dust: slow, slowed down by the air
+    public static final byte PROJECTILE = 2; // Projectile: straight line, stopped by solid tiles
+
+    // Look and behavior of each kind: color, size of the square in pixels, speed kept after each tick,
+    // and whether the particle dies when it enters a solid tile.
+    private static final Color[] COLORS = {new Color(255, 200, 60), new Color(170, 150, 120),
+            new Color(240, 240, 255)};
+    private static final int[] SIZES = {3, 4, 6};
+    private static final float[] DRAG = {0.85f, 0.9f, 1f};
+    private static final boolean[] STOPPED_BY_SOLID = {false, false, true};
+
+    // State of the particles, one array per component, indexed by slot. A slot is free when its life is 0.
+    private final float[] x;
+    private final float[] y;
+    private final float[] previousX;  // Position before the last tick, for interpolated drawing
+    private final float[] previousY;
+    private final float[] velocityX;  // In pixels per tick
+    private final float[] velocityY;
+    private final int[] life;         // Ticks left to live
+    private final byte[] kind;
+
+    // Free slots below the high-water mark, used as a stack.
+    private final int[] freeSlots;
+    private int freeCount = 0;
+
+    // Slots 0 to highWater - 1 have been used; the update only goes through them.
+    private int highWater = 0;
+
+    // Number of live particles.
+    private int liveCount = 0;
+
+    // Area covered by the live particles during the last tick (previous and current positions),
+    // in world coordinates. Empty (minX > maxX) when there is no particle.
+    private float minX = 1;
+    private float minY = 1;
+    private float maxX = 0;
+    private float maxY = 0;
+
+    // State of the random generator of the bursts (xorshift), so that a replay gives the same particles.
+    private long randomState = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Creates an empty system.
+     *
+     * @param capacity the maximum number of live particles; spawns are ignored when it is reached
+     */
+    public ParticleSystem(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        x = new float[capacity];
+        y = new float[capacity];
+        previousX = new float[capacity];
+        previousY = new float[capacity];
+        velocityX = new float[capacity];
+        velocityY = new float[capacity];
+        life = new int[capacity];
+        kind = new byte[capacity];
+        freeSlots = new int[capacity];
+    }
+
+    /**
+     * Adds a particle.
+     *
+     * @param kind      SPARK, DUST or PROJECTILE
+     * @param x         the x-coordinate of the particle
+     * @param y         the y-coordinate of the particle
+     * @param velocityX the move along x at each tick, in pixels
+     * @param velocityY the move along y at each tick, in pixels
+     * @param lifeTicks the number of ticks the particle lives
+     * @return the slot of the particle, or -1 if the system is full
+     */
+    public int spawn(byte kind, double x, double y, double velocityX, double velocityY, int lifeTicks) {
+        if (lifeTicks <= 0) {
+            return -1;
+        }
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else if (highWater < life.length) {
+            slot = highWater++;
+        } else {
+            return -1; // Full: the effect is only a little less dense
+        }
+        this.x[slot] = (float) x;
+        this.y[slot] = (float) y;
+        previousX[slot] = (float) x;
+        previousY[slot] = (float) y;
+        this.velocityX[slot] = (float) velocityX;
+        this.velocityY[slot] = (float) velocityY;
+        life[slot] = lifeTicks;
+        this.kind[slot] = kind;
+        liveCount++;
+        includeInBounds(slot);
+        return slot;
+    }
+
+    /**
+     * Adds particles going in every direction from a point, e.g. the sparks of a trap hit.
+     *
+     * @param kind      the kind of the particles
+     * @param x         the x-coordinate of the center of the burst
+     * @param y         the y-coordinate of the center of the burst
+     * @param count     the number of particles
+     * @param maxSpeed  the highest speed of a particle, in pixels per tick
+     * @param lifeTicks the number of ticks the particles live
+     */
+    public void burst(byte kind, double x, double y, int count, double maxSpeed, int lifeTicks) {
+        for (int i = 0; i < count; i++) {
+            double angle = nextRandom() * 2 * Math.PI;
+            double speed = (0.3 + 0.7 * nextRandom()) * maxSpeed;
+            spawn(kind, x, y, Math.cos(angle) * speed, Math.sin(angle) * speed, lifeTicks);
+        }
+    }
+
+    /**
+     * Moves every live particle by one tick, and frees the particles that die.
+     *
+     * @param environment the tile grid stopping the projectiles
+     */
+    public void update(TileGrid environment) {
+        minX = Float.MAX_VALUE;
+        minY = Float.MAX_VALUE;
+        maxX = -Float.MAX_VALUE;
+        maxY = -Float.MAX_VALUE;
+        int tileWidth = environment.getTileWidth();
+        int tileHeight = environment.getTileHeight();
+        for (int i = 0; i < highWater; i++) {
+            if (life[i] == 0) {
+                continue;
+            }
+            int k = kind[i];
+            previousX[i] = x[i];
+            previousY[i] = y[i];
+            x[i] += velocityX[i];
+            y[i] += velocityY[i];
+            velocityX[i] *= DRAG[k];
+            velocityY[i] *= DRAG[k];
+            if (--life[i] == 0 || (STOPPED_BY_SOLID[k] && environment.getTile(
+                    (int) Math.floor(x[i] / tileWidth), (int) Math.floor(y[i] / tileHeight)) == CollisionMap.SOLID)) {
+                free(i);
+                continue;
+            }
+            includeInBounds(i);
+        }
+        if (liveCount == 0) {
+            // Everything is free again: start from the first slot, so the next updates stay short
+            highWater = 0;
+            freeCount = 0;
+        }
+    }
+
+    /**
+     * Makes a slot free.
+     */
+    private void free(int slot) {
+        life[slot] = 0;
+        freeSlots[freeCount++] = slot;
+        liveCount--;
+    }
+
+    /**
+     * Grows the area of the particles to cover the previous and current position of a particle.
+     */
+    private void includeInBounds(int slot) {
+        int size = SIZES[kind[slot]];
+        minX = Math.min(minX, Math.min(x[slot], previousX[slot]));
+        minY = Math.min(minY, Math.min(y[slot], previousY[slot]));
+        maxX = Math.max(maxX, Math.max(x[slot], previousX[slot]) + size);
+        maxY = Math.max(maxY, Math.max(y[slot], previousY[slot]) + size);
+    }
+
+    /**
+     * Removes every particle, e.g. when the game is restarted.
+     */
+    public void clear() {
+        for (int i = 0; i < highWater; i++) {
+            life[i] = 0;
+        }
+        highWater = 0;
+        freeCount = 0;
+        liveCount = 0;
+        minX = 1;
+        maxX = 0;
+    }
+
+    /**
+     * Draws the live particles seen by a camera, one kind after the other.
+     * The graphics must be in world coordinates (translated by the camera).
+     *
+     * @param g             the graphics to draw on
+     * @param interpolation the fraction of tick elapsed, between 0 (previous tick) and 1 (last tick)
+     * @param camera        the camera, to skip the particles outside of the view
+     */
+    public void draw(Graphics g, double interpolation, Camera camera) {
+        if (liveCount == 0) {
+            return;
+        }
+        float t = (float) interpolation;
+        for (int k = 0; k < COLORS.length; k++) {
+            g.setColor(COLORS[k]);
+            int size = SIZES[k];
+            for (int i = 0; i < highWater; i++) {
+                if (life[i] == 0 || kind[i] != k) {
+                    continue;
+                }
+                float drawX = previousX[i] + (x[i] - previousX[i]) * t;
+                float drawY = previousY[i] + (y[i] - previousY[i]) * t;
+                if (camera.isVisible(drawX, drawY, size, size)) {
+                    g.fillRect((int) drawX, (int) drawY, size, size);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets a rectangle to the area covered by the live particles during the last tick, in world coordinates.
+     *
+     * @param bounds the rectangle receiving the area (empty when there is no particle)
+     */
+    public void getBounds(Rectangle bounds) {
+        if (liveCount == 0 || minX > maxX) {
+            bounds.setBounds(0, 0, 0, 0);
+            return;
+        }
+        int left = (int) Math.floor(minX);
+        int top = (int) Math.floor(minY);
+        bounds.setBounds(left, top, (int) Math.ceil(maxX) - left + 1, (int) Math.ceil(maxY) - top + 1);
+    }
+
+    /**
+     * Gives a number between 0 (included) and 1 (excluded).
+     */
+    private double nextRandom() {
+        randomState ^= randomState << 13;
+        randomState ^= randomState >>> 7;
+        randomState ^= randomState << 17;
+        return (randomState >>> 11) * 0x1.0p-53;
+    }
+
+    public int getLiveCount() {
+        return liveCount;
+    }
+
+    public int getCapacity() {
+        return life.length;
+    }
+}
@@ -1,56 +1,180 @@
-import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
 
 /**
  * PhysicEngine is responsible for handling the movement and collision checks
  * of dynamic sprites within an environment of static and solid sprites.
  * its for modelling the physics of the game .(constant speed and collisions).
+ * With many moving sprites, the moves can be computed by several threads (see setParallelism): each thread
+ * proposes the moves of a range of sprites against the read-only environment, then the moves are committed
+ * in order by the simulation thread. Both modes give exactly the same result.
+ * Traps and the exit are trigger tiles: a TriggerIndex tells the engine when a sprite steps onto one, so a
+ * tick never looks for traps under sprites that stay in the same cells.
+ * Effects such as the sparks of a trap hit are particles of a ParticleSystem, moved after the sprites.
  */
 public class PhysicEngine implements Engine {
-    // List to store all dynamic sprites that can move within the environment.
-    private ArrayList<DynamicSprite> movingSpriteList;
-    // List of all static sprites that represent obstacles or interactable objects in the environment.
-    private ArrayList<Sprite> environment;
+    // State of all dynamic sprites that can move within the environment, in parallel arrays.
+    private final EntityStore entityStore;
+    // Grid of the tile types (obstacles, traps) of the environment.
+    private TileGrid environment;
+
+    // Trigger tiles (traps, exit) entered and left by the moving sprites.
+    private final TriggerIndex triggerIndex;
+
+    // Called with the index of each sprite whose invincibility ends (kept in a field: no object per tick).
+    private final IntConsumer invincibilityExpired;
+
+    // Short-lived effects (sparks, dust, projectiles), moved after the sprites.
+    private final ParticleSystem particles = new ParticleSystem(PARTICLE_CAPACITY);
+
+    // Maximum number of live particles.
+    private static final int PARTICLE_CAPACITY = 65536;
+
+    // Clock read once at the start of each tick, giving the time of the timed states.
+    private GameClock clock = new SystemClock();
+
+    // Below this number of moving sprites, the parallel mode is not worth starting tasks for.
+    private static final int PARALLEL_THRESHOLD = 2048;
+
+    // Number of sprites handled by one task of the parallel mode.
+    private static final int BATCH_SIZE = 1024;
+
+    // Threads computing the moves in parallel mode (null in sequential mode).
+    private ForkJoinPool pool;
+
+    // Moves proposed by the parallel phase, by index in the entity store.
+    private double[] proposedX = new double[0];
+    private double[] proposedY = new double[0];
+
+    // Work done by the last update: number of moving sprites, and number of hitboxes checked against the grid.
+    private volatile int lastEntityCount = 0;
+    private volatile int lastCollisionCheckCount = 0;
 
     /**
-     * Constructor initializes empty lists for dynamic sprites and environment sprites.
+     * Constructor initializes an empty store for dynamic sprites and an empty environment.
      */
     public PhysicEngine() {
-        movingSpriteList = new ArrayList<>();
-        environment = new ArrayList<>();
+        entityStore = new EntityStore(16);
+        environment = new CollisionMap(0, 0, 1, 1);
+        triggerIndex = new TriggerIndex(environment);
+        triggerIndex.setListener(CollisionMap.TRAP, this::onTrapEntered);
+        triggerIndex.setListener(CollisionMap.EXIT, (sprite, type, column, row) -> sprite.reachExit());
+        invincibilityExpired = index -> triggerIndex.enterAgain(entityStore, index, CollisionMap.TRAP);
     }
 
     /**
-     * Adds a sprite to the environment list if it's not already present.
-     * This list represents obstacles or static objects within the game.
-     *
-     * @param sprite the static sprite to add
+     * Hurts a sprite stepping onto a trap, unless it is invincible, with a burst of sparks.
+     * Also called for the traps a sprite still stands on when its invincibility ends.
      */
-    public void addToEnvironmentList(Sprite sprite) {
-        if (!environment.contains(sprite)) {  // Avoid adding duplicates
-            environment.add(sprite);
+    private void onTrapEntered(DynamicSprite sprite, byte type, int column, int row) {
+        if (!sprite.getIsInvicible()) {
+            sprite.incrementTrapCount(); // Also makes the sprite invincible for a while
+            System.out.println("1 LIFE LOST");
+            particles.burst(ParticleSystem.SPARK, sprite.getX() + sprite.getWidth() / 2,
+                    sprite.getY() + sprite.getHeight() / 2, 32, 6, 12);
         }
     }
 
     /**
-     * Sets the environment list, replacing any existing environment sprites.
+     * Sets the environment, replacing the previous one.
      * This method can be used to load a new level or reset the environment.
      *
-     * @param environment the new list of environment sprites
+     * @param environment the tile grid of the new environment (a collision map or a streamed world)
      */
-    public void setEnvironment(ArrayList<Sprite> environment) {
+    public void setEnvironment(TileGrid environment) {
         this.environment = environment;
+        triggerIndex.setGrid(environment, entityStore);
     }
 
     /**
-     * Adds a dynamic sprite (movable object) to the moving sprite list if it's not already there.
+     * Adds a dynamic sprite (movable object) to the moving sprites if it's not already there.
      * Dynamic sprites are objects that can move and interact with the environment.
+     * The state of the sprite moves into the entity store of the engine.
      *
      * @param sprite the dynamic sprite to add
      */
     public void addToMovingSpriteList(DynamicSprite sprite) {
-        if (!movingSpriteList.contains(sprite)) {  // Avoid adding duplicates
-            movingSpriteList.add(sprite);
+        sprite.moveToStore(entityStore);  // Does nothing if the sprite is already there
+    }
+
+    /**
+     * Removes a dynamic sprite from the moving sprites, e.g. when a player leaves the GameServer.
+     * The sprite keeps its state in a store of its own.
+     *
+     * @param sprite the dynamic sprite to remove
+     */
+    public void removeFromMovingSpriteList(DynamicSprite sprite) {
+        if (sprite.getStore() == entityStore) {
+            sprite.moveToStore(new EntityStore(1));
+        }
+    }
+
+    /**
+     * Sets the number of threads computing the moves. With 1 thread (the default), the sprites are moved
+     * one after the other by the simulation thread.
+     * The environment must then support reads from several threads (CollisionMap and BinaryLevel do,
+     * a ChunkedWorld does too but serializes them).
+     *
+     * @param threads the number of threads (1 for the sequential mode)
+     */
+    public void setParallelism(int threads) {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
         }
+        if (threads > 1) {
+            pool = new ForkJoinPool(threads);
+        }
+    }
+
+    /**
+     * Gets the number of threads computing the moves.
+     *
+     * @return the number of threads, 1 in sequential mode
+     */
+    public int getParallelism() {
+        return pool == null ? 1 : pool.getParallelism();
+    }
+
+    /**
+     * Sets the clock giving the time of each tick, e.g. a VirtualClock for headless runs.
+     *
+     * @param clock the clock (a SystemClock by default)
+     */
+    public void setClock(GameClock clock) {
+        this.clock = clock;
+    }
+
+    public GameClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Gets the index of the trigger tiles, e.g. to listen to another tile type.
+     *
+     * @return the trigger index of the engine
+     */
+    public TriggerIndex getTriggerIndex() {
+        return triggerIndex;
+    }
+
+    /**
+     * Gets the particles moved by the engine, e.g. to spawn effects or to draw them.
+     *
+     * @return the particle system of the engine
+     */
+    public ParticleSystem getParticleSystem() {
+        return particles;
+    }
+
+    /**
+     * Gets the store holding the state of the moving sprites.
+     *
+     * @return the entity store of the engine
+     */
+    public EntityStore getEntityStore() {
+        return entityStore;
     }
 
     /**
@@ -60,20 +184,104 @@ public class PhysicEngine implements Engine {
      */
     @Override
     public void update() {
-        // For each dynamic sprite, attempt to move if possible, given the environment constraints
-        for (DynamicSprite dynamicSprite : movingSpriteList) {
-            dynamicSprite.moveIfPossible(environment);  // Each sprite checks for possible moves
-            // Check if the sprite has collided with a trap
-            for (Sprite sprite : environment) {
-                if ((!dynamicSprite.getIsInvicible()) && sprite instanceof Trap && ((SolidSprite) sprite).intersect(dynamicSprite.getHitBox())) {
-                    dynamicSprite.incrementTrapCount();
-                    System.out.println("1 LIFE LOST");
-                    dynamicSprite.becomeInvicible();
-                    // Increment trap count if collision occurs
-                    break; // Stop checking once we detect a trap
-                }
+        // No event object at all when no recording wants it, so that a tick allocates nothing
+        PhysicsTickEvent event = PhysicsTickEvent.isRecording() ? new PhysicsTickEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        EntityStore store = entityStore;
+        store.setTime(clock.millis()); // One time for the whole tick
+        int collisionChecks = store.size(); // One check of the moved hitbox per sprite
+        if (pool != null && store.size() >= PARALLEL_THRESHOLD) {
+            // Propose the moves of ranges of sprites in parallel, then commit them in order
+            if (proposedX.length < store.size()) {
+                proposedX = new double[store.x.length];
+                proposedY = new double[store.y.length];
+            }
+            pool.invoke(new ProposeTask(store, environment, proposedX, proposedY, 0, store.size()));
+            store.commitMoves(proposedX, proposedY);
+        } else {
+            // For each dynamic sprite, attempt to move if possible, given the environment constraints
+            // The loop goes through the arrays of the store in order, without touching the sprite objects
+            for (int i = 0; i < store.size(); i++) {
+                store.moveIfPossible(i, environment);  // Each sprite checks for possible moves
+            }
+        }
+        // Tell the trigger tiles (traps, exit) about the sprites that entered or left them
+        triggerIndex.update(store);
+
+        // End the invincibility that has lasted long enough. A trap is only entered once, so the traps still
+        // under a sprite that can be hurt again are entered again (they could not hurt it until now)
+        store.expireInvincibility(DynamicSprite.INVINCIBLE_DELAY_MS, invincibilityExpired);
+        collisionChecks += triggerIndex.getLastCheckedCellCount();
+
+        // Move the effects, including the ones the triggers have just spawned
+        particles.update(environment);
+
+        lastEntityCount = store.size();
+        lastCollisionCheckCount = collisionChecks;
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.entities = lastEntityCount;
+                event.collisionChecks = collisionChecks;
+                event.threads = getParallelism();
+                event.commit();
             }
         }
+    }
+
+    /**
+     * Gets the number of moving sprites handled by the last update.
+     *
+     * @return the number of moving sprites
+     */
+    public int getLastEntityCount() {
+        return lastEntityCount;
+    }
 
+    /**
+     * Gets the number of checks against the tile grid done by the last update: one per moved hitbox,
+     * plus the trigger cells entered or left.
+     *
+     * @return the number of collision checks
+     */
+    public int getLastCollisionCheckCount() {
+        return lastCollisionCheckCount;
+    }
+
+    /**
+     * Task proposing the moves of a range of sprites, split in halves until the range fits in one batch.
+     */
+    private static class ProposeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final EntityStore store;
+        private final TileGrid environment;
+        private final double[] proposedX;
+        private final double[] proposedY;
+        private final int from;
+        private final int to;
+
+        ProposeTask(EntityStore store, TileGrid environment, double[] proposedX, double[] proposedY,
+                    int from, int to) {
+            this.store = store;
+            this.environment = environment;
+            this.proposedX = proposedX;
+            this.proposedY = proposedY;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH_SIZE) {
+                store.proposeMoves(from, to, environment, proposedX, proposedY);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ProposeTask(store, environment, proposedX, proposedY, from, middle),
+                    new ProposeTask(store, environment, proposedX, proposedY, middle, to));
+        }
     }
-}
\ No newline at end of file
+}
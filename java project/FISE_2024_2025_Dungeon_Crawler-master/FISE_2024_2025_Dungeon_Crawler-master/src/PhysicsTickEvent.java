@@ -0,0 +1,38 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event of one PhysicEngine update, with the work it did.
+ * Only created while a recording has it enabled (see isRecording), so that the physics allocates nothing otherwise.
+ */
+@Name("dungeon.PhysicsTick")
+@Label("Physics Tick")
+@Category("Dungeon Crawler")
+@Description("One update of the PhysicEngine")
+public class PhysicsTickEvent extends Event {
+    // Type of the event, to ask if a recording wants it before creating one.
+    private static final EventType TYPE = EventType.getEventType(PhysicsTickEvent.class);
+
+    @Label("Moving Sprites")
+    public int entities;
+
+    @Label("Collision Checks")
+    @Description("Number of hitboxes checked against the tile grid")
+    public int collisionChecks;
+
+    @Label("Threads")
+    public int threads;
+
+    /**
+     * Checks if a running recording has this event enabled.
+     *
+     * @return true if an event should be created for the next update
+     */
+    public static boolean isRecording() {
+        return TYPE.isEnabled();
+    }
+}
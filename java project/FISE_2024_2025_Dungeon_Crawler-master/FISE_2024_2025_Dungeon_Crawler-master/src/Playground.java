@@ -1,7 +1,5 @@
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.io.BufferedReader;
-import java.io.File;
 import java.io.FileReader;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -9,11 +7,28 @@ import java.util.ArrayList;
 /**
  * Playground class is responsible for loading and managing the game's environment layout from a file.
  * It initializes different types of sprites (e.g., trees, rocks) based on symbols in the input file.
+ * A level converted to the binary format (see LevelConverter) is mapped in memory instead of being parsed:
+ * its tiles are read from the file when needed and its sprites are only created for the regions drawn.
  */
 public class Playground {
+    // Size of the cells of the sprite index returned by getSpriteSource(), in pixels
+    private static final int SPRITE_INDEX_CELL_SIZE = 256;
+
+    // Where the hero starts in every level, and its size, in pixels
+    public static final double HERO_START_X = 200;
+    public static final double HERO_START_Y = 300;
+    public static final double HERO_WIDTH = 48;
+    public static final double HERO_HEIGHT = 50;
+
     // List to store all sprites (both static and solid) that make up the environment
     private ArrayList<Sprite> environment = new ArrayList<>();
 
+    // Grid of tile types used by the physics for fast collision checks
+    private TileGrid collisionMap;
+
+    // Level mapped from a binary file, or null for a text level
+    private BinaryLevel binaryLevel;
+
     /**
      * Constructor for Playground. Loads the environment layout from a file and initializes the sprites.
      * Each character in the file represents a specific type of environment element (e.g., tree, grass, rock).
@@ -22,11 +37,19 @@ public class Playground {
      */
     public Playground(String pathName) {
         try {
-            // Load images for different types of sprites in the environment
-            final Image imageTree = ImageIO.read(new File("./img/tree.png"));
-            final Image imageGrass = ImageIO.read(new File("./img/grass.png"));
-            final Image imageRock = ImageIO.read(new File("./img/rock.png"));
-            final Image imageTrap = ImageIO.read(new File("./img/trap.png")); // Trap image if needed
+            // A binary level is not parsed: its tiles are read from the mapped file
+            if (BinaryLevel.isBinaryLevel(pathName)) {
+                binaryLevel = new BinaryLevel(pathName);
+                collisionMap = binaryLevel;
+                return;
+            }
+
+            // Get images for different types of sprites in the environment (decoded once per process)
+            AssetManager assets = AssetManager.getInstance();
+            final Image imageTree = assets.getTileImage(AssetManager.TREE);
+            final Image imageGrass = assets.getTileImage(AssetManager.GRASS);
+            final Image imageRock = assets.getTileImage(AssetManager.ROCK);
+            final Image imageTrap = assets.getTileImage(AssetManager.TRAP); // Trap image if needed
 
             // Dimensions for each image type, used for placing elements on a grid
             final int imageTreeWidth = imageTree.getWidth(null);
@@ -40,21 +63,34 @@ public class Playground {
             final int imageTrapWidth = imageRock.getWidth(null);
             final int imageTrapHeight = imageRock.getHeight(null);
 
-            // Open the file and start reading each line to create the environment
+            // Open the file and read every line, so that the size of the grid is known
             BufferedReader bufferedReader = new BufferedReader(new FileReader(pathName));
+            ArrayList<String> lines = new ArrayList<>();
+            int columnCount = 0;
             String line = bufferedReader.readLine();
-            int lineNumber = 0; // Tracks the row in the environment grid
+            while (line != null) {
+                lines.add(line);
+                columnCount = Math.max(columnCount, line.getBytes(StandardCharsets.UTF_8).length);
+                line = bufferedReader.readLine();
+            }
+            bufferedReader.close();
+
+            // All tiles share the same size, the grass one is used for the grid
+            CollisionMap textCollisionMap = new CollisionMap(columnCount, lines.size(), imageGrassWidth, imageGrassHeight);
+            collisionMap = textCollisionMap;
+            StringBuilder unknownSymbols = new StringBuilder();
 
             // Process each line in the input file
-            while (line != null) {
+            for (int lineNumber = 0; lineNumber < lines.size(); lineNumber++) {
                 int columnNumber = 0; // Tracks the column in the environment grid
-                for (byte element : line.getBytes(StandardCharsets.UTF_8)) {
+                for (byte element : lines.get(lineNumber).getBytes(StandardCharsets.UTF_8)) {
                     // Determine the type of sprite to add based on character symbol in the file
                     switch (element) {
                         case 'T':
                             // Add a tree at the calculated position
                             environment.add(new SolidSprite(columnNumber * imageTreeWidth,
                                     lineNumber * imageTreeHeight, imageTree, imageTreeWidth, imageTreeHeight));
+                            textCollisionMap.setTile(columnNumber, lineNumber, CollisionMap.SOLID);
                             break;
                         case ' ':
                             // Add grass at the calculated position (non-solid, passable)
@@ -65,19 +101,30 @@ public class Playground {
                             // Add a rock at the calculated position
                             environment.add(new SolidSprite(columnNumber * imageRockWidth,
                                     lineNumber * imageRockHeight, imageRock, imageRockWidth, imageRockHeight));
+                            textCollisionMap.setTile(columnNumber, lineNumber, CollisionMap.SOLID);
                             break;
                         case 'J':
                             // Add a trap at the calculated position so that if he touches he will die
                             environment.add(new Trap(columnNumber * imageTrapWidth,
                                     lineNumber * imageTrapHeight, imageTrap, imageTrapWidth, imageTrapHeight));
+                            textCollisionMap.setTile(columnNumber, lineNumber, CollisionMap.TRAP);
+                            break;
+                        case '.':
+                            // The exit of the level has no sprite, only a tile type
+                            textCollisionMap.setTile(columnNumber, lineNumber, CollisionMap.EXIT);
                             break;
+                        default:
+                            // Unknown symbols are skipped, but reported once
+                            if (unknownSymbols.indexOf(String.valueOf((char) element)) < 0) {
+                                unknownSymbols.append((char) element);
+                            }
                     }
                     columnNumber++; // Move to the next column
                 }
-                lineNumber++; // Move to the next row
-                line = bufferedReader.readLine(); // Read the next line in the file
             }
-            bufferedReader.close();
+            if (unknownSymbols.length() > 0) {
+                System.err.println("Unknown symbols ignored in " + pathName + ": \"" + unknownSymbols + "\"");
+            }
         } catch (Exception e) {
             e.printStackTrace(); // Print any exceptions to assist with debugging
         }
@@ -91,25 +138,75 @@ public class Playground {
      */
     public ArrayList<Sprite> getSolidSpriteList() {
         ArrayList<Sprite> solidSpriteArrayList = new ArrayList<>();
-        for (Sprite sprite : environment) {
+        for (Displayable sprite : getSpriteList()) {
             if (sprite instanceof SolidSprite) {
-                solidSpriteArrayList.add(sprite);
+                solidSpriteArrayList.add((Sprite) sprite);
             }
         }
         return solidSpriteArrayList;
     }
 
+    /**
+     * Gets the collision map of the level, a grid with the type of every tile.
+     * The physics uses it to check only the cells around a moving sprite.
+     *
+     * @return the collision map of the level (the mapped file itself for a binary level)
+     */
+    public TileGrid getCollisionMap() {
+        return collisionMap;
+    }
+
+    /**
+     * Gets the width of the level in pixels.
+     *
+     * @return the width of the level
+     */
+    public int getWidth() {
+        return collisionMap.getColumns() * collisionMap.getTileWidth();
+    }
+
+    /**
+     * Gets the height of the level in pixels.
+     *
+     * @return the height of the level
+     */
+    public int getHeight() {
+        return collisionMap.getRows() * collisionMap.getTileHeight();
+    }
+
     /**
      * Gets a list of all displayable sprites in the environment.
      * This is used to render all elements in the environment, including passable and non-passable elements.
+     * For a binary level the sprites of the whole level are created on each call: prefer getSpriteSource().
      *
      * @return a list of all displayable sprites in the environment
      */
     public ArrayList<Displayable> getSpriteList() {
         ArrayList<Displayable> displayableArrayList = new ArrayList<>();
+        if (binaryLevel != null) {
+            binaryLevel.forEachIn(0, 0, getWidth(), getHeight(), displayableArrayList::add);
+            return displayableArrayList;
+        }
         for (Sprite sprite : environment) {
             displayableArrayList.add(sprite);
         }
         return displayableArrayList;
     }
+
+    /**
+     * Gets the sprites of the level as a source that gives the sprites of a region,
+     * so that the rendering only visits the sprites around the camera.
+     *
+     * @return the mapped file for a binary level, or an index of the sprites for a text level
+     */
+    public SpriteSource getSpriteSource() {
+        if (binaryLevel != null) {
+            return binaryLevel;
+        }
+        SpriteIndex index = new SpriteIndex(getWidth(), getHeight(), SPRITE_INDEX_CELL_SIZE);
+        for (Sprite sprite : environment) {
+            index.add(sprite);
+        }
+        return index;
+    }
 }
@@ -1,16 +1,106 @@
 import javax.swing.*;
 import java.awt.*;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 
 /**
  * RenderEngine is responsible for drawing all displayable objects on the screen.Some are static and others are
  * animated.
  * It extends JPanel and implements the Engine interface, allowing it to be updated and repainted.
+ * On each update, only the regions where a moving sprite changed (moved, changed frame or blinked) are painted
+ * again; the whole panel is painted only when the camera moves, the panel is resized or the content changes.
+ * Particles (sparks, dust, projectiles) are not in the render list: they are drawn in one batch by their
+ * ParticleSystem, above the sprites.
  */
 public class RenderEngine extends JPanel implements Engine {
     // List containing all displayable objects to be rendered on the screen.
     private ArrayList<Displayable> renderList;
 
+    // Sprites that never move, drawn once into a cached image.
+    private final StaticLayer staticLayer = new StaticLayer();
+
+    // Part of the world shown in the panel, and the sprite it follows (null for a fixed camera).
+    private final Camera camera = new Camera();
+    private DynamicSprite cameraTarget;
+
+    // Particles drawn above the sprites (null if none).
+    private ParticleSystem particleSystem;
+
+    // Fraction of the simulation tick elapsed when the frame is drawn, used to interpolate moving sprites.
+    private volatile double interpolation = 1;
+
+    // Lock held by the game loop during a simulation tick, so that a frame never shows a half-done tick.
+    private Object worldLock = new Object();
+
+    // Durations of the paints, in nanoseconds.
+    private final LatencyHistogram paintHistogram = new LatencyHistogram();
+
+    // Performance overlay drawn on top of the game (null if none), and whether it is shown.
+    private DebugOverlay debugOverlay;
+    private volatile boolean debugOverlayVisible = false;
+
+    // Extra pixels painted around a moving sprite, in case it moves a little between update() and paint().
+    private static final int DIRTY_MARGIN = 6;
+
+    // True to paint only the changed regions, false to paint the whole panel on every update.
+    private volatile boolean dirtyRegionsEnabled = true;
+
+    // Set when the whole panel must be painted on the next update (content, overlay or size changed).
+    private volatile boolean fullRepaintNeeded = true;
+
+    // What the last paint drew: camera position, panel size, and for each moving sprite its rectangle on
+    // screen (empty if it was not drawn) and its image. Written by paint and read by update, under the world lock.
+    private int paintedCameraX;
+    private int paintedCameraY;
+    private int paintedWidth;
+    private int paintedHeight;
+    private final IdentityHashMap<DynamicSprite, Rectangle> drawnBounds = new IdentityHashMap<>();
+    private final IdentityHashMap<DynamicSprite, Image> drawnFrames = new IdentityHashMap<>();
+    private final Rectangle drawnParticleBounds = new Rectangle();
+
+    // Rectangle of a sprite on the paint running now, reused for each sprite.
+    private final Rectangle paintBounds = new Rectangle();
+
+    // Area of the particles, in world coordinates, reused by each paint and update.
+    private final Rectangle particleBounds = new Rectangle();
+
+    // Image recorded for a sprite only partly painted (cut by the clip): it never equals a real frame,
+    // so that the sprite is painted again on the next update.
+    private static final Image PARTLY_PAINTED = new java.awt.image.BufferedImage(1, 1,
+            java.awt.image.BufferedImage.TYPE_INT_ARGB);
+
+    // Camera used by update to know where the next paint will look, without touching the camera of paint,
+    // and the rectangle of a sprite on that paint.
+    private final Camera nextCamera = new Camera();
+    private final Rectangle nextBounds = new Rectangle();
+
+    // Regions found by an update, on the game loop thread.
+    private final ArrayList<Rectangle> regions = new ArrayList<>();
+
+    // Regions waiting for the event dispatch thread, the interpolation they were found with, and whether a
+    // paint of them is already queued. Rectangles no longer used are kept as spares, to be reused by the next
+    // updates. All guarded by regionLock.
+    private final Object regionLock = new Object();
+    private ArrayList<Rectangle> pendingRegions = new ArrayList<>();
+    private final ArrayList<Rectangle> spareRegions = new ArrayList<>();
+    private double pendingInterpolation = 1;
+    private boolean regionPaintQueued = false;
+
+    // Above this number of waiting regions, the whole panel is painted instead.
+    private static final int MAX_PENDING_REGIONS = 64;
+
+    // On the event dispatch thread: the regions being painted, the interpolation of their paint (NaN when
+    // the whole panel is painted), the camera checking that they are still valid, and the task painting them.
+    private ArrayList<Rectangle> paintingRegions = new ArrayList<>();
+    private double regionInterpolation = Double.NaN;
+    private final Camera regionCamera = new Camera();
+    private final Runnable paintRegionsTask = this::paintPendingRegions;
+
+    // Number of updates that painted the whole panel, only some regions, or nothing.
+    private long fullRepaintCount = 0;
+    private long partialRepaintCount = 0;
+    private long skippedRepaintCount = 0;
+
     /**
      * Constructor initializes the render list and sets up the panel.
      *
@@ -30,6 +120,7 @@ public class RenderEngine extends JPanel implements Engine {
     public void addToRenderList(Displayable displayable) {
         if (!renderList.contains(displayable)) {  // Avoid duplicate entries
             renderList.add(displayable);
+            fullRepaintNeeded = true;
         }
     }
 
@@ -44,29 +135,556 @@ public class RenderEngine extends JPanel implements Engine {
                 renderList.add(displayable);  // Add each displayable that isn’t already present
             }
         }
+        fullRepaintNeeded = true;
+    }
+
+    /**
+     * Removes a displayable object from the render list, e.g. a player who left the game.
+     *
+     * @param displayable the object to remove
+     */
+    public void removeFromRenderList(Displayable displayable) {
+        if (renderList.remove(displayable)) {
+            drawnBounds.remove(displayable);
+            drawnFrames.remove(displayable);
+            fullRepaintNeeded = true;
+        }
+    }
+
+    /**
+     * Sets the static sprites of the level (grass, trees, rocks, traps). They are drawn once into a
+     * cached image instead of being drawn again on every frame.
+     *
+     * @param displayables the static sprites
+     * @param width        the width of the level in pixels
+     * @param height       the height of the level in pixels
+     */
+    public void setStaticLayer(ArrayList<Displayable> displayables, int width, int height) {
+        staticLayer.setContent(displayables, width, height);
+        camera.setWorldSize(width, height);
+        nextCamera.setWorldSize(width, height);
+        regionCamera.setWorldSize(width, height);
+        fullRepaintNeeded = true;
+    }
+
+    /**
+     * Sets the static sprites of the level from a source that gives them on demand (e.g. a ChunkedWorld),
+     * so that only the sprites around the camera are ever drawn into the cached image.
+     *
+     * @param spriteSource the source of the static sprites
+     * @param width        the width of the level in pixels
+     * @param height       the height of the level in pixels
+     */
+    public void setStaticLayer(SpriteSource spriteSource, int width, int height) {
+        staticLayer.setContent(spriteSource, width, height);
+        camera.setWorldSize(width, height);
+        nextCamera.setWorldSize(width, height);
+        regionCamera.setWorldSize(width, height);
+        fullRepaintNeeded = true;
+    }
+
+    /**
+     * Sets the particles drawn above the sprites, usually the ones of the PhysicEngine.
+     *
+     * @param particleSystem the particles, or null to draw none
+     */
+    public void setParticleSystem(ParticleSystem particleSystem) {
+        this.particleSystem = particleSystem;
+        fullRepaintNeeded = true;
+    }
+
+    /**
+     * Makes the camera follow a sprite, keeping it at the center of the panel when possible.
+     *
+     * @param target the sprite to follow
+     */
+    public void setCameraTarget(DynamicSprite target) {
+        this.cameraTarget = target;
+        fullRepaintNeeded = true;
+    }
+
+    /**
+     * Gets the camera giving the part of the world shown in the panel.
+     *
+     * @return the camera of the render engine
+     */
+    public Camera getCamera() {
+        return camera;
+    }
+
+    /**
+     * Sets the number of worker threads drawing the static layer in chunks (0 to draw it in a single
+     * cached image on the painting thread, the default).
+     *
+     * @param threads the number of threads
+     */
+    public void setStaticLayerThreads(int threads) {
+        staticLayer.setRasterThreads(threads);
+        fullRepaintNeeded = true;
+    }
+
+    /**
+     * Forces the static layer to be drawn again, e.g. after a static sprite has changed its look.
+     */
+    public void invalidateStaticLayer() {
+        staticLayer.invalidate();
+        fullRepaintNeeded = true;
+    }
+
+    /**
+     * Makes the next update paint the whole panel, e.g. after the game has been restarted.
+     */
+    public void requestFullRepaint() {
+        fullRepaintNeeded = true;
+    }
+
+    /**
+     * Sets the lock held by the game loop while it updates the simulation.
+     *
+     * @param worldLock the lock shared with the game loop
+     */
+    public void setWorldLock(Object worldLock) {
+        this.worldLock = worldLock;
+    }
+
+    /**
+     * Sets the performance overlay drawn on top of the game. It is hidden until toggled.
+     *
+     * @param debugOverlay the overlay, or null to remove it
+     */
+    public void setDebugOverlay(DebugOverlay debugOverlay) {
+        if (debugOverlay != null) {
+            debugOverlay.addHistogram("RenderEngine.paint", paintHistogram);
+        }
+        this.debugOverlay = debugOverlay;
+    }
+
+    /**
+     * Shows the performance overlay if it is hidden, hides it otherwise.
+     */
+    public void toggleDebugOverlay() {
+        debugOverlayVisible = !debugOverlayVisible;
+        fullRepaintNeeded = true;
     }
 
     /**
-     * Paint method is overridden to draw all objects in the render list.
+     * Chooses between painting only the changed regions (the default) and painting the whole panel on
+     * every update.
+     *
+     * @param enabled true to paint only the changed regions
+     */
+    public void setDirtyRegionsEnabled(boolean enabled) {
+        this.dirtyRegionsEnabled = enabled;
+        fullRepaintNeeded = true;
+    }
+
+    public long getFullRepaintCount() {
+        return fullRepaintCount;
+    }
+
+    public long getPartialRepaintCount() {
+        return partialRepaintCount;
+    }
+
+    public long getSkippedRepaintCount() {
+        return skippedRepaintCount;
+    }
+
+    /**
+     * Gets the durations of the paints of the panel.
+     *
+     * @return the histogram of the paint durations, in nanoseconds
+     */
+    public LatencyHistogram getPaintHistogram() {
+        return paintHistogram;
+    }
+
+    /**
+     * Sets the fraction of simulation tick elapsed for the next frame.
+     *
+     * @param interpolation a value between 0 (previous tick) and 1 (last tick)
+     */
+    public void setInterpolation(double interpolation) {
+        this.interpolation = interpolation;
+    }
+
+    /**
+     * Paint method is overridden to draw the cached static layer, then the objects of the render list
+     * that are inside the view of the camera.
      * This method is called automatically by Swing whenever the panel needs to be redrawn.
      *
      * @param g Graphics object used for drawing
      */
     @Override
     public void paint(Graphics g) {
+        EngineUpdateEvent event = EngineUpdateEvent.isRecording() ? new EngineUpdateEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        long start = System.nanoTime();
         super.paint(g);  // Call the superclass's paint method to clear previous drawings
-        // Draw each displayable object in the render list
-        for (Displayable renderObject : renderList) {
-            renderObject.draw(g);
+        // A paint of regions uses the interpolation they were found with
+        boolean paintingRegion = !Double.isNaN(regionInterpolation);
+        double frameInterpolation = paintingRegion ? regionInterpolation : interpolation;
+        Rectangle clip = g.getClipBounds();  // Part of the panel to paint (null for all of it)
+
+        // Draw each displayable object while the simulation is not being updated
+        synchronized (worldLock) {
+            // Follow the target and switch to world coordinates
+            aimCamera(camera, frameInterpolation);
+            paintedCameraX = camera.getX();
+            paintedCameraY = camera.getY();
+            paintedWidth = getWidth();
+            paintedHeight = getHeight();
+            Graphics world = g.create();
+            try {
+                world.translate(-camera.getX(), -camera.getY());
+
+                // Copy the static sprites, drawn in a cached image
+                staticLayer.paint(world, getGraphicsConfiguration(), camera);
+
+                for (Displayable renderObject : renderList) {
+                    boolean visible = isVisible(renderObject, frameInterpolation);
+                    if (renderObject instanceof DynamicSprite) {
+                        visible = recordDrawnState((DynamicSprite) renderObject, visible, frameInterpolation, clip);
+                    }
+                    if (visible) {
+                        renderObject.draw(world, frameInterpolation);
+                    }
+                }
+
+                // Draw all the particles in one batch
+                if (particleSystem != null) {
+                    recordDrawnParticles(clip);
+                    particleSystem.draw(world, frameInterpolation, camera);
+                }
+            } finally {
+                world.dispose();
+            }
+        }
+
+        // Draw the performance overlay in screen coordinates, on top of everything (the frame of a paint of
+        // regions is counted once by paintPendingRegions)
+        if (debugOverlay != null && !paintingRegion) {
+            debugOverlay.onFrame();
+        }
+        if (debugOverlay != null && debugOverlayVisible) {
+            debugOverlay.draw(g);
+        }
+        paintHistogram.record(System.nanoTime() - start);
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.engine = "RenderEngine.paint";
+                event.commit();
+            }
         }
     }
 
     /**
-     * Update method to refresh the panel by calling repaint.
-     * This method triggers a new call to paint(), updating the rendered view.
+     * Checks if a displayable is inside the view of the camera. Elements without a position are always drawn.
+     *
+     * @param displayable   the element to check
+     * @param interpolation the fraction of tick used to place moving sprites
+     * @return true if the element must be drawn
+     */
+    private boolean isVisible(Displayable displayable, double interpolation) {
+        if (displayable instanceof DynamicSprite) {
+            DynamicSprite sprite = (DynamicSprite) displayable;
+            return camera.isVisible(sprite.getInterpolatedX(interpolation), sprite.getInterpolatedY(interpolation),
+                    sprite.getWidth(), sprite.getHeight());
+        }
+        if (displayable instanceof Sprite) {
+            Sprite sprite = (Sprite) displayable;
+            return camera.isVisible(sprite.getX(), sprite.getY(), sprite.getWidth(), sprite.getHeight());
+        }
+        return true;
+    }
+
+    /**
+     * Remembers what is drawn for a moving sprite, to find the regions to paint on the next update.
+     * A sprite outside the clip is not drawn and keeps what was recorded before; a sprite cut by the clip
+     * is recorded over its old and new places, and will be painted again.
+     *
+     * @return true if the sprite must be drawn by this paint
+     */
+    private boolean recordDrawnState(DynamicSprite sprite, boolean visible, double frameInterpolation,
+                                     Rectangle clip) {
+        Rectangle bounds = paintBounds;
+        setScreenBounds(bounds, sprite, frameInterpolation, camera, visible);
+        Rectangle drawn = drawnBounds.get(sprite);
+        if (drawn == null) {
+            // First paint of the sprite: its rectangle is kept and updated in place from now on
+            drawn = new Rectangle(bounds);
+            drawnBounds.put(sprite, drawn);
+            drawnFrames.put(sprite, visible ? sprite.getFrame() : null);
+        } else if (clip == null || (clip.contains(bounds) && clip.contains(drawn))) {
+            // Everything the sprite covers was painted now
+            drawn.setBounds(bounds);
+            drawnFrames.put(sprite, visible ? sprite.getFrame() : null);
+        } else if (clip.intersects(bounds) || clip.intersects(drawn)) {
+            // Partly painted: what is on screen is a mix of the old and new images
+            if (drawn.isEmpty()) {
+                drawn.setBounds(bounds);
+            } else if (!bounds.isEmpty()) {
+                drawn.add(bounds);  // Same as union, without a new rectangle
+            }
+            drawnFrames.put(sprite, PARTLY_PAINTED);
+        }
+        return visible && (clip == null || clip.intersects(bounds));
+    }
+
+    /**
+     * Remembers the area of the panel covered by the particles, as recordDrawnState does for a sprite.
+     */
+    private void recordDrawnParticles(Rectangle clip) {
+        particleSystem.getBounds(particleBounds);
+        if (!particleBounds.isEmpty()) {
+            particleBounds.translate(-camera.getX(), -camera.getY());
+        }
+        if (clip == null || (particleBounds.isEmpty() || clip.contains(particleBounds))
+                && (drawnParticleBounds.isEmpty() || clip.contains(drawnParticleBounds))) {
+            drawnParticleBounds.setBounds(particleBounds);
+        } else if (!particleBounds.isEmpty()) {
+            // Partly painted: the old area must be painted again too
+            drawnParticleBounds.setBounds(drawnParticleBounds.isEmpty() ? particleBounds
+                    : drawnParticleBounds.union(particleBounds));
+        }
+    }
+
+    /**
+     * Sets a rectangle to the area of the panel covered by a moving sprite (empty if it is not visible).
+     */
+    private static void setScreenBounds(Rectangle bounds, DynamicSprite sprite, double interpolation, Camera camera,
+                                        boolean visible) {
+        if (!visible) {
+            bounds.setBounds(0, 0, 0, 0);
+            return;
+        }
+        // Same rounding as DynamicSprite.draw
+        bounds.setBounds((int) sprite.getInterpolatedX(interpolation) - camera.getX(),
+                (int) sprite.getInterpolatedY(interpolation) - camera.getY(),
+                (int) Math.ceil(sprite.getWidth()), (int) Math.ceil(sprite.getHeight()));
+    }
+
+
+    /**
+     * Places a camera where a paint at an interpolation will look: over the whole panel, centered on the
+     * target when there is one.
+     */
+    private void aimCamera(Camera aimed, double interpolation) {
+        aimed.setViewport(getWidth(), getHeight());
+        if (cameraTarget != null) {
+            aimed.centerOn(cameraTarget.getInterpolatedX(interpolation) + cameraTarget.getWidth() / 2,
+                    cameraTarget.getInterpolatedY(interpolation) + cameraTarget.getHeight() / 2);
+        }
+    }
+
+    /**
+     * Update method to refresh the panel.
+     * When the camera, the size of the panel and the content did not change since the last paint, only the
+     * regions where a moving sprite changed are painted again (its old and new place); nothing is painted
+     * when nothing changed. Otherwise the whole panel is repainted.
+     * While a paint of regions is waiting for the event dispatch thread, the new regions are added to it
+     * instead of queueing another paint, so paints never pile up when the event thread falls behind.
      */
     @Override
     public void update() {
-        this.repaint();  // Repaint the JPanel, causing paint() to be called
+        double nextInterpolation = interpolation;
+        boolean fullRepaint = !dirtyRegionsEnabled || fullRepaintNeeded;
+        if (!fullRepaint) {
+            fullRepaint = !findChangedRegions(regions, nextInterpolation);
+        }
+        if (!fullRepaint && debugOverlay != null && debugOverlayVisible) {
+            takeRegion(regions).setBounds(debugOverlay.getBounds());  // Its text changes every second
+        }
+        if (!fullRepaint && regions.isEmpty()) {
+            skippedRepaintCount++;
+            return;
+        }
+
+        boolean queuePaint = false;
+        synchronized (regionLock) {
+            if (!fullRepaint) {
+                // Add the regions to the ones waiting: they are painted with the interpolation of this update
+                pendingRegions.addAll(regions);
+                regions.clear();
+                mergeRegions(pendingRegions, spareRegions);
+                pendingInterpolation = nextInterpolation;
+                if (pendingRegions.size() > MAX_PENDING_REGIONS) {
+                    fullRepaint = true;  // The event thread is far behind: one full paint is cheaper
+                }
+                queuePaint = !regionPaintQueued;
+                regionPaintQueued = true;
+            }
+            if (fullRepaint) {
+                // The full paint covers every region
+                spareRegions.addAll(regions);
+                regions.clear();
+                spareRegions.addAll(pendingRegions);
+                pendingRegions.clear();
+            }
+        }
+        if (fullRepaint) {
+            fullRepaintNeeded = false;
+            fullRepaintCount++;
+            this.repaint();  // Repaint the JPanel, causing paint() to be called
+            return;
+        }
+        partialRepaintCount++;
+        if (queuePaint) {
+            SwingUtilities.invokeLater(paintRegionsTask);
+        }
+    }
+
+    /**
+     * Paints the regions waiting since the last paint of regions, each on its own (repaint() would merge them
+     * into one big rectangle). Runs on the event dispatch thread.
+     * The regions were found for the camera of the last paint: if the camera would not be there any more
+     * (the event thread was late), the whole panel is repainted instead.
+     */
+    private void paintPendingRegions() {
+        double paintInterpolation;
+        synchronized (regionLock) {
+            ArrayList<Rectangle> painted = paintingRegions;  // Empty since the last paint of regions
+            paintingRegions = pendingRegions;
+            pendingRegions = painted;
+            paintInterpolation = pendingInterpolation;
+            regionPaintQueued = false;
+        }
+        if (paintingRegions.isEmpty()) {
+            return;  // A full repaint took them
+        }
+
+        synchronized (worldLock) {
+            aimCamera(regionCamera, paintInterpolation);
+            if (getWidth() != paintedWidth || getHeight() != paintedHeight
+                    || regionCamera.getX() != paintedCameraX || regionCamera.getY() != paintedCameraY) {
+                repaint();
+            } else {
+                regionInterpolation = paintInterpolation;
+                try {
+                    for (Rectangle region : paintingRegions) {
+                        paintImmediately(region);
+                    }
+                } finally {
+                    regionInterpolation = Double.NaN;
+                }
+                if (debugOverlay != null) {
+                    debugOverlay.onFrame();  // One frame, however many regions it has
+                }
+            }
+        }
+
+        synchronized (regionLock) {
+            spareRegions.addAll(paintingRegions);
+        }
+        paintingRegions.clear();
+    }
+
+    /**
+     * Takes a rectangle from the spare ones (or a new one if there is none) and adds it to a list of regions.
+     * Called by the game loop thread.
+     */
+    private Rectangle takeRegion(ArrayList<Rectangle> regions) {
+        Rectangle region;
+        synchronized (regionLock) {
+            region = spareRegions.isEmpty() ? new Rectangle() : spareRegions.remove(spareRegions.size() - 1);
+        }
+        regions.add(region);
+        return region;
+    }
+
+    /**
+     * Finds the regions of the panel to paint again because a moving sprite changed since the last paint.
+     *
+     * @param regions           the list receiving the regions
+     * @param nextInterpolation the fraction of tick the regions are painted with
+     * @return false if the whole panel must be painted instead (camera moved, panel resized, unknown elements)
+     */
+    private boolean findChangedRegions(ArrayList<Rectangle> regions, double nextInterpolation) {
+        synchronized (worldLock) {
+            // Where will the camera be on the next paint?
+            aimCamera(nextCamera, nextInterpolation);
+            if (getWidth() != paintedWidth || getHeight() != paintedHeight
+                    || nextCamera.getX() != paintedCameraX || nextCamera.getY() != paintedCameraY) {
+                return false;
+            }
+
+            for (Displayable renderObject : renderList) {
+                if (!(renderObject instanceof DynamicSprite)) {
+                    if (renderObject instanceof Sprite) {
+                        continue; // A sprite that never moves only needs the full repaints
+                    }
+                    return false; // No position known: it may have changed anywhere
+                }
+                DynamicSprite sprite = (DynamicSprite) renderObject;
+                Rectangle drawn = drawnBounds.get(sprite);
+                if (drawn == null) {
+                    return false; // Never painted yet
+                }
+                boolean visible = nextCamera.isVisible(sprite.getInterpolatedX(nextInterpolation),
+                        sprite.getInterpolatedY(nextInterpolation), sprite.getWidth(), sprite.getHeight());
+                setScreenBounds(nextBounds, sprite, nextInterpolation, nextCamera, visible);
+                Image nextFrame = visible ? sprite.getFrame() : null;
+                if (nextBounds.equals(drawn) && nextFrame == drawnFrames.get(sprite)) {
+                    continue; // Same place, same image: nothing to paint
+                }
+                if (!drawn.isEmpty()) {
+                    takeRegion(regions).setBounds(drawn); // Erase the old place
+                }
+                if (!nextBounds.isEmpty()) {
+                    Rectangle region = takeRegion(regions);
+                    region.setBounds(nextBounds);
+                    region.grow(DIRTY_MARGIN, DIRTY_MARGIN);
+                }
+            }
+
+            // Particles move on every tick while there are some: paint their old and new area
+            if (particleSystem != null) {
+                particleSystem.getBounds(particleBounds);
+                if (!drawnParticleBounds.isEmpty()) {
+                    takeRegion(regions).setBounds(drawnParticleBounds);
+                }
+                if (!particleBounds.isEmpty()) {
+                    Rectangle region = takeRegion(regions);
+                    region.setBounds(particleBounds);
+                    region.translate(-nextCamera.getX(), -nextCamera.getY());
+                    region.grow(DIRTY_MARGIN, DIRTY_MARGIN);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Merges the regions that overlap, or whose union is not bigger than the two regions together.
+     * A merged region is grown in place, and the rectangle it absorbed is moved to the spare ones.
+     *
+     * @param regions the regions, replaced by the merged regions
+     * @param spare   the list receiving the rectangles no longer used
+     */
+    static void mergeRegions(ArrayList<Rectangle> regions, ArrayList<Rectangle> spare) {
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            for (int i = 0; i < regions.size() && !merged; i++) {
+                for (int j = i + 1; j < regions.size() && !merged; j++) {
+                    Rectangle a = regions.get(i);
+                    Rectangle b = regions.get(j);
+                    long unionArea = (long) (Math.max(a.x + a.width, b.x + b.width) - Math.min(a.x, b.x))
+                            * (Math.max(a.y + a.height, b.y + b.height) - Math.min(a.y, b.y));
+                    if (a.intersects(b) || unionArea <= area(a) + area(b)) {
+                        a.add(b);  // a becomes the union of the two
+                        spare.add(regions.remove(j));
+                        merged = true;
+                    }
+                }
+            }
+        }
+    }
+
+    private static long area(Rectangle rectangle) {
+        return (long) rectangle.width * rectangle.height;
     }
 }
@@ -0,0 +1,343 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * SnapshotState is the state of the players sent by the GameServer at one tick: for each player, by
+ * increasing id, its position (in 1/8 pixels), direction, flags and trap count.
+ * A state is sent as a delta from a state the client has acknowledged: only the players that changed are
+ * written, and only the fields that changed, positions as small differences. A player walking in a straight
+ * line costs about 4 bytes per tick, and a player that does not move costs nothing.
+ * <p>
+ * Delta format: varlong tick, varlong tick of the base state (0: no base, everything is written),
+ * varlong time in milliseconds, then the removed ids and the changed players, each list ending with a 0.
+ * Ids are written as the gap from the previous id of the list (plus 1 for the first one), so never 0.
+ * A changed player is: id gap, byte of changed fields, then the changed fields (differences for positions).
+ */
+public class SnapshotState {
+    // Positions are sent in 1/POSITION_SCALE pixels.
+    public static final int POSITION_SCALE = 8;
+
+    // Fields of a changed player.
+    private static final int CHANGED_X = 1;
+    private static final int CHANGED_Y = 2;
+    private static final int CHANGED_DIRECTION = 4;
+    private static final int CHANGED_FLAGS = 8;
+    private static final int CHANGED_TRAPS = 16;
+
+    // Tick of the state (0: empty state, used as the base of a full snapshot), and time of the tick.
+    private long tick = 0;
+    private long time = 0;
+
+    // Players, by index, sorted by id.
+    private int count = 0;
+    private int[] ids;
+    private int[] x;
+    private int[] y;
+    private byte[] directions;
+    private int[] flags;
+    private int[] trapCounts;
+
+    // Ids removed by the delta being read.
+    private int[] removedIds = new int[16];
+
+    /**
+     * Creates an empty state.
+     *
+     * @param capacity the number of players the state can hold before growing
+     */
+    public SnapshotState(int capacity) {
+        int size = Math.max(1, capacity);
+        ids = new int[size];
+        x = new int[size];
+        y = new int[size];
+        directions = new byte[size];
+        flags = new int[size];
+        trapCounts = new int[size];
+    }
+
+    /**
+     * Empties the state, to fill it for a new tick.
+     *
+     * @param tick the tick of the state
+     * @param time the time of the tick, in milliseconds
+     */
+    public void clear(long tick, long time) {
+        this.tick = tick;
+        this.time = time;
+        count = 0;
+    }
+
+    /**
+     * Adds the state of a sprite. Sprites must be added by increasing id.
+     *
+     * @param id     the id of the player
+     * @param sprite the sprite of the player
+     */
+    public void add(int id, DynamicSprite sprite) {
+        EntityStore store = sprite.getStore();
+        int index = sprite.getStoreIndex();
+        add(id, (int) Math.round(store.x[index] * POSITION_SCALE), (int) Math.round(store.y[index] * POSITION_SCALE),
+                store.direction[index], store.flags[index], store.trapCount[index]);
+    }
+
+    private void add(int id, int x, int y, byte direction, int flags, int trapCount) {
+        if (count > 0 && id <= ids[count - 1]) {
+            throw new IllegalArgumentException("Ids must be added in increasing order");
+        }
+        if (count == ids.length) {
+            int capacity = count * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            this.x = Arrays.copyOf(this.x, capacity);
+            this.y = Arrays.copyOf(this.y, capacity);
+            directions = Arrays.copyOf(directions, capacity);
+            this.flags = Arrays.copyOf(this.flags, capacity);
+            trapCounts = Arrays.copyOf(trapCounts, capacity);
+        }
+        ids[count] = id;
+        this.x[count] = x;
+        this.y[count] = y;
+        directions[count] = direction;
+        this.flags[count] = flags;
+        trapCounts[count] = trapCount;
+        count++;
+    }
+
+    /**
+     * Writes the delta from a base state to a state.
+     *
+     * @param base    the state the client has, or null to write everything
+     * @param current the state to send
+     * @param out     the buffer receiving the delta
+     */
+    public static void writeDelta(SnapshotState base, SnapshotState current, ByteBuffer out) {
+        int baseCount = (base == null) ? 0 : base.count;
+        NetProtocol.putVarLong(out, current.tick);
+        NetProtocol.putVarLong(out, base == null ? 0 : base.tick);
+        NetProtocol.putVarLong(out, current.time);
+
+        // Players of the base that are gone
+        int previousId = -1;
+        int j = 0;
+        for (int b = 0; b < baseCount; b++) {
+            int id = base.ids[b];
+            while (j < current.count && current.ids[j] < id) {
+                j++;
+            }
+            if (j == current.count || current.ids[j] != id) {
+                NetProtocol.putVarInt(out, id - previousId);
+                previousId = id;
+            }
+        }
+        out.put((byte) 0);
+
+        // Players that are new or changed
+        previousId = -1;
+        int b = 0;
+        for (int i = 0; i < current.count; i++) {
+            int id = current.ids[i];
+            while (b < baseCount && base.ids[b] < id) {
+                b++;
+            }
+            boolean known = b < baseCount && base.ids[b] == id;
+            int baseX = known ? base.x[b] : 0;
+            int baseY = known ? base.y[b] : 0;
+            int changed = 0;
+            if (current.x[i] != baseX) {
+                changed |= CHANGED_X;
+            }
+            if (current.y[i] != baseY) {
+                changed |= CHANGED_Y;
+            }
+            if (!known || current.directions[i] != base.directions[b]) {
+                changed |= CHANGED_DIRECTION;
+            }
+            if (!known || current.flags[i] != base.flags[b]) {
+                changed |= CHANGED_FLAGS;
+            }
+            if (!known || current.trapCounts[i] != base.trapCounts[b]) {
+                changed |= CHANGED_TRAPS;
+            }
+            if (known && changed == 0) {
+                continue; // The client already has this player as it is
+            }
+            NetProtocol.putVarInt(out, id - previousId);
+            previousId = id;
+            out.put((byte) changed);
+            if ((changed & CHANGED_X) != 0) {
+                NetProtocol.putSignedVarInt(out, current.x[i] - baseX);
+            }
+            if ((changed & CHANGED_Y) != 0) {
+                NetProtocol.putSignedVarInt(out, current.y[i] - baseY);
+            }
+            if ((changed & CHANGED_DIRECTION) != 0) {
+                out.put(current.directions[i]);
+            }
+            if ((changed & CHANGED_FLAGS) != 0) {
+                NetProtocol.putVarInt(out, current.flags[i]);
+            }
+            if ((changed & CHANGED_TRAPS) != 0) {
+                NetProtocol.putVarInt(out, current.trapCounts[i]);
+            }
+        }
+        out.put((byte) 0);
+    }
+
+    /**
+     * Reads the tick of the base state of a delta, to find the base before reading the delta.
+     *
+     * @param in the delta, at its start (the position is not changed)
+     * @return the tick of the base, 0 if the delta needs no base
+     */
+    public static long peekBaseTick(ByteBuffer in) {
+        ByteBuffer view = in.duplicate();
+        NetProtocol.getVarLong(view);
+        return NetProtocol.getVarLong(view);
+    }
+
+    /**
+     * Reads a delta, replacing this state by the base state with the changes applied.
+     *
+     * @param base the state whose tick is given by peekBaseTick (null when it is 0); must not be this state
+     * @param in   the delta
+     * @throws IllegalStateException if the base is not the one the delta was written from
+     */
+    public void readDelta(SnapshotState base, ByteBuffer in) {
+        long newTick = NetProtocol.getVarLong(in);
+        long baseTick = NetProtocol.getVarLong(in);
+        if (baseTick != (base == null ? 0 : base.tick)) {
+            throw new IllegalStateException("Delta of tick " + newTick + " needs the state of tick " + baseTick);
+        }
+        clear(newTick, NetProtocol.getVarLong(in));
+        int baseCount = (base == null) ? 0 : base.count;
+
+        // Players removed
+        int removedCount = 0;
+        int id = -1;
+        for (int gap; (gap = NetProtocol.getVarInt(in)) != 0; ) {
+            id += gap;
+            if (removedCount == removedIds.length) {
+                removedIds = Arrays.copyOf(removedIds, removedCount * 2);
+            }
+            removedIds[removedCount++] = id;
+        }
+
+        // Base players, with the changes merged in by id
+        int b = 0;
+        int removed = 0;
+        id = -1;
+        for (int gap; (gap = NetProtocol.getVarInt(in)) != 0; ) {
+            id += gap;
+            for (; b < baseCount && base.ids[b] < id; b++) {
+                removed = copyUnlessRemoved(base, b, removed, removedCount);
+            }
+            boolean known = b < baseCount && base.ids[b] == id;
+            int newX = known ? base.x[b] : 0;
+            int newY = known ? base.y[b] : 0;
+            byte newDirection = known ? base.directions[b] : 0;
+            int newFlags = known ? base.flags[b] : 0;
+            int newTrapCount = known ? base.trapCounts[b] : 0;
+            if (known) {
+                b++;
+            }
+            int changed = in.get();
+            if ((changed & CHANGED_X) != 0) {
+                newX += NetProtocol.getSignedVarInt(in);
+            }
+            if ((changed & CHANGED_Y) != 0) {
+                newY += NetProtocol.getSignedVarInt(in);
+            }
+            if ((changed & CHANGED_DIRECTION) != 0) {
+                newDirection = in.get();
+            }
+            if ((changed & CHANGED_FLAGS) != 0) {
+                newFlags = NetProtocol.getVarInt(in);
+            }
+            if ((changed & CHANGED_TRAPS) != 0) {
+                newTrapCount = NetProtocol.getVarInt(in);
+            }
+            add(id, newX, newY, newDirection, newFlags, newTrapCount);
+        }
+        for (; b < baseCount; b++) {
+            removed = copyUnlessRemoved(base, b, removed, removedCount);
+        }
+    }
+
+    /**
+     * Copies a player of the base unless the delta removed it.
+     *
+     * @return the index of the next removed id to look at
+     */
+    private int copyUnlessRemoved(SnapshotState base, int b, int removed, int removedCount) {
+        int id = base.ids[b];
+        while (removed < removedCount && removedIds[removed] < id) {
+            removed++;
+        }
+        if (removed < removedCount && removedIds[removed] == id) {
+            return removed + 1;
+        }
+        add(id, base.x[b], base.y[b], base.directions[b], base.flags[b], base.trapCounts[b]);
+        return removed;
+    }
+
+    /**
+     * Finds a player.
+     *
+     * @param id the id of the player
+     * @return the index of the player in the state, or -1
+     */
+    public int indexOf(int id) {
+        return Math.max(-1, Arrays.binarySearch(ids, 0, count, id));
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public int getId(int index) {
+        return ids[index];
+    }
+
+    public double getX(int index) {
+        return (double) x[index] / POSITION_SCALE;
+    }
+
+    public double getY(int index) {
+        return (double) y[index] / POSITION_SCALE;
+    }
+
+    public byte getDirection(int index) {
+        return directions[index];
+    }
+
+    public int getFlags(int index) {
+        return flags[index];
+    }
+
+    public int getTrapCount(int index) {
+        return trapCounts[index];
+    }
+
+    /**
+     * Checks if two states hold the same players with the same values (the tick and time are not compared).
+     *
+     * @param other the other state
+     * @return true if the players are the same
+     */
+    public boolean samePlayers(SnapshotState other) {
+        return count == other.count
+                && Arrays.equals(ids, 0, count, other.ids, 0, count)
+                && Arrays.equals(x, 0, count, other.x, 0, count)
+                && Arrays.equals(y, 0, count, other.y, 0, count)
+                && Arrays.equals(directions, 0, count, other.directions, 0, count)
+                && Arrays.equals(flags, 0, count, other.flags, 0, count)
+                && Arrays.equals(trapCounts, 0, count, other.trapCounts, 0, count);
+    }
+}
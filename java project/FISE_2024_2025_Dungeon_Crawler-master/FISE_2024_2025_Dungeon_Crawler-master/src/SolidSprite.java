@@ -24,21 +24,53 @@ public class SolidSprite extends Sprite {
     /**
      * Returns the hitbox of the sprite as a Rectangle2D.
      * This defines the area it occupies, used for collision detection.
+     * A new rectangle is created on each call: the physics uses the primitive
+     * getX/getY/getWidth/getHeight getters and intersect(x, y, width, height) instead.
      *
      * @return a Rectangle2D representing the hitbox of the sprite
      */
     public Rectangle2D.Double getHitBox() {
-        return new Rectangle2D.Double(x, y, width, height);  // Defines the rectangular hitbox
+        return new Rectangle2D.Double(getX(), getY(), width, height);  // Defines the rectangular hitbox
     }
 
     /**
      * Checks if this SolidSprite intersects with another hitbox.
-     * Used for detecting collisions with other objects in the game.
+     * Kept for callers working with Rectangle2D, it delegates to the allocation-free version.
      *
      * @param hitBox the hitbox of another object to check for intersection
      * @return true if there is an intersection, false otherwise
      */
     public boolean intersect(Rectangle2D.Double hitBox) {
-        return this.getHitBox().intersects(hitBox);  // Checks if the hitboxes overlap
+        return intersect(hitBox.x, hitBox.y, hitBox.width, hitBox.height);
+    }
+
+    /**
+     * Checks if this SolidSprite intersects with another SolidSprite, without creating any object.
+     *
+     * @param other the other sprite
+     * @return true if the hitboxes overlap, false otherwise
+     */
+    public boolean intersect(SolidSprite other) {
+        return intersect(other.getX(), other.getY(), other.width, other.height);
+    }
+
+    /**
+     * Checks if the hitbox of this sprite overlaps a rectangle given by its coordinates.
+     * Same rule as Rectangle2D.intersects: touching edges and empty rectangles do not overlap.
+     *
+     * @param otherX      the x-coordinate of the rectangle
+     * @param otherY      the y-coordinate of the rectangle
+     * @param otherWidth  the width of the rectangle
+     * @param otherHeight the height of the rectangle
+     * @return true if there is an intersection, false otherwise
+     */
+    public boolean intersect(double otherX, double otherY, double otherWidth, double otherHeight) {
+        if (width <= 0 || height <= 0 || otherWidth <= 0 || otherHeight <= 0) {
+            return false;
+        }
+        double x = getX(); // Read through the getters: a DynamicSprite keeps its position in an EntityStore
+        double y = getY();
+        return otherX + otherWidth > x && otherY + otherHeight > y
+                && otherX < x + width && otherY < y + height;
     }
 }
@@ -49,4 +49,40 @@ public class Sprite implements Displayable {
         // Casts coordinates to integers for accurate pixel placement
         g.drawImage(image, (int)x, (int)y, null);
     }
+
+    /**
+     * Gets the X coordinate of the sprite.
+     *
+     * @return the X coordinate in pixels
+     */
+    public double getX() {
+        return x;
+    }
+
+    /**
+     * Gets the Y coordinate of the sprite.
+     *
+     * @return the Y coordinate in pixels
+     */
+    public double getY() {
+        return y;
+    }
+
+    /**
+     * Gets the width of the sprite.
+     *
+     * @return the width in pixels
+     */
+    public double getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the sprite.
+     *
+     * @return the height in pixels
+     */
+    public double getHeight() {
+        return height;
+    }
 }
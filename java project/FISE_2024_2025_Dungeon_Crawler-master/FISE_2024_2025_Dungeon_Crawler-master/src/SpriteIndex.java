@@ -0,0 +1,103 @@
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+/**
+ * SpriteIndex is a uniform grid that sorts sprites by position, so that the sprites of a
+ * rectangle (for example the part of the world seen by the camera) can be found without
+ * looking at every sprite of the level.
+ * Each sprite is stored once, in the cell containing its top-left corner; queries look a little
+ * before the rectangle to also find the sprites that start in a previous cell.
+ */
+public class SpriteIndex implements SpriteSource {
+    // Size of a cell of the grid in pixels.
+    private final int cellSize;
+
+    // Number of columns and rows of cells.
+    private final int columns;
+    private final int rows;
+
+    // Sprites stored in each cell (index = row * columns + column), null for empty cells.
+    private final ArrayList<Sprite>[] cells;
+
+    // Size of the biggest sprite, to know how far before the queried rectangle to look.
+    private double maxSpriteWidth;
+    private double maxSpriteHeight;
+
+    /**
+     * Creates an empty index covering a world.
+     *
+     * @param worldWidth  the width of the world in pixels
+     * @param worldHeight the height of the world in pixels
+     * @param cellSize    the size of a cell in pixels
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public SpriteIndex(int worldWidth, int worldHeight, int cellSize) {
+        this.cellSize = cellSize;
+        this.columns = Math.max(1, (worldWidth + cellSize - 1) / cellSize);
+        this.rows = Math.max(1, (worldHeight + cellSize - 1) / cellSize);
+        this.cells = new ArrayList[columns * rows];
+    }
+
+    /**
+     * Adds a sprite to the index. Sprites outside of the world go to the nearest border cell.
+     *
+     * @param sprite the sprite to add
+     */
+    public void add(Sprite sprite) {
+        int index = cellRow(sprite.getY()) * columns + cellColumn(sprite.getX());
+        if (cells[index] == null) {
+            cells[index] = new ArrayList<>();
+        }
+        cells[index].add(sprite);
+        maxSpriteWidth = Math.max(maxSpriteWidth, sprite.getWidth());
+        maxSpriteHeight = Math.max(maxSpriteHeight, sprite.getHeight());
+    }
+
+    /**
+     * Calls an action on every sprite overlapping a rectangle of the world, in insertion order within a cell.
+     *
+     * @param x      the x-coordinate of the rectangle
+     * @param y      the y-coordinate of the rectangle
+     * @param width  the width of the rectangle
+     * @param height the height of the rectangle
+     * @param action the action to run on each sprite found
+     */
+    @Override
+    public void forEachIn(double x, double y, double width, double height, Consumer<Sprite> action) {
+        // A sprite starting up to one sprite size before the rectangle can still overlap it
+        int firstColumn = cellColumn(x - maxSpriteWidth);
+        int lastColumn = cellColumn(x + width);
+        int firstRow = cellRow(y - maxSpriteHeight);
+        int lastRow = cellRow(y + height);
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                ArrayList<Sprite> cell = cells[row * columns + column];
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 0; i < cell.size(); i++) {
+                    Sprite sprite = cell.get(i);
+                    if (sprite.getX() + sprite.getWidth() > x && sprite.getY() + sprite.getHeight() > y
+                            && sprite.getX() < x + width && sprite.getY() < y + height) {
+                        action.accept(sprite);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the column of the cell containing an x-coordinate, clamped to the grid.
+     */
+    private int cellColumn(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor(x / cellSize)));
+    }
+
+    /**
+     * Gets the row of the cell containing a y-coordinate, clamped to the grid.
+     */
+    private int cellRow(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor(y / cellSize)));
+    }
+}
@@ -0,0 +1,73 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * SpriteSheet cuts a sheet of animation frames (a grid of frames of the same size) into separate images,
+ * once, when the sheet is loaded. Each frame is its own image in the pixel format of the screen, so
+ * drawing a frame is a plain copy instead of cropping the big sheet on every draw.
+ */
+public class SpriteSheet {
+    // Frames by row and column of the sheet.
+    private final BufferedImage[][] frames;
+
+    // Size of one frame in pixels.
+    private final int frameWidth;
+    private final int frameHeight;
+
+    /**
+     * Slices a sheet into frames.
+     *
+     * @param sheet       the image containing all the frames
+     * @param frameWidth  the width of one frame
+     * @param frameHeight the height of one frame
+     */
+    public SpriteSheet(Image sheet, int frameWidth, int frameHeight) {
+        this.frameWidth = frameWidth;
+        this.frameHeight = frameHeight;
+        int columns = sheet.getWidth(null) / frameWidth;
+        int rows = sheet.getHeight(null) / frameHeight;
+        GraphicsConfiguration gc = GraphicsEnvironment.isHeadless() ? null
+                : GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+
+        frames = new BufferedImage[rows][columns];
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                BufferedImage frame = (gc != null)
+                        ? gc.createCompatibleImage(frameWidth, frameHeight, Transparency.TRANSLUCENT)
+                        : new BufferedImage(frameWidth, frameHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+                Graphics2D g = frame.createGraphics();
+                try {
+                    // Copy the frame out of the sheet, once
+                    g.drawImage(sheet, 0, 0, frameWidth, frameHeight,
+                            column * frameWidth, row * frameHeight,
+                            (column + 1) * frameWidth, (row + 1) * frameHeight, null);
+                } finally {
+                    g.dispose();
+                }
+                frames[row][column] = frame;
+            }
+        }
+    }
+
+    /**
+     * Gets the frames of a row of the sheet.
+     *
+     * @param row the row of the sheet
+     * @return the frames of the row, from left to right
+     */
+    public BufferedImage[] getRow(int row) {
+        return frames[row].clone();
+    }
+
+    public int getRowCount() {
+        return frames.length;
+    }
+
+    public int getFrameWidth() {
+        return frameWidth;
+    }
+
+    public int getFrameHeight() {
+        return frameHeight;
+    }
+}
@@ -0,0 +1,19 @@
+import java.util.function.Consumer;
+
+/**
+ * Interface for anything that can give the sprites found in a rectangle of the world,
+ * such as a SpriteIndex or a ChunkedWorld. Used by the StaticLayer to draw only what is needed.
+ */
+public interface SpriteSource {
+
+    /**
+     * Calls an action on every sprite overlapping a rectangle of the world.
+     *
+     * @param x      the x-coordinate of the rectangle
+     * @param y      the y-coordinate of the rectangle
+     * @param width  the width of the rectangle
+     * @param height the height of the rectangle
+     * @param action the action to run on each sprite found
+     */
+    void forEachIn(double x, double y, double width, double height, Consumer<Sprite> action);
+}
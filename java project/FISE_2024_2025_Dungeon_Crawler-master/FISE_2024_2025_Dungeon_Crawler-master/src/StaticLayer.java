@@ -0,0 +1,225 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+
+/**
+ * StaticLayer holds the sprites that never move (grass, trees, rocks, traps) and draws them
+ * into a cached image. Each frame then only copies that image instead of drawing every tile.
+ * The cached image covers the part of the world seen by the camera plus a margin around it; it is
+ * drawn again when the camera leaves that region, using a sprite index so that only the sprites of
+ * the region are visited. The cache is also rebuilt after the content changes or invalidate() is called.
+ * With setRasterThreads, the layer is instead drawn in chunks by a ChunkedTileRenderer, on worker threads.
+ */
+public class StaticLayer {
+    // Size of the cells of the sprite index, in pixels.
+    private static final int INDEX_CELL_SIZE = 256;
+
+    // Size of the chunks drawn by the worker threads, in pixels.
+    private static final int CHUNK_SIZE = 256;
+
+    // Sprites of the layer, sorted by position.
+    private SpriteIndex index = new SpriteIndex(0, 0, INDEX_CELL_SIZE);
+
+    // Where the sprites of a region are looked for: the index, or a streamed world.
+    private SpriteSource source = index;
+
+    // Static elements without a position (not sprites), drawn in every region.
+    private final ArrayList<Displayable> unindexed = new ArrayList<>();
+
+    // Size of the layer in pixels (usually the size of the level).
+    private int width;
+    private int height;
+
+    // Image with the static sprites of the cached region already drawn.
+    private BufferedImage cache;
+
+    // Region of the world drawn in the cache, in world coordinates.
+    private int cacheX;
+    private int cacheY;
+    private int cacheWidth;
+    private int cacheHeight;
+
+    // False when the cache must be drawn again.
+    private boolean cacheValid = false;
+
+    // Renderer drawing the layer in chunks on worker threads, or null to use the single cached image.
+    private ChunkedTileRenderer chunkedRenderer;
+
+    /**
+     * Chooses how the layer is drawn: 0 keeps a single cached image drawn by the painting thread, and a
+     * positive number draws the layer in chunks on that many worker threads (the painting thread only
+     * copies the chunks). Useful on big or zoomed-out views, where drawing the cache takes a whole frame.
+     *
+     * @param threads the number of worker threads, or 0 to draw without them
+     */
+    public synchronized void setRasterThreads(int threads) {
+        if (chunkedRenderer != null) {
+            if (chunkedRenderer.getThreads() == threads) {
+                return;
+            }
+            chunkedRenderer.invalidate();
+            chunkedRenderer.close();
+            chunkedRenderer = null;
+        }
+        if (threads > 0) {
+            chunkedRenderer = new ChunkedTileRenderer(CHUNK_SIZE, threads);
+            chunkedRenderer.setContent(source, unindexed, width, height);
+        }
+        invalidate();
+    }
+
+    /**
+     * Gets the number of worker threads drawing the layer.
+     *
+     * @return the number of threads, or 0 when the layer is drawn by the painting thread
+     */
+    public synchronized int getRasterThreads() {
+        return (chunkedRenderer != null) ? chunkedRenderer.getThreads() : 0;
+    }
+
+    /**
+     * Replaces the content of the layer, for example when a new level is loaded.
+     *
+     * @param displayables the static sprites of the layer
+     * @param width        the width of the layer in pixels
+     * @param height       the height of the layer in pixels
+     */
+    public synchronized void setContent(ArrayList<Displayable> displayables, int width, int height) {
+        this.width = width;
+        this.height = height;
+        index = new SpriteIndex(width, height, INDEX_CELL_SIZE);
+        source = index;
+        unindexed.clear();
+        for (Displayable displayable : displayables) {
+            addWithoutInvalidate(displayable);
+        }
+        invalidate();
+        if (chunkedRenderer != null) {
+            chunkedRenderer.setContent(source, unindexed, width, height);
+        }
+    }
+
+    /**
+     * Replaces the content of the layer by sprites provided on demand, for example by a world streamed
+     * in chunks. Only the sprites of the cached region are asked for.
+     *
+     * @param spriteSource the source giving the static sprites of a region
+     * @param width        the width of the layer in pixels
+     * @param height       the height of the layer in pixels
+     */
+    public synchronized void setContent(SpriteSource spriteSource, int width, int height) {
+        this.width = width;
+        this.height = height;
+        source = spriteSource;
+        unindexed.clear();
+        invalidate();
+        if (chunkedRenderer != null) {
+            chunkedRenderer.setContent(source, unindexed, width, height);
+        }
+    }
+
+    /**
+     * Adds a static sprite to the layer.
+     *
+     * @param displayable the sprite to add
+     */
+    public synchronized void add(Displayable displayable) {
+        invalidate(); // First, so that no worker reads the index while it changes
+        addWithoutInvalidate(displayable);
+        if (chunkedRenderer != null) {
+            chunkedRenderer.setContent(source, unindexed, width, height);
+        }
+    }
+
+    /**
+     * Puts a displayable in the index if it is a sprite, or in the list of elements drawn everywhere.
+     * With an external sprite source, added elements are always drawn in the list.
+     */
+    private void addWithoutInvalidate(Displayable displayable) {
+        if (displayable instanceof Sprite && source == index) {
+            index.add((Sprite) displayable);
+        } else if (!unindexed.contains(displayable)) {
+            unindexed.add(displayable);
+        }
+    }
+
+    /**
+     * Discards the cached image, so that it is drawn again on the next paint.
+     */
+    public synchronized void invalidate() {
+        cacheValid = false;
+        if (chunkedRenderer != null) {
+            chunkedRenderer.invalidate();
+        }
+    }
+
+    /**
+     * Draws the part of the layer seen by the camera, updating the cached image first if needed.
+     *
+     * @param g      the Graphics object used for drawing, in world coordinates
+     * @param gc     the configuration of the screen, to create an image in its native format (may be null)
+     * @param camera the camera giving the visible part of the world
+     */
+    public synchronized void paint(Graphics g, GraphicsConfiguration gc, Camera camera) {
+        if (width <= 0 || height <= 0) {
+            return; // Nothing loaded yet
+        }
+        if (chunkedRenderer != null) {
+            chunkedRenderer.paint(g, gc, camera);
+            return;
+        }
+        int viewX = camera.getX();
+        int viewY = camera.getY();
+        int viewWidth = Math.min(camera.getViewportWidth(), width);
+        int viewHeight = Math.min(camera.getViewportHeight(), height);
+        boolean viewInCache = viewX >= cacheX && viewY >= cacheY
+                && viewX + viewWidth <= cacheX + cacheWidth && viewY + viewHeight <= cacheY + cacheHeight;
+        if (!cacheValid || !viewInCache) {
+            rasterize(gc, viewX, viewY, viewWidth, viewHeight);
+        }
+        g.drawImage(cache, cacheX, cacheY, null);
+    }
+
+    /**
+     * Draws the static sprites around the view into the cached image.
+     * The cached region is the view plus half a view on each side, kept inside the layer.
+     *
+     * @param gc         the configuration of the screen (may be null when the panel is not displayed)
+     * @param viewX      the x-coordinate of the view in the world
+     * @param viewY      the y-coordinate of the view in the world
+     * @param viewWidth  the width of the view
+     * @param viewHeight the height of the view
+     */
+    private void rasterize(GraphicsConfiguration gc, int viewX, int viewY, int viewWidth, int viewHeight) {
+        int regionWidth = Math.min(width, Math.max(1, viewWidth * 2));
+        int regionHeight = Math.min(height, Math.max(1, viewHeight * 2));
+        cacheX = Math.max(0, Math.min(viewX - viewWidth / 2, width - regionWidth));
+        cacheY = Math.max(0, Math.min(viewY - viewHeight / 2, height - regionHeight));
+
+        // Keep the same image when the size does not change, only clearing it
+        if (cache == null || cache.getWidth() != regionWidth || cache.getHeight() != regionHeight) {
+            // A compatible image has the pixel format of the screen, so copying it is fast
+            cache = (gc != null)
+                    ? gc.createCompatibleImage(regionWidth, regionHeight, Transparency.TRANSLUCENT)
+                    : new BufferedImage(regionWidth, regionHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+        }
+        cacheWidth = regionWidth;
+        cacheHeight = regionHeight;
+
+        Graphics2D g = cache.createGraphics();
+        try {
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, 0, regionWidth, regionHeight);
+            g.setComposite(AlphaComposite.SrcOver);
+            g.translate(-cacheX, -cacheY);
+            // Only the sprites of the region are visited
+            source.forEachIn(cacheX, cacheY, regionWidth, regionHeight, sprite -> sprite.draw(g));
+            for (Displayable displayable : unindexed) {
+                displayable.draw(g);
+            }
+        } finally {
+            g.dispose();
+        }
+        cacheValid = true;
+    }
+}
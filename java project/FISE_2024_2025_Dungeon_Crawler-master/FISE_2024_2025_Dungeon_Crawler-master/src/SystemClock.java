@@ -0,0 +1,11 @@
+/**
+ * SystemClock follows the real time. It is based on System.nanoTime, so it never goes back when the
+ * time of the computer is changed.
+ */
+public class SystemClock implements GameClock {
+
+    @Override
+    public long millis() {
+        return System.nanoTime() / 1_000_000;
+    }
+}
@@ -0,0 +1,87 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * TextureAtlas packs several small images into a single big image. Each packed image is then
+ * returned as a region (a sub-image sharing the pixels of the atlas), so that drawing the tiles
+ * of a level always uses the same source texture.
+ * Images are packed in rows, from left to right, starting a new row when the maximum width is reached.
+ */
+public class TextureAtlas {
+    // Space left between two regions, so that scaled drawing never picks pixels of a neighbour.
+    private static final int PADDING = 1;
+
+    // The image containing all the packed images.
+    private final BufferedImage image;
+
+    // Regions of the atlas by name (usually the path of the packed image).
+    private final Map<String, BufferedImage> regions = new HashMap<>();
+
+    /**
+     * Packs images into a new atlas.
+     *
+     * @param images   the images to pack, by name
+     * @param maxWidth the maximum width of the atlas in pixels
+     * @param gc       the configuration of the screen, to create the atlas in its native format (may be null)
+     */
+    public TextureAtlas(Map<String, BufferedImage> images, int maxWidth, GraphicsConfiguration gc) {
+        // First pass: place the images in rows
+        Map<String, Point> positions = new HashMap<>();
+        int x = 0;
+        int y = 0;
+        int rowHeight = 0;
+        int width = 1;
+        for (Map.Entry<String, BufferedImage> entry : images.entrySet()) {
+            BufferedImage packed = entry.getValue();
+            if (x > 0 && x + packed.getWidth() > maxWidth) {
+                // Start a new row
+                x = 0;
+                y += rowHeight + PADDING;
+                rowHeight = 0;
+            }
+            positions.put(entry.getKey(), new Point(x, y));
+            x += packed.getWidth() + PADDING;
+            rowHeight = Math.max(rowHeight, packed.getHeight());
+            width = Math.max(width, x);
+        }
+        int height = Math.max(1, y + rowHeight);
+
+        // Second pass: copy the images into the atlas and cut the regions
+        image = (gc != null)
+                ? gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT)
+                : new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = image.createGraphics();
+        try {
+            for (Map.Entry<String, BufferedImage> entry : images.entrySet()) {
+                BufferedImage packed = entry.getValue();
+                Point position = positions.get(entry.getKey());
+                g.drawImage(packed, position.x, position.y, null);
+                regions.put(entry.getKey(),
+                        image.getSubimage(position.x, position.y, packed.getWidth(), packed.getHeight()));
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Gets the region of a packed image.
+     *
+     * @param name the name of the packed image
+     * @return the region, sharing the pixels of the atlas, or null if there is no image with this name
+     */
+    public BufferedImage getRegion(String name) {
+        return regions.get(name);
+    }
+
+    /**
+     * Gets the image containing all the packed images.
+     *
+     * @return the atlas image
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+}
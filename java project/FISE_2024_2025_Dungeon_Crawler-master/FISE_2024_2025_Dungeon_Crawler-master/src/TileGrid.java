@@ -0,0 +1,55 @@
+/**
+ * Interface for a grid of tile types (see CollisionMap for the types) used by the physics.
+ * A tile grid can be fully in memory (CollisionMap) or streamed from the level file (ChunkedWorld).
+ */
+public interface TileGrid {
+
+    /**
+     * Gets the type of a tile. Cells outside of the grid are CollisionMap.EMPTY.
+     *
+     * @param column the column of the tile
+     * @param row    the row of the tile
+     * @return the tile type
+     */
+    byte getTile(int column, int row);
+
+    int getColumns();
+
+    int getRows();
+
+    int getTileWidth();
+
+    int getTileHeight();
+
+    /**
+     * Checks if a rectangle overlaps at least one tile of the given type.
+     * Only the cells covered by the rectangle are visited, so the cost does not depend on the map size.
+     * Like Rectangle2D.intersects, touching edges do not count as an overlap.
+     *
+     * @param x      the x-coordinate of the rectangle
+     * @param y      the y-coordinate of the rectangle
+     * @param width  the width of the rectangle
+     * @param height the height of the rectangle
+     * @param type   the tile type to look for
+     * @return true if a cell of this type is overlapped, false otherwise
+     */
+    default boolean overlaps(double x, double y, double width, double height, byte type) {
+        if (width <= 0 || height <= 0) {
+            return false;
+        }
+        // First and last cells strictly overlapped by the rectangle
+        int firstColumn = (int) Math.floor(x / getTileWidth());
+        int lastColumn = (int) Math.ceil((x + width) / getTileWidth()) - 1;
+        int firstRow = (int) Math.floor(y / getTileHeight());
+        int lastRow = (int) Math.ceil((y + height) / getTileHeight()) - 1;
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                if (getTile(column, row) == type) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * TimedEngine wraps an Engine to measure each of its updates: the durations go into a LatencyHistogram
+ * (for the debug overlay) and into EngineUpdateEvent Flight Recorder events.
+ * The GameLoop wraps every engine it updates.
+ */
+public class TimedEngine implements Engine {
+    // Name shown in the overlay and in the events (e.g. "PhysicEngine").
+    private final String name;
+
+    // Engine measured.
+    private final Engine engine;
+
+    // Durations of the updates, in nanoseconds.
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    /**
+     * Wraps an engine.
+     *
+     * @param name   the name of the engine
+     * @param engine the engine to measure
+     */
+    public TimedEngine(String name, Engine engine) {
+        this.name = name;
+        this.engine = engine;
+    }
+
+    /**
+     * Updates the wrapped engine and records the time it took.
+     */
+    @Override
+    public void update() {
+        // No event object at all when no recording wants it
+        EngineUpdateEvent event = EngineUpdateEvent.isRecording() ? new EngineUpdateEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        long start = System.nanoTime();
+        engine.update();
+        histogram.record(System.nanoTime() - start);
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.engine = name;
+                event.commit();
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+}
@@ -0,0 +1,182 @@
+/**
+ * TriggerIndex tells listeners when moving sprites enter or leave trigger tiles, such as traps and the exit.
+ * The tile grid is the index of the triggers: the tiles under a hitbox are found directly from its position.
+ * For each sprite, the index remembers the range of cells under its hitbox; while a sprite stays in the same
+ * cells nothing is checked, and when it crosses a cell boundary only the cells entered and left are looked at.
+ * The cost of a tick therefore depends on the number of moving sprites, never on the number of traps.
+ * The tiles of the grid must not change while sprites are tracked (call reset after changing the grid).
+ */
+public class TriggerIndex {
+    // Cell range of a sprite not tracked yet: everything under it is entered on the next update.
+    static final long NO_CELL = Long.MIN_VALUE;
+
+    // Listener of each tile type, indexed by type (null when the type is not a trigger).
+    private final TriggerListener[] listeners = new TriggerListener[Byte.MAX_VALUE + 1];
+
+    // Grid of the tile types.
+    private TileGrid grid;
+
+    // Number of cells looked at by the last update.
+    private int lastCheckedCellCount = 0;
+
+    /**
+     * Creates an index over a tile grid.
+     *
+     * @param grid the grid of the tile types
+     */
+    public TriggerIndex(TileGrid grid) {
+        this.grid = grid;
+    }
+
+    /**
+     * Replaces the grid, for example when a new level is loaded, and forgets the tracked cells so that the
+     * triggers under each sprite of the store are entered on the next update (no exit is sent for the old grid).
+     *
+     * @param grid  the new grid of the tile types
+     * @param store the store of the tracked sprites
+     */
+    public void setGrid(TileGrid grid, EntityStore store) {
+        this.grid = grid;
+        reset(store);
+    }
+
+    /**
+     * Forgets the tracked cells of every sprite of a store.
+     *
+     * @param store the store of the tracked sprites
+     */
+    public void reset(EntityStore store) {
+        for (int i = 0; i < store.size(); i++) {
+            store.firstTriggerCell[i] = NO_CELL;
+            store.lastTriggerCell[i] = NO_CELL;
+        }
+    }
+
+    /**
+     * Sets the listener of a tile type, making the tiles of this type triggers.
+     *
+     * @param type     the tile type (see CollisionMap), e.g. CollisionMap.TRAP
+     * @param listener the listener, or null to stop triggering on this type
+     */
+    public void setListener(byte type, TriggerListener listener) {
+        listeners[type] = listener;
+    }
+
+    /**
+     * Sends the enter and exit events of the sprites of a store that crossed a cell boundary since the last
+     * update. Exits are sent before enters. The listeners must not add or remove sprites of the store.
+     *
+     * @param store the store of the moving sprites
+     */
+    public void update(EntityStore store) {
+        int checkedCells = 0;
+        int tileWidth = grid.getTileWidth();
+        int tileHeight = grid.getTileHeight();
+        for (int i = 0; i < store.size(); i++) {
+            // Cells strictly overlapped by the hitbox, as in TileGrid.overlaps
+            double x = store.x[i];
+            double y = store.y[i];
+            long first = NO_CELL;
+            long last = NO_CELL;
+            if (store.width[i] > 0 && store.height[i] > 0) {
+                first = cell((int) Math.floor(x / tileWidth), (int) Math.floor(y / tileHeight));
+                last = cell((int) Math.ceil((x + store.width[i]) / tileWidth) - 1,
+                        (int) Math.ceil((y + store.height[i]) / tileHeight) - 1);
+            }
+            long oldFirst = store.firstTriggerCell[i];
+            long oldLast = store.lastTriggerCell[i];
+            if (first == oldFirst && last == oldLast) {
+                continue; // No boundary crossed
+            }
+            store.firstTriggerCell[i] = first;
+            store.lastTriggerCell[i] = last;
+            DynamicSprite sprite = store.getSprite(i);
+            checkedCells += visit(sprite, oldFirst, oldLast, first, last, false); // Cells left
+            checkedCells += visit(sprite, first, last, oldFirst, oldLast, true);  // Cells entered
+        }
+        lastCheckedCellCount = checkedCells;
+    }
+
+    /**
+     * Sends again the enter events of the tiles of one type under a sprite, as if it had just stepped onto
+     * them, e.g. the traps it stands on when its invincibility ends. The cells looked at are added to the
+     * count of the last update.
+     *
+     * @param store the store of the tracked sprites
+     * @param index the index of the sprite in the store
+     * @param type  the tile type whose listener is called
+     */
+    public void enterAgain(EntityStore store, int index, byte type) {
+        long first = store.firstTriggerCell[index];
+        long last = store.lastTriggerCell[index];
+        TriggerListener listener = listeners[type];
+        if (first == NO_CELL || listener == null) {
+            return; // Not tracked yet: the next update enters everything under the sprite
+        }
+        DynamicSprite sprite = store.getSprite(index);
+        for (int row = rowOf(first); row <= rowOf(last); row++) {
+            for (int column = columnOf(first); column <= columnOf(last); column++) {
+                lastCheckedCellCount++;
+                if (grid.getTile(column, row) == type) {
+                    listener.onEnter(sprite, type, column, row);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sends an event for each trigger tile of a cell range that is not in another range.
+     *
+     * @return the number of cells looked at
+     */
+    private int visit(DynamicSprite sprite, long first, long last, long otherFirst, long otherLast, boolean enter) {
+        if (first == NO_CELL) {
+            return 0;
+        }
+        int checked = 0;
+        for (int row = rowOf(first); row <= rowOf(last); row++) {
+            for (int column = columnOf(first); column <= columnOf(last); column++) {
+                if (otherFirst != NO_CELL && column >= columnOf(otherFirst) && column <= columnOf(otherLast)
+                        && row >= rowOf(otherFirst) && row <= rowOf(otherLast)) {
+                    continue; // Still under the hitbox
+                }
+                checked++;
+                byte type = grid.getTile(column, row);
+                TriggerListener listener = (type >= 0) ? listeners[type] : null;
+                if (listener == null) {
+                    continue;
+                }
+                if (enter) {
+                    listener.onEnter(sprite, type, column, row);
+                } else {
+                    listener.onExit(sprite, type, column, row);
+                }
+            }
+        }
+        return checked;
+    }
+
+    /**
+     * Packs the coordinates of a cell into one long, kept in the arrays of the entity store.
+     */
+    static long cell(int column, int row) {
+        return ((long) row << 32) | (column & 0xFFFFFFFFL);
+    }
+
+    private static int columnOf(long cell) {
+        return (int) cell;
+    }
+
+    private static int rowOf(long cell) {
+        return (int) (cell >> 32);
+    }
+
+    /**
+     * Gets the number of cells looked at by the last update, i.e. the cells entered or left.
+     *
+     * @return the number of cells checked
+     */
+    public int getLastCheckedCellCount() {
+        return lastCheckedCellCount;
+    }
+}
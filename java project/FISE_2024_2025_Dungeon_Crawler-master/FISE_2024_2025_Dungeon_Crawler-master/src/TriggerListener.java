@@ -0,0 +1,27 @@
+/**
+ * Listener of the trigger tiles (traps, exit...) entered and left by the moving sprites.
+ * It is registered in a TriggerIndex for one tile type, and called from the thread running the simulation.
+ */
+public interface TriggerListener {
+
+    /**
+     * Called when the hitbox of a sprite starts to overlap a trigger tile.
+     *
+     * @param sprite the sprite entering the tile
+     * @param type   the type of the tile (see CollisionMap)
+     * @param column the column of the tile
+     * @param row    the row of the tile
+     */
+    void onEnter(DynamicSprite sprite, byte type, int column, int row);
+
+    /**
+     * Called when the hitbox of a sprite stops overlapping a trigger tile. Does nothing by default.
+     *
+     * @param sprite the sprite leaving the tile
+     * @param type   the type of the tile (see CollisionMap)
+     * @param column the column of the tile
+     * @param row    the row of the tile
+     */
+    default void onExit(DynamicSprite sprite, byte type, int column, int row) {
+    }
+}
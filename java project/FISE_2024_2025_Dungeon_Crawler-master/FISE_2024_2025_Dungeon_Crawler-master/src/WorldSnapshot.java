@@ -0,0 +1,94 @@
+import java.nio.ByteBuffer;
+
+/**
+ * WorldSnapshot keeps the state of every moving sprite of an entity store (position, direction, speed,
+ * flags, traps touched...) in a compact byte array, together with the time of the store.
+ * The game captures one when a level starts; Retry restores it into the same engines, which takes a few
+ * microseconds instead of loading the images and the level again.
+ * Restoring writes the values back by index, so the store must hold the same sprites, in the same order,
+ * as when the snapshot was captured.
+ */
+public class WorldSnapshot {
+    // Bytes per entity: 7 doubles, the direction, the flags, the trap count, and 3 longs.
+    private static final int ENTITY_BYTES = 7 * Double.BYTES + 1 + 2 * Integer.BYTES + 3 * Long.BYTES;
+
+    // Bytes of the header: the number of entities and the time of the store.
+    private static final int HEADER_BYTES = Integer.BYTES + Long.BYTES;
+
+    // State of the store, in the order written by capture.
+    private final byte[] data;
+
+    private WorldSnapshot(byte[] data) {
+        this.data = data;
+    }
+
+    /**
+     * Captures the state of every entity of a store.
+     *
+     * @param store the store to capture
+     * @return the snapshot
+     */
+    public static WorldSnapshot capture(EntityStore store) {
+        int count = store.size();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + count * ENTITY_BYTES);
+        buffer.putInt(count);
+        buffer.putLong(store.getTime());
+        for (int i = 0; i < count; i++) {
+            buffer.putDouble(store.x[i]);
+            buffer.putDouble(store.y[i]);
+            buffer.putDouble(store.previousX[i]);
+            buffer.putDouble(store.previousY[i]);
+            buffer.putDouble(store.width[i]);
+            buffer.putDouble(store.height[i]);
+            buffer.putDouble(store.speed[i]);
+            buffer.put(store.direction[i]);
+            buffer.putInt(store.flags[i]);
+            buffer.putInt(store.trapCount[i]);
+            buffer.putLong(store.invincibleSince[i]);
+            buffer.putLong(store.firstTriggerCell[i]);
+            buffer.putLong(store.lastTriggerCell[i]);
+        }
+        return new WorldSnapshot(buffer.array());
+    }
+
+    /**
+     * Puts the captured state back into a store.
+     * The simulation must not be updated at the same time (e.g. hold the lock of the game loop).
+     *
+     * @param store the store, holding the same sprites as when the snapshot was captured
+     * @throws IllegalStateException if the store does not hold the same number of sprites
+     */
+    public void restore(EntityStore store) {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        int count = buffer.getInt();
+        if (count != store.size()) {
+            throw new IllegalStateException("Snapshot of " + count + " sprites cannot be restored into a store of "
+                    + store.size());
+        }
+        store.setTime(buffer.getLong());
+        for (int i = 0; i < count; i++) {
+            store.x[i] = buffer.getDouble();
+            store.y[i] = buffer.getDouble();
+            store.previousX[i] = buffer.getDouble();
+            store.previousY[i] = buffer.getDouble();
+            store.width[i] = buffer.getDouble();
+            store.height[i] = buffer.getDouble();
+            store.speed[i] = buffer.getDouble();
+            store.direction[i] = buffer.get();
+            store.flags[i] = buffer.getInt();
+            store.trapCount[i] = buffer.getInt();
+            store.invincibleSince[i] = buffer.getLong();
+            store.firstTriggerCell[i] = buffer.getLong();
+            store.lastTriggerCell[i] = buffer.getLong();
+        }
+    }
+
+    /**
+     * Gets the size of the snapshot.
+     *
+     * @return the number of bytes kept
+     */
+    public int getSizeInBytes() {
+        return data.length;
+    }
+}
@@ -0,0 +1,93 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the FlowFieldService with its background thread: the simulation thread asks for new targets as
+ * fast as it can while the searches run, and the field it ends with must be the one of the last target,
+ * the same as a search run in update() gives.
+ */
+class FlowFieldServiceTest {
+    // Size of the grid, in tiles, and size of a tile, in pixels.
+    private static final int GRID_SIZE = 48;
+    private static final int TILE_SIZE = 64;
+
+    private static final int REQUESTS = 50_000;
+
+    // Longest wait for the last search, in milliseconds.
+    private static final long SEARCH_TIMEOUT_MS = 10_000;
+
+    /**
+     * Creates a grid with a few rocks and a wall across it, open at one end.
+     */
+    private static CollisionMap createGrid() {
+        Random random = new Random(7);
+        CollisionMap grid = new CollisionMap(GRID_SIZE, GRID_SIZE, TILE_SIZE, TILE_SIZE);
+        for (int row = 0; row < GRID_SIZE; row++) {
+            for (int column = 0; column < GRID_SIZE; column++) {
+                boolean wall = column == GRID_SIZE / 2 && row > 2;
+                if (wall || random.nextDouble() < 0.1) {
+                    grid.setTile(column, row, CollisionMap.SOLID);
+                }
+            }
+        }
+        return grid;
+    }
+
+    private static double centerOf(int cell) {
+        return cell * TILE_SIZE + TILE_SIZE / 2.0;
+    }
+
+    @Test
+    void backgroundFieldFollowsTheLastOfManyRequests() throws InterruptedException {
+        CollisionMap grid = createGrid();
+        FlowFieldService service = new FlowFieldService(grid, true);
+        try {
+            // Requests and updates from this thread (the simulation), while the searches run
+            Random random = new Random(42);
+            int targetColumn = 0;
+            int targetRow = 0;
+            for (int i = 0; i < REQUESTS; i++) {
+                targetColumn = random.nextInt(GRID_SIZE);
+                targetRow = random.nextInt(GRID_SIZE);
+                service.requestTarget(targetColumn, targetRow);
+                service.update();
+                service.getDirection(centerOf(random.nextInt(GRID_SIZE)), centerOf(random.nextInt(GRID_SIZE)));
+            }
+            // Make sure the last target can be reached, then wait for its field
+            do {
+                targetColumn = random.nextInt(GRID_SIZE);
+                targetRow = random.nextInt(GRID_SIZE);
+            } while (grid.getTile(targetColumn, targetRow) == CollisionMap.SOLID);
+            service.requestTarget(targetColumn, targetRow);
+            long deadline = System.currentTimeMillis() + SEARCH_TIMEOUT_MS;
+            while (service.getDistance(centerOf(targetColumn), centerOf(targetRow)) != 0
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+                service.update();
+            }
+            assertEquals(0, service.getDistance(centerOf(targetColumn), centerOf(targetRow)),
+                    "the field of the last target was never picked up");
+
+            // Same field as a search run on this thread
+            FlowFieldService reference = new FlowFieldService(grid, false);
+            reference.requestTarget(targetColumn, targetRow);
+            for (int row = 0; row < GRID_SIZE; row++) {
+                for (int column = 0; column < GRID_SIZE; column++) {
+                    double x = centerOf(column);
+                    double y = centerOf(row);
+                    assertEquals(reference.getDistance(x, y), service.getDistance(x, y),
+                            "distance of cell " + column + "," + row);
+                    assertEquals(reference.getDirection(x, y), service.getDirection(x, y),
+                            "direction of cell " + column + "," + row);
+                }
+            }
+            assertTrue(service.getSearchCount() > 0);
+        } finally {
+            service.close();
+        }
+    }
+}
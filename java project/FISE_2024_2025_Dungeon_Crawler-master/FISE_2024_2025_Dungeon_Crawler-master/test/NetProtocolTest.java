@@ -0,0 +1,64 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks the framing of the messages: a message is complete only when all its bytes are there, and a length
+ * that could never fit in the receiving buffer is rejected instead of being waited for.
+ */
+class NetProtocolTest {
+    // Size of the buffer the GameServer reads each client into.
+    private static final int BUFFER_BYTES = 4096;
+
+    @Test
+    void messageIsCompleteOnlyWithAllItsBytes() {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        int start = NetProtocol.beginMessage(buffer, NetProtocol.ACK);
+        NetProtocol.putVarLong(buffer, 123_456);
+        NetProtocol.endMessage(buffer, start);
+        int length = buffer.position() - NetProtocol.LENGTH_BYTES;
+
+        buffer.flip();
+        assertEquals(length, NetProtocol.completeMessageLength(buffer));
+
+        buffer.limit(buffer.limit() - 1);
+        assertEquals(-1, NetProtocol.completeMessageLength(buffer), "message missing its last byte");
+        buffer.limit(NetProtocol.LENGTH_BYTES - 1);
+        assertEquals(-1, NetProtocol.completeMessageLength(buffer), "length not received yet");
+    }
+
+    @Test
+    void longestMessageFillsTheBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        int longest = BUFFER_BYTES - NetProtocol.LENGTH_BYTES;  // 4092
+        buffer.putInt(longest);
+        buffer.flip();
+        assertEquals(-1, NetProtocol.completeMessageLength(buffer), "only the length received");
+
+        buffer.limit(BUFFER_BYTES);
+        assertEquals(longest, NetProtocol.completeMessageLength(buffer));
+    }
+
+    @Test
+    void messageLongerThanTheBufferIsRejected() {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        buffer.putInt(BUFFER_BYTES - NetProtocol.LENGTH_BYTES + 1);  // 4093: could never be complete
+        buffer.flip();
+        assertThrows(IllegalStateException.class, () -> NetProtocol.completeMessageLength(buffer));
+    }
+
+    @Test
+    void emptyOrNegativeLengthIsRejected() {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        buffer.putInt(0);
+        buffer.flip();
+        assertThrows(IllegalStateException.class, () -> NetProtocol.completeMessageLength(buffer));
+        buffer.clear();
+        buffer.putInt(-1);
+        buffer.flip();
+        assertThrows(IllegalStateException.class, () -> NetProtocol.completeMessageLength(buffer));
+    }
+}
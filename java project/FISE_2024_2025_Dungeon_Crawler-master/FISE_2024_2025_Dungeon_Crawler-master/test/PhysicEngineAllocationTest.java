@@ -0,0 +1,188 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a physics tick creates no object once the game runs (steady state): the hitboxes and
+ * intersection tests work on primitive fields, and nothing else in the tick may allocate either.
+ * The bytes are counted by the JVM for the test thread (ThreadMXBean), after a warmup long enough
+ * for the JIT to compile the tick. The JIT may still replace some code during a measure, which can move a
+ * few bytes once, so the ticks are measured in a few rounds: a tick that allocates shows in every round.
+ * Besides plain movement, a level with traps and an exit is measured: the trigger index sends its enter and
+ * exit events, traps hurt the sprites, the invincibility ends on a virtual clock (and the traps under the
+ * sprites are entered again), and the sparks of the hits and extra bursts keep particles alive.
+ */
+class PhysicEngineAllocationTest {
+    // Size of the arena, in tiles, and size of a tile, in pixels.
+    private static final int ARENA_SIZE = 32;
+    private static final int TILE_SIZE = 64;
+
+    private static final int SPRITE_COUNT = 200;
+    private static final int WARMUP_TICKS = 20_000;
+    private static final int MEASURED_TICKS = 1_000;
+    private static final int MEASURED_ROUNDS = 5;
+
+    // Part of the tiles that are traps, and number of exit tiles, in the level with triggers.
+    private static final double TRAP_SHARE = 0.1;
+    private static final int EXIT_COUNT = 4;
+
+    // Duration of a tick on the virtual clock, and number of ticks between two extra bursts of particles.
+    private static final int TICK_MS = 50;
+    private static final int BURST_TICKS = 10;
+
+    // Directions given to the sprites (values() copies the array, so it is called once here).
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * Creates a PhysicEngine with moving sprites in an arena: solid walls all around and a few rocks
+     * inside, and with triggers some traps and exits too.
+     */
+    private static PhysicEngine createEngine(ArrayList<DynamicSprite> sprites, boolean triggers) {
+        Random random = new Random(42);
+        CollisionMap arena = new CollisionMap(ARENA_SIZE, ARENA_SIZE, TILE_SIZE, TILE_SIZE);
+        for (int row = 0; row < ARENA_SIZE; row++) {
+            for (int column = 0; column < ARENA_SIZE; column++) {
+                boolean border = row == 0 || column == 0 || row == ARENA_SIZE - 1 || column == ARENA_SIZE - 1;
+                double draw = random.nextDouble();
+                if (border || draw < 0.05) {
+                    arena.setTile(column, row, CollisionMap.SOLID);
+                } else if (triggers && draw < 0.05 + TRAP_SHARE) {
+                    arena.setTile(column, row, CollisionMap.TRAP);
+                }
+            }
+        }
+        for (int i = 0; triggers && i < EXIT_COUNT; i++) {
+            arena.setTile(1 + random.nextInt(ARENA_SIZE - 2), 1 + random.nextInt(ARENA_SIZE - 2), CollisionMap.EXIT);
+        }
+        PhysicEngine physicEngine = new PhysicEngine();
+        physicEngine.setEnvironment(arena);
+        while (sprites.size() < SPRITE_COUNT) {
+            int column = 1 + random.nextInt(ARENA_SIZE - 2);
+            int row = 1 + random.nextInt(ARENA_SIZE - 2);
+            if (arena.getTile(column, row) == CollisionMap.SOLID) {
+                continue;
+            }
+            DynamicSprite sprite = new DynamicSprite(column * TILE_SIZE, row * TILE_SIZE, (Animation) null,
+                    Playground.HERO_WIDTH, Playground.HERO_HEIGHT);
+            sprite.setDirection(DIRECTIONS[random.nextInt(DIRECTIONS.length)]);
+            physicEngine.addToMovingSpriteList(sprite);
+            sprites.add(sprite);
+        }
+        return physicEngine;
+    }
+
+    /**
+     * Runs ticks, turning one sprite every few ticks so that the sprites stuck against a wall keep moving.
+     * The hook (may be null) runs before each tick.
+     */
+    private static void runTicks(Engine engine, ArrayList<DynamicSprite> sprites, int ticks, int firstTick,
+                                 Runnable beforeTick) {
+        for (int tick = firstTick; tick < firstTick + ticks; tick++) {
+            if (tick % 4 == 0) {
+                sprites.get(tick / 4 % sprites.size()).setDirection(DIRECTIONS[tick / 4 & 3]);
+            }
+            if (beforeTick != null) {
+                beforeTick.run();
+            }
+            engine.update();
+        }
+    }
+
+    /**
+     * Measures the bytes allocated by the test thread while ticks run, after the warmup.
+     *
+     * @return the fewest bytes allocated by MEASURED_TICKS ticks, over the rounds
+     */
+    private static long allocatedBytesOfSteadyTicks(Engine engine, ArrayList<DynamicSprite> sprites,
+                                                    Runnable beforeTick) {
+        runTicks(engine, sprites, WARMUP_TICKS, 0, beforeTick);
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long fewest = Long.MAX_VALUE;
+        for (int round = 0; round < MEASURED_ROUNDS && fewest > 0; round++) {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            runTicks(engine, sprites, MEASURED_TICKS, WARMUP_TICKS + round * MEASURED_TICKS, beforeTick);
+            fewest = Math.min(fewest, threads.getCurrentThreadAllocatedBytes() - before);
+        }
+        return fewest;
+    }
+
+    @Test
+    void physicsTickAllocatesNothing() {
+        ArrayList<DynamicSprite> sprites = new ArrayList<>();
+        PhysicEngine physicEngine = createEngine(sprites, false);
+        assertEquals(0, allocatedBytesOfSteadyTicks(physicEngine, sprites, null),
+                "bytes allocated by " + MEASURED_TICKS + " physics ticks");
+    }
+
+    @Test
+    void timedPhysicsTickAllocatesNothing() {
+        // As the GameLoop runs it: measured by a TimedEngine, with no Flight Recorder recording
+        ArrayList<DynamicSprite> sprites = new ArrayList<>();
+        TimedEngine timedEngine = new TimedEngine("PhysicEngine", createEngine(sprites, false));
+        assertEquals(0, allocatedBytesOfSteadyTicks(timedEngine, sprites, null),
+                "bytes allocated by " + MEASURED_TICKS + " timed physics ticks");
+    }
+
+    @Test
+    void tickWithTrapsExitsAndParticlesAllocatesNothing() {
+        ArrayList<DynamicSprite> sprites = new ArrayList<>();
+        PhysicEngine physicEngine = createEngine(sprites, true);
+        VirtualClock clock = new VirtualClock();
+        physicEngine.setClock(clock);  // The invincibility ends after 2 s of game time, not of test time
+        ParticleSystem particles = physicEngine.getParticleSystem();
+        int[] ticks = {0};
+        Runnable beforeTick = () -> {
+            clock.advance(TICK_MS);
+            if (++ticks[0] % BURST_TICKS == 0) {
+                DynamicSprite sprite = sprites.get(ticks[0] / BURST_TICKS % sprites.size());
+                particles.burst(ParticleSystem.DUST, sprite.getX(), sprite.getY(), 16, 3, 30);
+            }
+        };
+
+        // Each trap hit prints a line, and the JDK allocates to encode it: the console is not what is measured
+        PrintStream console = System.out;
+        System.setOut(new DiscardingPrintStream());
+        long bytes;
+        int trapsBefore;
+        try {
+            runTicks(physicEngine, sprites, WARMUP_TICKS, 0, beforeTick);
+            trapsBefore = totalTrapCount(sprites);
+            bytes = allocatedBytesOfSteadyTicks(physicEngine, sprites, beforeTick);
+        } finally {
+            System.setOut(console);
+        }
+        assertEquals(0, bytes, "bytes allocated by " + MEASURED_TICKS + " ticks with traps, exits and particles");
+        assertTrue(totalTrapCount(sprites) > trapsBefore, "no trap was hit while measuring");
+        assertTrue(particles.getLiveCount() > 0, "no particle alive");
+    }
+
+    /**
+     * Console dropping the lines printed, without encoding them.
+     */
+    private static final class DiscardingPrintStream extends PrintStream {
+        DiscardingPrintStream() {
+            super(OutputStream.nullOutputStream());
+        }
+
+        @Override
+        public void println(String line) {
+            // Dropped
+        }
+    }
+
+    private static int totalTrapCount(ArrayList<DynamicSprite> sprites) {
+        int total = 0;
+        for (DynamicSprite sprite : sprites) {
+            total += sprite.getTrapCount();
+        }
+        return total;
+    }
+}
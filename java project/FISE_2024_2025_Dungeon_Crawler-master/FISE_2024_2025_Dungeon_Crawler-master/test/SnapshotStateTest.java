@@ -0,0 +1,116 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that a state written by SnapshotState.writeDelta is read back the same by readDelta, with and
+ * without a base, and that the delta of players that did not change is empty.
+ */
+class SnapshotStateTest {
+    // Store holding the players, whose values are set directly as a client does with a snapshot.
+    private final EntityStore store = new EntityStore(16);
+
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+
+    /**
+     * Creates a state of players. Each player is given as {id, x, y, direction, flags, trap count}.
+     */
+    private SnapshotState stateOf(long tick, int[]... players) {
+        SnapshotState state = new SnapshotState(4);
+        state.clear(tick, tick * 50);
+        for (int[] player : players) {
+            DynamicSprite sprite = new DynamicSprite(0, 0, (Animation) null, Playground.HERO_WIDTH,
+                    Playground.HERO_HEIGHT);
+            sprite.moveToStore(store);
+            store.setReceivedState(sprite.getStoreIndex(), player[1], player[2], (byte) player[3], player[4],
+                    player[5]);
+            state.add(player[0], sprite);
+        }
+        return state;
+    }
+
+    /**
+     * Writes the delta from a base to a state, then reads it back over the same base.
+     */
+    private SnapshotState roundTrip(SnapshotState base, SnapshotState current) {
+        buffer.clear();
+        SnapshotState.writeDelta(base, current, buffer);
+        buffer.flip();
+        assertEquals(base == null ? 0 : base.getTick(), SnapshotState.peekBaseTick(buffer));
+        SnapshotState read = new SnapshotState(1);
+        read.readDelta(base, buffer);
+        assertEquals(0, buffer.remaining(), "bytes left after the delta");
+        return read;
+    }
+
+    /**
+     * Gets the bytes of a delta without any player: the ticks, the time and the two empty lists.
+     */
+    private static int emptyDeltaBytes(long tick, long baseTick, long time) {
+        ByteBuffer header = ByteBuffer.allocate(64);
+        NetProtocol.putVarLong(header, tick);
+        NetProtocol.putVarLong(header, baseTick);
+        NetProtocol.putVarLong(header, time);
+        return header.position() + 2;
+    }
+
+    private static void assertSameState(SnapshotState expected, SnapshotState actual) {
+        assertEquals(expected.getTick(), actual.getTick());
+        assertEquals(expected.getTime(), actual.getTime());
+        assertTrue(expected.samePlayers(actual), "players read back differ from the players written");
+    }
+
+    @Test
+    void deltaWithoutBaseGivesEveryPlayer() {
+        SnapshotState current = stateOf(7,
+                new int[]{1, 100, 200, 2, EntityStore.WALKING, 0},
+                new int[]{4, 3000, 15, 0, 0, 2},
+                new int[]{300, 5, 5, 3, EntityStore.INVINCIBLE, 1});
+        assertSameState(current, roundTrip(null, current));
+    }
+
+    @Test
+    void unchangedPlayersCostNothing() {
+        SnapshotState base = stateOf(10,
+                new int[]{1, 100, 200, 2, EntityStore.WALKING, 0},
+                new int[]{2, 640, 480, 1, 0, 1});
+        SnapshotState current = stateOf(11,
+                new int[]{1, 100, 200, 2, EntityStore.WALKING, 0},
+                new int[]{2, 640, 480, 1, 0, 1});
+        SnapshotState read = roundTrip(base, current);
+        assertSameState(current, read);
+        assertEquals(emptyDeltaBytes(11, 10, 11 * 50), buffer.limit(), "bytes of a delta with no change");
+    }
+
+    @Test
+    void playersRemovedAndAddedInOneDelta() {
+        SnapshotState base = stateOf(20,
+                new int[]{1, 100, 200, 2, EntityStore.WALKING, 0},
+                new int[]{3, 640, 480, 1, 0, 1},
+                new int[]{5, 64, 64, 0, 0, 0});
+        SnapshotState current = stateOf(21,
+                new int[]{1, 104, 200, 2, EntityStore.WALKING, 0},  // Moved
+                new int[]{2, 320, 320, 0, 0, 0},                    // Joined
+                new int[]{5, 64, 64, 0, EntityStore.INVINCIBLE, 1}, // Hurt
+                new int[]{9, 128, 128, 3, 0, 0});                   // Joined; 3 left
+        assertSameState(current, roundTrip(base, current));
+    }
+
+    @Test
+    void wrongBaseIsRejected() {
+        SnapshotState base = stateOf(30, new int[]{1, 100, 200, 2, 0, 0});
+        SnapshotState other = stateOf(31, new int[]{1, 100, 200, 2, 0, 0});
+        SnapshotState current = stateOf(32, new int[]{1, 108, 200, 2, 0, 0});
+        buffer.clear();
+        SnapshotState.writeDelta(base, current, buffer);
+        buffer.flip();
+        SnapshotState read = new SnapshotState(1);
+        assertThrows(IllegalStateException.class, () -> read.readDelta(other, buffer));
+        buffer.rewind();
+        assertThrows(IllegalStateException.class, () -> read.readDelta(null, buffer));
+    }
+}
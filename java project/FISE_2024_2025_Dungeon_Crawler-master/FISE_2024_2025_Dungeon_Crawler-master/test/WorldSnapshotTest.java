@@ -0,0 +1,88 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks that a WorldSnapshot puts an entity store back exactly as it was captured, after the sprites have
+ * moved, stepped on traps and become invincible, and that it refuses a store of another size.
+ */
+class WorldSnapshotTest {
+    // Size of the arena, in tiles, and size of a tile, in pixels.
+    private static final int ARENA_SIZE = 16;
+    private static final int TILE_SIZE = 64;
+
+    private static final int SPRITE_COUNT = 20;
+    private static final int TICKS = 400;
+    private static final int TICK_MS = 50;
+
+    // Directions given to the sprites (values() copies the array, so it is called once here).
+    private static final Direction[] DIRECTIONS = Direction.values();
+
+    /**
+     * Creates a PhysicEngine on a virtual clock, with sprites in an arena of walls, rocks and traps.
+     */
+    private static PhysicEngine createEngine(VirtualClock clock) {
+        Random random = new Random(3);
+        CollisionMap arena = new CollisionMap(ARENA_SIZE, ARENA_SIZE, TILE_SIZE, TILE_SIZE);
+        for (int row = 0; row < ARENA_SIZE; row++) {
+            for (int column = 0; column < ARENA_SIZE; column++) {
+                boolean border = row == 0 || column == 0 || row == ARENA_SIZE - 1 || column == ARENA_SIZE - 1;
+                double draw = random.nextDouble();
+                if (border || draw < 0.05) {
+                    arena.setTile(column, row, CollisionMap.SOLID);
+                } else if (draw < 0.2) {
+                    arena.setTile(column, row, CollisionMap.TRAP);
+                }
+            }
+        }
+        PhysicEngine physicEngine = new PhysicEngine();
+        physicEngine.setClock(clock);
+        physicEngine.setEnvironment(arena);
+        for (int i = 0; i < SPRITE_COUNT; i++) {
+            int column = 1 + random.nextInt(ARENA_SIZE - 2);
+            int row = 1 + random.nextInt(ARENA_SIZE - 2);
+            DynamicSprite sprite = new DynamicSprite(column * TILE_SIZE, row * TILE_SIZE, (Animation) null,
+                    Playground.HERO_WIDTH, Playground.HERO_HEIGHT);
+            sprite.setDirection(DIRECTIONS[random.nextInt(DIRECTIONS.length)]);
+            physicEngine.addToMovingSpriteList(sprite);
+        }
+        return physicEngine;
+    }
+
+    @Test
+    void restoreGivesBackTheCapturedState() {
+        VirtualClock clock = new VirtualClock(1000);
+        PhysicEngine physicEngine = createEngine(clock);
+        EntityStore store = physicEngine.getEntityStore();
+        physicEngine.update();  // Sprites tracked by the trigger index, as after the first tick of a game
+        WorldSnapshot snapshot = WorldSnapshot.capture(store);
+        long captured = store.checksum();
+
+        Random random = new Random(11);
+        for (int tick = 0; tick < TICKS; tick++) {
+            if (tick % 10 == 0) {
+                store.getSprite(random.nextInt(store.size())).setDirection(DIRECTIONS[random.nextInt(4)]);
+            }
+            clock.advance(TICK_MS);
+            physicEngine.update();
+        }
+        assertNotEquals(captured, store.checksum(), "the ticks changed nothing to restore");
+
+        snapshot.restore(store);
+        assertEquals(captured, store.checksum());
+    }
+
+    @Test
+    void restoreIntoAnotherSizeOfStoreFails() {
+        PhysicEngine physicEngine = createEngine(new VirtualClock());
+        WorldSnapshot snapshot = WorldSnapshot.capture(physicEngine.getEntityStore());
+
+        EntityStore smaller = new EntityStore(4);
+        new DynamicSprite(0, 0, (Animation) null, Playground.HERO_WIDTH, Playground.HERO_HEIGHT).moveToStore(smaller);
+        assertThrows(IllegalStateException.class, () -> snapshot.restore(smaller));
+    }
+}